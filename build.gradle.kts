@@ -1,11 +1,12 @@
 plugins {
     id("java")
     id("com.github.johnrengelman.shadow") version "8.1.1"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 java {
     toolchain {
-        languageVersion.set(JavaLanguageVersion.of(17)) // 指定 JDK 17
+        languageVersion.set(JavaLanguageVersion.of(21)) // 指定 JDK 21
     }
 }
 
@@ -21,12 +22,21 @@ dependencies {
     implementation("com.fasterxml.jackson.core:jackson-databind:2.19.0")
     implementation("org.slf4j:slf4j-api:2.0.17")
     implementation("ch.qos.logback:logback-classic:1.5.18")
+
+    testImplementation(platform("org.junit:junit-bom:5.10.2"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
 }
 
 tasks.test {
     useJUnitPlatform()
 }
 
+jmh {
+    jmhVersion.set("1.37")
+    resultFormat.set("JSON")
+}
+
 tasks.shadowJar {
     archiveBaseName.set("modpack-uploader")
     archiveClassifier.set("")
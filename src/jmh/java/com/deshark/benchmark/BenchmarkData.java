@@ -0,0 +1,87 @@
+package com.deshark.benchmark;
+
+import com.deshark.core.codec.Codecs;
+import com.deshark.core.schemas.Modpack;
+import com.deshark.core.schemas.ModpackFile;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+final class BenchmarkData {
+    private static final byte[] TEXT_ALPHABET =
+            "abcdefghijklmnopqrstuvwxyz0123456789{}[]\":=,._".getBytes(StandardCharsets.US_ASCII);
+
+    private BenchmarkData() {}
+
+    // random bytes, or config-like text with roughly 20% whitespace
+    static byte[] content(int size, boolean text, long seed) {
+        Random random = new Random(seed);
+        byte[] data = new byte[size];
+        if (!text) {
+            random.nextBytes(data);
+            return data;
+        }
+        for (int i = 0; i < size; i++) {
+            int r = random.nextInt(100);
+            if (r < 14) {
+                data[i] = ' ';
+            } else if (r < 18) {
+                data[i] = '\n';
+            } else if (r < 20) {
+                data[i] = '\t';
+            } else {
+                data[i] = TEXT_ALPHABET[random.nextInt(TEXT_ALPHABET.length)];
+            }
+        }
+        return data;
+    }
+
+    // a modpack-like tree of distinct files: up to 100 per directory, two directory levels deep
+    static void createTree(Path root, int files, int fileSize) throws IOException {
+        for (int i = 0; i < files; i++) {
+            Path dir = root.resolve("mods-" + i / 10_000).resolve("config-" + (i / 100) % 100);
+            if (i % 100 == 0) {
+                Files.createDirectories(dir);
+            }
+            boolean binary = i % 3 == 0;
+            Files.write(dir.resolve("file-" + i + (binary ? ".jar" : ".json")), content(fileSize, !binary, i));
+        }
+    }
+
+    static void deleteTree(Path root) throws IOException {
+        if (root == null || !Files.exists(root)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    static Modpack modpack(int files, long seed) {
+        Random random = new Random(seed);
+        HexFormat hex = HexFormat.of();
+        List<ModpackFile> entries = new ArrayList<>(files);
+        byte[] hash = new byte[32];
+        for (int i = 0; i < files; i++) {
+            random.nextBytes(hash);
+            String hashHex = hex.formatHex(hash);
+            String dist = i % 10 == 0 ? "client" : i % 10 == 1 ? "server" : "common";
+            boolean compressed = i % 3 != 0;
+            entries.add(new ModpackFile("mods/pack-" + i / 100 + "/file-" + i + (compressed ? ".json" : ".jar"),
+                    hashHex, "https://cdn.example.com/" + hashHex, random.nextInt(1 << 20), dist, compressed,
+                    compressed ? Codecs.DEFLATE_NAME : Codecs.IDENTITY_NAME, null, null));
+        }
+        return new Modpack(entries, null, "1.0.0", Map.of("net.minecraft", "1.7.10", "net.minecraftforge", "10.13.4.1614"));
+    }
+}
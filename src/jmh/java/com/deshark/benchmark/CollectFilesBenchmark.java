@@ -0,0 +1,49 @@
+package com.deshark.benchmark;
+
+import com.deshark.core.scan.DirectoryScanner;
+import com.deshark.core.schemas.ScanConfig;
+import com.deshark.core.utils.FileUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CollectFilesBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int files;
+
+    private Path root;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        root = Files.createTempDirectory("collect-bench-");
+        BenchmarkData.createTree(root, files, 16);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkData.deleteTree(root);
+    }
+
+    @Benchmark
+    public List<Path> collectFiles() throws IOException {
+        return FileUtil.collectFiles(root);
+    }
+
+    @Benchmark
+    public long scan(Blackhole blackhole) throws IOException, InterruptedException {
+        return new DirectoryScanner(ScanConfig.empty(), null)
+                .scan(List.of(new DirectoryScanner.Root(root, "common")), (file, relativePath, dist) -> blackhole.consume(file));
+    }
+}
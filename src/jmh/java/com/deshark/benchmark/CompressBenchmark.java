@@ -0,0 +1,71 @@
+package com.deshark.benchmark;
+
+import com.deshark.core.utils.FileUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class CompressBenchmark {
+
+    @Param({"1", "6", "9"})
+    public int level;
+
+    @Param({"65536", "16777216"})
+    public int fileSize;
+
+    @Param({"binary", "text"})
+    public String content;
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        file = Files.createTempFile("compress-bench-", ".bin");
+        Files.write(file, BenchmarkData.content(fileSize, content.equals("text"), 42));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public long compressFile() throws IOException {
+        Path compressed = FileUtil.compressFile(file, level);
+        try {
+            return Files.size(compressed);
+        } finally {
+            Files.delete(compressed);
+        }
+    }
+
+    // DeflaterOutputStream over Files.newInputStream, the path before FileIO
+    @Benchmark
+    public void deflaterOutputStream() throws IOException {
+        Deflater deflater = new Deflater(level);
+        try (InputStream is = Files.newInputStream(file);
+             OutputStream os = new DeflaterOutputStream(OutputStream.nullOutputStream(), deflater)) {
+            is.transferTo(os);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Benchmark
+    public void compress() throws IOException {
+        FileUtil.compress(file, OutputStream.nullOutputStream(), level);
+    }
+}
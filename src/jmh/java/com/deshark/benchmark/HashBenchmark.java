@@ -0,0 +1,61 @@
+package com.deshark.benchmark;
+
+import com.deshark.core.utils.FileUtil;
+import com.deshark.core.utils.HashUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class HashBenchmark {
+
+    @Param({"4096", "1048576", "67108864", "268435456"})
+    public int fileSize;
+
+    @Param({"binary", "text"})
+    public String content;
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        file = Files.createTempFile("hash-bench-", ".bin");
+        Files.write(file, BenchmarkData.content(fileSize, content.equals("text"), 42));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public String readIgnoreSpace() throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        return HexFormat.of().formatHex(digest.digest(FileUtil.readIgnoreSpace(file)));
+    }
+
+    // heap buffers over Files.newInputStream, the path before FileIO
+    @Benchmark
+    public String inputStream() throws IOException {
+        try (InputStream is = Files.newInputStream(file)) {
+            return HashUtil.SHA256(is);
+        }
+    }
+
+    @Benchmark
+    public String streaming() throws IOException {
+        return HashUtil.SHA256(file);
+    }
+}
@@ -0,0 +1,84 @@
+package com.deshark.benchmark;
+
+import com.deshark.core.codec.Codecs;
+import com.deshark.core.manifest.ManifestReader;
+import com.deshark.core.manifest.ManifestWriter;
+import com.deshark.core.schemas.Modpack;
+import com.deshark.core.schemas.ModpackFile;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class ManifestBenchmark {
+
+    @Param({"50000"})
+    public int files;
+
+    // the publisher writes manifests with INDENT_OUTPUT
+    @Param({"true", "false"})
+    public boolean indent;
+
+    private ObjectMapper mapper;
+    private Modpack modpack;
+    private byte[] json;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        mapper = new ObjectMapper().configure(SerializationFeature.INDENT_OUTPUT, indent);
+        modpack = BenchmarkData.modpack(files, 42);
+        json = mapper.writeValueAsBytes(modpack);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return mapper.writeValueAsBytes(modpack);
+    }
+
+    // what uploading modpack.json costs: a string, then a deflated copy of it
+    @Benchmark
+    public byte[] serializeAndDeflate() throws IOException {
+        String configJson = mapper.writeValueAsString(modpack);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DeflaterOutputStream dos = new DeflaterOutputStream(baos, new Deflater(Deflater.BEST_COMPRESSION))) {
+            dos.write(configJson.getBytes(StandardCharsets.UTF_8));
+        }
+        return baos.toByteArray();
+    }
+
+    @Benchmark
+    public long streamingWrite() throws IOException {
+        try (ManifestWriter writer = new ManifestWriter(modpack.version(), modpack.libraries(),
+                Codecs.deflate(Deflater.BEST_COMPRESSION))) {
+            for (ModpackFile file : modpack.files()) {
+                writer.write(file);
+            }
+            writer.finish();
+            return writer.compressedSize();
+        }
+    }
+
+    @Benchmark
+    public Modpack deserialize() throws IOException {
+        return mapper.readValue(json, Modpack.class);
+    }
+
+    @Benchmark
+    public void streamingRead(Blackhole blackhole) throws IOException {
+        ManifestReader.forEachFile(new ByteArrayInputStream(json), blackhole::consume);
+    }
+}
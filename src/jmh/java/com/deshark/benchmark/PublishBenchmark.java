@@ -0,0 +1,93 @@
+package com.deshark.benchmark;
+
+import com.deshark.Main;
+import com.deshark.core.ConfigManager;
+import com.deshark.core.schemas.BundleConfig;
+import com.deshark.core.schemas.ChunkingConfig;
+import com.deshark.core.schemas.CompressionConfig;
+import com.deshark.core.schemas.Config;
+import com.deshark.core.schemas.DaemonConfig;
+import com.deshark.core.schemas.GcConfig;
+import com.deshark.core.schemas.MetricsConfig;
+import com.deshark.core.schemas.PackConfig;
+import com.deshark.core.schemas.ScanConfig;
+import com.deshark.core.schemas.SimulationConfig;
+import com.deshark.core.schemas.StorageConfig;
+import com.deshark.core.schemas.UploadConfig;
+import com.deshark.core.schemas.VerifyConfig;
+import com.deshark.core.storage.impl.InMemoryStorageProvider;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the whole publish flow of {@link Main} against an in-memory bucket, so what is measured
+ * is scanning, hashing, compression, scheduling and manifest generation without the network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx2g", "-Dlogback.configurationFile=logback-benchmark.xml"})
+public class PublishBenchmark {
+
+    @Param({"2000"})
+    public int files;
+
+    @Param({"16384"})
+    public int fileSize;
+
+    // a warm hash index answers every file from the previous run
+    @Param({"false", "true"})
+    public boolean warmIndex;
+
+    @Param({"PLATFORM", "VIRTUAL"})
+    public UploadConfig.ExecutionMode executionMode;
+
+    private Path root;
+    private Path workDir;
+    private int run;
+    private ConfigManager configManager;
+    private InMemoryStorageProvider storage;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        root = Files.createTempDirectory("publish-bench-");
+        workDir = root.resolve("work");
+        BenchmarkData.createTree(root.resolve("source"), files, fileSize);
+        BenchmarkData.createTree(root.resolve("source-server"), files / 10, fileSize);
+        BenchmarkData.createTree(root.resolve("source-client"), files / 10, fileSize);
+    }
+
+    @Setup(Level.Invocation)
+    public void newRun() throws IOException {
+        if (!warmIndex) {
+            BenchmarkData.deleteTree(workDir);
+        }
+        UploadConfig upload = new UploadConfig(0, 0, 0, 0, 0, 0, 0, 0, executionMode, null, 0, 0, 0, false, 0, 0);
+        StorageConfig storageConfig = new StorageConfig("", "", "", "", "memory://bench", "bench", "memory", "",
+                SimulationConfig.empty());
+        configManager = new ConfigManager(new Config(storageConfig,
+                root.resolve("source").toString(), root.resolve("source-server").toString(),
+                root.resolve("source-client").toString(), "bench-" + run++, workDir.toString(), upload,
+                MetricsConfig.empty(), CompressionConfig.empty(), ChunkingConfig.empty(),
+                ScanConfig.empty(), GcConfig.empty(), BundleConfig.empty(), PackConfig.empty(),
+                VerifyConfig.empty(), DaemonConfig.empty()));
+        storage = new InMemoryStorageProvider();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkData.deleteTree(root);
+    }
+
+    @Benchmark
+    public int publish() {
+        Main.publish(configManager, storage);
+        return storage.objectCount();
+    }
+}
@@ -1,186 +1,615 @@
 package com.deshark;
 
 import com.deshark.core.ConfigManager;
+import com.deshark.core.bundle.BundleBuilder;
+import com.deshark.core.codec.Codec;
+import com.deshark.core.codec.Codecs;
+import com.deshark.core.codec.CompressionPolicy;
+import com.deshark.core.daemon.Daemon;
+import com.deshark.core.gc.GarbageCollector;
+import com.deshark.core.index.ChecksumIndex;
+import com.deshark.core.index.HashIndex;
+import com.deshark.core.journal.ReleaseJournal;
+import com.deshark.core.manifest.ManifestDiff;
+import com.deshark.core.manifest.ManifestReader;
+import com.deshark.core.manifest.ManifestWriter;
+import com.deshark.core.metrics.MetricsServer;
+import com.deshark.core.metrics.RunMetrics;
+import com.deshark.core.pack.PackBuilder;
+import com.deshark.core.pack.PackCache;
+import com.deshark.core.pipeline.UploadPipeline;
+import com.deshark.core.plan.PlanReader;
+import com.deshark.core.plan.PlanWriter;
+import com.deshark.core.plan.TransferEstimate;
+import com.deshark.core.scan.DirectoryScanner;
+import com.deshark.core.scan.ScanCache;
+import com.deshark.core.scan.SourceWatcher;
 import com.deshark.core.schemas.*;
 import com.deshark.core.storage.CloudStorageProvider;
+import com.deshark.core.storage.StorageException;
 import com.deshark.core.storage.StorageProviderFactory;
 import com.deshark.core.task.ModpackFileUploadTask;
-import com.deshark.core.utils.FileUtil;
+import com.deshark.core.task.RetryPolicy;
+import com.deshark.core.task.UploadContext;
+import com.deshark.core.verify.Verifier;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Clock;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.*;
+import java.util.concurrent.ExecutionException;
 import java.util.zip.Deflater;
-import java.util.zip.DeflaterOutputStream;
 
 public class Main {
 
     private static final Logger logger = LoggerFactory.getLogger(Main.class);
-    private static final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private static final ObjectMapper mapper = new ObjectMapper();
+    // metadata is small and fetched by every launcher, so it gets the strongest level
+    private static final Codec META_CODEC = Codecs.deflate(Deflater.BEST_COMPRESSION);
     private static CloudStorageProvider storageProvider;
 
+    private enum Mode { PUBLISH, PLAN, APPLY }
+
+    // local state a run works with; a daemon keeps it open from one run to the next
+    private record Caches(HashIndex index, ChecksumIndex checksums, ScanCache scanCache) {}
+
     public static void main(String[] args) {
+        String command = args.length > 0 ? args[0] : "publish";
+        if (!List.of("publish", "plan", "apply", "gc", "verify", "daemon").contains(command)) {
+            logger.error("Unknown command: {} (expected publish, plan, apply, gc, verify or daemon)", command);
+            return;
+        }
 
         ConfigManager configManager = new ConfigManager();
 
-        // fetch config
-        String secretId = configManager.getSecretId();
-        String secretKey = configManager.getSecretKey();
-        String region = configManager.getRegion();
-        String bucketName = configManager.getBucketName();
-        String downloadUrl = configManager.getDownloadUrl();
-        String sourceDirStr = configManager.getSourceDir();
-        String sourceServerStr = configManager.getSourceServerDir();
-        String sourceClientStr = configManager.getSourceClientDir();
+        CloudStorageProvider provider = StorageProviderFactory.createProvider(
+                configManager.getStorageConfig(), configManager.getUploadConfig(),
+                Paths.get(configManager.getWorkDir())
+        );
+        try {
+            switch (command) {
+                case "plan" -> plan(configManager, provider);
+                case "apply" -> apply(configManager, provider);
+                case "gc" -> collectGarbage(configManager, provider);
+                case "verify" -> verify(configManager, provider, args.length > 1 ? args[1] : null);
+                case "daemon" -> daemon(configManager, provider);
+                default -> publish(configManager, provider);
+            }
+        } finally {
+            provider.shutdown();
+        }
+    }
+
+    public static void publish(ConfigManager configManager, CloudStorageProvider provider) {
+        run(configManager, provider, Mode.PUBLISH);
+    }
+
+    // scans, hashes and checks the bucket like publish, but only saves what publish would upload
+    public static void plan(ConfigManager configManager, CloudStorageProvider provider) {
+        run(configManager, provider, Mode.PLAN);
+    }
+
+    // publishes the files of a saved plan without hashing them again
+    public static void apply(ConfigManager configManager, CloudStorageProvider provider) {
+        run(configManager, provider, Mode.APPLY);
+    }
+
+    // deletes stored objects that no published version references any more
+    public static void collectGarbage(ConfigManager configManager, CloudStorageProvider provider) {
+        GcConfig gcConfig = configManager.getGcConfig();
+        GarbageCollector collector = new GarbageCollector(provider, gcConfig, configManager.getProjectId(),
+                configManager.getDownloadUrl(), Clock.systemUTC());
+        HashIndex index;
+        try {
+            index = HashIndex.open(Paths.get(configManager.getWorkDir()).resolve("hash-index.jsonl"));
+        } catch (IOException e) {
+            logger.error("Failed to open hash index", e);
+            return;
+        }
+        try {
+            GarbageCollector.Result result = collector.run(index);
+            logger.info("================");
+            logger.info("GC{}: {} versions, {} live objects, {} of {} listed objects unreferenced, {} kept for the grace period",
+                    gcConfig.dryRun() ? " (dry run)" : "", result.versions(), result.liveKeys(), result.unreferenced(),
+                    result.listed(), result.young());
+            logger.info("Deleted {} objects, {} bytes", result.deleted(), result.deletedBytes());
+        } catch (IOException | RuntimeException e) {
+            logger.error("Garbage collection failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Garbage collection interrupted", e);
+        } finally {
+            try {
+                index.close();
+            } catch (IOException e) {
+                logger.warn("Failed to save hash index", e);
+            }
+        }
+    }
+
+    // checks the stored objects of a version, the latest if versionName is null, and repairs bad ones
+    public static void verify(ConfigManager configManager, CloudStorageProvider provider, String versionName) {
+        storageProvider = provider;
         String projectId = configManager.getProjectId();
-        String versionName = configManager.getVersionName();
+        String downloadUrl = configManager.getDownloadUrl();
+        Path workDir = Paths.get(configManager.getWorkDir());
+        if (versionName == null) {
+            List<VersionInfo> versions = getExistingVersions("stable/" + projectId + "/versions.json");
+            if (versions.isEmpty()) {
+                logger.error("No published version to verify");
+                return;
+            }
+            versionName = versions.get(versions.size() - 1).versionName();
+        }
+        String modpackKey = "stable/" + projectId + "/versions/" + versionName + "/modpack.json";
+        Map<String, Path> distRoots = Map.of("common", Paths.get(configManager.getSourceDir()),
+                "server", Paths.get(configManager.getSourceServerDir()),
+                "client", Paths.get(configManager.getSourceClientDir()));
+        UploadConfig uploadConfig = configManager.getUploadConfig();
+        RetryPolicy retryPolicy = new RetryPolicy(uploadConfig.maxRetries(), uploadConfig.retryBaseDelayMillis(),
+                uploadConfig.retryMaxDelayMillis(), uploadConfig.retryBudget());
+        VerifyConfig verifyConfig = configManager.getVerifyConfig();
+        VerifyReport report;
+        try (ChecksumIndex checksums = ChecksumIndex.open(workDir.resolve("checksums.jsonl"));
+             InputStream manifest = provider.getObjectStream(modpackKey)) {
+            if (manifest == null) {
+                logger.error("Manifest of version {} not found: {}", versionName, modpackKey);
+                return;
+            }
+            UploadContext context = new UploadContext(provider, null, checksums, downloadUrl, retryPolicy,
+                    new CompressionPolicy(configManager.getCompressionConfig()), configManager.getChunkingConfig(),
+                    new RunMetrics(), configManager.getPackConfig(), null, null);
+            PackBuilder packs = new PackBuilder(context, configManager.getPackConfig(), distRoots,
+                    PackCache.open(workDir.resolve("pack-cache.json")));
+            report = new Verifier(context, verifyConfig, configManager.getBundleConfig(), distRoots, workDir, packs)
+                    .run(versionName, manifest);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Verification failed", e);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Verification interrupted", e);
+            return;
+        }
 
-        Path sourceDir;
-        Path sourceServerDir;
-        Path sourceClientDir;
+        logger.info("================");
+        logger.info("Verified {}: {} objects, {} match size and CRC64, {} size only, {} unchecked, {} problems, {} repaired",
+                versionName, report.objects(), report.verified(), report.sizeOnly(), report.unchecked(),
+                report.problems().size(), report.repaired());
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        Path reportFile = reportDir(configManager.getMetricsConfig(), workDir)
+                .resolve("verify-" + versionName + "-" + timestamp + ".json");
+        try {
+            Files.createDirectories(reportFile.getParent());
+            mapper.writerWithDefaultPrettyPrinter().writeValue(reportFile.toFile(), report);
+            logger.info("Verify report written to {}", reportFile);
+        } catch (IOException e) {
+            logger.warn("Failed to write verify report", e);
+        }
+    }
 
+    // watches the source directories and stores changed files as they settle, keeping the storage
+    // client and the local caches warm, and publishes when told to on stdin
+    public static void daemon(ConfigManager configManager, CloudStorageProvider provider) {
+        storageProvider = provider;
+        List<DirectoryScanner.Root> roots;
         try {
-            sourceDir = createDirectoryIfNotExists(sourceDirStr);
-            sourceServerDir = createDirectoryIfNotExists(sourceServerStr);
-            sourceClientDir = createDirectoryIfNotExists(sourceClientStr);
+            roots = sourceRoots(configManager);
         } catch (IOException e) {
             logger.error("Source directory error", e);
             return;
         }
+        Caches caches = openCaches(configManager);
+        if (caches == null) {
+            return;
+        }
+        try (SourceWatcher watcher = new SourceWatcher(roots, configManager.getScanConfig(),
+                configManager.getDaemonConfig().debounceMillis())) {
+            Daemon daemon = new Daemon(watcher, new Daemon.Handler() {
+                @Override
+                public void sync(List<SourceWatcher.Changed> files) {
+                    Main.sync(configManager, caches, roots, files);
+                }
+
+                @Override
+                public boolean publish(String versionName) {
+                    // gc or someone else may have deleted objects since the last publish
+                    provider.refresh();
+                    boolean published = run(configManager, provider, Mode.PUBLISH, versionName, caches);
+                    compactCaches(caches);
+                    return published;
+                }
+            });
+            // on a signal the daemon is stopped and saves its state before the JVM exits
+            Thread main = Thread.currentThread();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                daemon.stop();
+                try {
+                    main.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            daemon.run(System.in);
+        } catch (IOException e) {
+            logger.error("Failed to watch source directories", e);
+        } finally {
+            closeCaches(caches);
+        }
+        logger.info("Daemon stopped");
+    }
+
+    // stores the objects of changed files ahead of a publish, so the publish finds them in the
+    // hash index; files is null for every source file
+    private static void sync(ConfigManager configManager, Caches caches, List<DirectoryScanner.Root> roots,
+                             List<SourceWatcher.Changed> files) {
+        UploadConfig uploadConfig = configManager.getUploadConfig();
+        RetryPolicy retryPolicy = new RetryPolicy(uploadConfig.maxRetries(), uploadConfig.retryBaseDelayMillis(),
+                uploadConfig.retryMaxDelayMillis(), uploadConfig.retryBudget());
+        RunMetrics metrics = new RunMetrics();
+        UploadContext context = new UploadContext(storageProvider, caches.index(), caches.checksums(),
+                configManager.getDownloadUrl(), retryPolicy, new CompressionPolicy(configManager.getCompressionConfig()),
+                configManager.getChunkingConfig(), metrics, configManager.getPackConfig(), null, null);
+        long count;
+        // small files are only hashed, their packs are built by the publish
+        try (UploadPipeline pipeline = new UploadPipeline(context, uploadConfig, file -> {})) {
+            if (files == null) {
+                new DirectoryScanner(configManager.getScanConfig(), caches.scanCache()).scan(roots, pipeline::submit);
+            } else {
+                for (SourceWatcher.Changed changed : files) {
+                    // a file can be gone again by the time its batch is synced
+                    if (Files.isRegularFile(changed.file())) {
+                        pipeline.submit(changed.file(), changed.relativePath(), changed.dist());
+                    }
+                }
+            }
+            count = pipeline.finish();
+        } catch (IOException e) {
+            logger.error("Failed to collect files", e);
+            return;
+        } catch (ExecutionException e) {
+            logger.error("Sync failed, the next publish stores what is left", e);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Sync interrupted");
+            return;
+        }
+        RunMetrics.Report report = metrics.report();
+        logger.info("Synced {} files in {} ms: {} uploaded ({} bytes), {} already stored", count,
+                report.durationMillis(), report.filesUploaded(), report.bytesUploaded(), report.filesSkipped());
+    }
+
+    private static void run(ConfigManager configManager, CloudStorageProvider provider, Mode mode) {
+        Caches caches = openCaches(configManager);
+        if (caches == null) {
+            return;
+        }
+        try {
+            run(configManager, provider, mode, configManager.getVersionName(), caches);
+        } finally {
+            closeCaches(caches);
+        }
+    }
+
+    // false if the version wasn't published (or planned)
+    private static boolean run(ConfigManager configManager, CloudStorageProvider provider, Mode mode,
+                               String versionName, Caches caches) {
+        storageProvider = provider;
+
+        // fetch config
+        String downloadUrl = configManager.getDownloadUrl();
+        String projectId = configManager.getProjectId();
+        Path workDir = Paths.get(configManager.getWorkDir());
+
+        List<DirectoryScanner.Root> roots;
+        try {
+            roots = sourceRoots(configManager);
+        } catch (IOException e) {
+            logger.error("Source directory error", e);
+            return false;
+        }
 
         // set libraries(whats the use)
         Map<String, String> libraries = new HashMap<>();
         libraries.put("net.minecraft", "1.7.10");
         libraries.put("net.minecraftforge", "10.13.4.1614");
 
-        storageProvider = StorageProviderFactory.createProvider(
-                StorageProviderFactory.StorageType.TENCENT_COS,
-                secretId, secretKey, region, bucketName
-        );
-
         String modpackKey = "stable/" + projectId + "/versions/" + versionName + "/modpack.json";
         String versionsKey = "stable/" + projectId + "/versions.json";
         String metaKey = "stable/" + projectId + "/meta.json";
 
+        UploadConfig uploadConfig = configManager.getUploadConfig();
+        RetryPolicy retryPolicy = new RetryPolicy(uploadConfig.maxRetries(), uploadConfig.retryBaseDelayMillis(),
+                uploadConfig.retryMaxDelayMillis(), uploadConfig.retryBudget());
+
+        // a plan stores nothing, so it has nothing to resume
+        ReleaseJournal journal;
+        if (mode == Mode.PLAN) {
+            journal = null;
+        } else {
+            try {
+                journal = ReleaseJournal.open(workDir.resolve("journal"), versionName);
+            } catch (IOException e) {
+                logger.error("Failed to open release journal", e);
+                return false;
+            }
+            if (journal.committed() != null) {
+                logger.info("Version {} was committed by an earlier run, finishing its release", versionName);
+                if (!commitRelease(journal, journal.committed(), versionsKey, metaKey, downloadUrl, retryPolicy)) {
+                    return false;
+                }
+                logger.info("================");
+                logger.info("版本: {}", versionName);
+                logger.info("meta.json: {}", downloadUrl + "/" + metaKey);
+                return true;
+            }
+        }
+
         // check version
         try {
             checkExistingVersions(metaKey, versionsKey, versionName);
-        } catch (IOException e) {
-            logger.error("Version check failed");
-            return;
+        } catch (IOException | StorageException e) {
+            logger.error("Version check failed", e);
+            closeJournal(journal);
+            return false;
         }
 
-        List<Path> fileList;
-        List<Path> serverFileList;
-        List<Path> clientFileList;
+        Path planDir = workDir.resolve("plans");
+        PlanWriter plan = null;
         try {
-            fileList = FileUtil.collectFiles(sourceDir);
-            serverFileList = FileUtil.collectFiles(sourceServerDir);
-            clientFileList = FileUtil.collectFiles(sourceClientDir);
+            if (mode == Mode.APPLY) {
+                PlanSummary summary = PlanReader.readSummary(planDir, versionName);
+                logger.info("Applying plan from {}: {} uploads, {} bytes", summary.createdAt(), summary.uploads(),
+                        summary.uploadBytes());
+            } else if (mode == Mode.PLAN) {
+                plan = new PlanWriter(planDir, versionName);
+            }
         } catch (IOException e) {
-            logger.error("Failed to collect files", e);
-            return;
+            logger.error("Failed to open plan", e);
+            closeJournal(journal);
+            return false;
         }
-        logger.info("Found {} common files", fileList.size());
-        logger.info("Found {} server files", serverFileList.size());
-        logger.info("Found {} client files", clientFileList.size());
-        logger.info("Total files: {}", fileList.size() + serverFileList.size() + clientFileList.size());
+
+        HashIndex index = caches.index();
+        ChecksumIndex checksums = caches.checksums();
+        // a daemon keeps the index between runs, so only this run's lookups are counted
+        long indexHits = index.hits();
+        long indexMisses = index.misses();
 
         long startTime = System.currentTimeMillis();
-        List<ModpackFile> results = new ArrayList<>();
-
-        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2);
-        try {
-            List<CompletableFuture<ModpackFile>> commonFutures = fileList.stream()
-                    .map(file -> new ModpackFileUploadTask(storageProvider, file, getRelativePath(file, sourceDir), downloadUrl, "common", 3)
-                            .executeAsync(executor))
-                    .toList();
-            List<CompletableFuture<ModpackFile>> serverFutures = serverFileList.stream()
-                    .map(file -> new ModpackFileUploadTask(storageProvider, file, getRelativePath(file, sourceServerDir), downloadUrl, "server", 3)
-                            .executeAsync(executor))
-                    .toList();
-
-            List<CompletableFuture<ModpackFile>> clientFutures = clientFileList.stream()
-                    .map(file -> new ModpackFileUploadTask(storageProvider, file, getRelativePath(file, sourceClientDir), downloadUrl, "client", 3)
-                            .executeAsync(executor))
-                    .toList();
-
-            List<CompletableFuture<ModpackFile>> allFutures = new ArrayList<>();
-            allFutures.addAll(commonFutures);
-            allFutures.addAll(serverFutures);
-            allFutures.addAll(clientFutures);
-
-            for (CompletableFuture<ModpackFile> future : allFutures) {
-                try {
-                    results.add(future.get());
-                } catch (ExecutionException | InterruptedException e) {
-                    logger.error("File upload failed", e);
-                    return;
+        ManifestWriter manifest = new ManifestWriter(versionName, libraries, META_CODEC);
+
+        MetricsConfig metricsConfig = configManager.getMetricsConfig();
+        RunMetrics metrics = new RunMetrics();
+        MetricsServer metricsServer = startMetricsServer(metrics, metricsConfig);
+        UploadContext context = new UploadContext(storageProvider, index, checksums, downloadUrl, retryPolicy,
+                new CompressionPolicy(configManager.getCompressionConfig()), configManager.getChunkingConfig(), metrics,
+                configManager.getPackConfig(), journal, plan);
+        ScanConfig scanConfig = configManager.getScanConfig();
+        Map<String, Integer> found = new LinkedHashMap<>();
+        Map<String, Path> distRoots = new HashMap<>();
+        roots.forEach(root -> distRoots.put(root.dist(), root.dir()));
+        BundleBuilder bundles = mode == Mode.PLAN ? null : startBundles(configManager.getBundleConfig(), workDir,
+                distRoots, checksums);
+        UploadPipeline.ResultSink publishSink = bundles == null ? manifest::write : file -> {
+            manifest.write(file);
+            bundles.add(file);
+        };
+        PackConfig packConfig = configManager.getPackConfig();
+        PackBuilder packs = mode == Mode.PLAN || !packConfig.enabled() ? null
+                : new PackBuilder(context, packConfig, distRoots, PackCache.open(workDir.resolve("pack-cache.json")));
+        UploadPipeline.ResultSink sink = packs == null ? publishSink : file -> {
+            if (!packs.add(file)) {
+                publishSink.accept(file);
+            }
+        };
+        try (UploadPipeline pipeline = new UploadPipeline(context, uploadConfig, sink)) {
+            long submitted;
+            if (mode == Mode.APPLY) {
+                submitted = PlanReader.forEachEntry(planDir, versionName, entry -> {
+                    ModpackFile done = journal.completed(Path.of(entry.source()), entry.dist(), entry.file());
+                    pipeline.submit(done != null ? ModpackFileUploadTask.fromJournal(context, Path.of(entry.source()),
+                            entry.dist(), done) : ModpackFileUploadTask.fromPlan(context, entry));
+                });
+            } else {
+                ScanCache scanCache = caches.scanCache();
+                submitted = new DirectoryScanner(scanConfig, scanCache).scan(roots, (file, relativePath, dist) -> {
+                    found.merge(dist, 1, Integer::sum);
+                    ModpackFile done = journal != null ? journal.completed(file, dist, relativePath) : null;
+                    if (done != null) {
+                        // through the pipeline all the same, so it lands in the manifest in scan order
+                        pipeline.submit(ModpackFileUploadTask.fromJournal(context, file, dist, done));
+                    } else {
+                        pipeline.submit(file, relativePath, dist);
+                    }
+                });
+                found.forEach((dist, count) -> logger.info("Found {} {} files", count, dist));
+                if (scanCache != null) {
+                    scanCache.save();
                 }
             }
-        } finally {
-            executor.shutdown();
-            try {
-                if (!executor.awaitTermination(60, TimeUnit.SECONDS)) {
-                    executor.shutdownNow();
+            long finished = pipeline.finish();
+            if (finished != submitted) {
+                throw new ExecutionException("Only " + finished + " of " + submitted + " files finished", null);
+            }
+            if (packs != null) {
+                for (ModpackFile file : packs.finish()) {
+                    publishSink.accept(file);
                 }
-            } catch (InterruptedException e) {
-                executor.shutdownNow();
-                Thread.currentThread().interrupt();
             }
+        } catch (IOException e) {
+            logger.error("Failed to collect files", e);
+            closeManifest(manifest);
+            closePlan(plan);
+            closeBundles(bundles);
+            closeJournal(journal);
+            return false;
+        } catch (ExecutionException | InterruptedException e) {
+            logger.error("File upload failed", e);
+            closeManifest(manifest);
+            closePlan(plan);
+            closeBundles(bundles);
+            closeJournal(journal);
+            return false;
+        } finally {
+            // a plan uploads nothing, so its report would only dilute the throughput history
+            if (mode != Mode.PLAN) {
+                writeMetrics(metrics, metricsConfig, workDir);
+            }
+            if (metricsServer != null) {
+                metricsServer.close();
+            }
+        }
+
+        if (mode == Mode.PLAN) {
+            return finishPlan(plan, manifest, getExistingVersions(versionsKey), projectId, versionName,
+                    reportDir(metricsConfig, workDir));
         }
 
         long endTime = System.currentTimeMillis();
         logger.info("Files upload completed in {} ms", endTime - startTime);
+        logger.info("Hash index: {} hits, {} misses", index.hits() - indexHits, index.misses() - indexMisses);
+        if (journal.resumed() > 0) {
+            logger.info("Resumed {} files from the release journal", journal.resumed());
+        }
 
-        // meta files
-        Modpack modpack = new Modpack(results, versionName, libraries);
+        List<Bundle> bundleList = finishBundles(bundles, downloadUrl);
 
-        uploadConfigFile(modpack, modpackKey);
+        // meta files
+        String deltaUrl;
+        try {
+            List<VersionInfo> newVersions = getExistingVersions(versionsKey);
+            manifest.finish(bundleList);
+            uploadWithRetry(retryPolicy, modpackKey, () -> {
+                try (InputStream is = manifest.openCompressedStream()) {
+                    storageProvider.upload(is, manifest.compressedSize(), modpackKey, manifest.codec());
+                }
+            });
+            logger.info("Manifest: {} files, {} bytes compressed", manifest.count(), manifest.compressedSize());
+            deltaUrl = uploadDelta(newVersions, manifest, projectId, versionName, downloadUrl, retryPolicy);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to upload manifest", e);
+            closeJournal(journal);
+            return false;
+        } finally {
+            closeManifest(manifest);
+        }
 
         String currentDate = LocalDateTime.now()
                 .format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
         String modpackUrl = downloadUrl + "/" + modpackKey;
         String changelogUrl = downloadUrl + "/" + "stable/" + projectId + "/versions/" + versionName + "/changelog.json";
+
         VersionInfo lastestVersion = new VersionInfo(
-                versionName, currentDate, modpackUrl, changelogUrl
+                versionName, currentDate, modpackUrl, changelogUrl, deltaUrl
         );
-
-        List<VersionInfo> newVersions = getExistingVersions(versionsKey);
-        newVersions.add(lastestVersion);
-        Versions versions = new Versions(newVersions);
-
-        uploadConfigFile(versions, versionsKey);
-
-        String VersionsUrl = downloadUrl + "/" + versionsKey;
-
-        MetaFile meta = new MetaFile(VersionsUrl, lastestVersion);
-
-        uploadConfigFile(meta, metaKey);
+        try {
+            journal.commit(lastestVersion);
+        } catch (IOException e) {
+            logger.error("Failed to commit version {} to the release journal", versionName, e);
+            closeJournal(journal);
+            return false;
+        }
+        if (!commitRelease(journal, lastestVersion, versionsKey, metaKey, downloadUrl, retryPolicy)) {
+            return false;
+        }
 
         String metaUrl = downloadUrl + "/" + metaKey;
         logger.info("================");
         logger.info("发布完成! 耗时: {}s", (System.currentTimeMillis() - startTime) / 1000.0);
         logger.info("版本: {}", versionName);
         logger.info("meta.json: {}", metaUrl);
+        return true;
+    }
+
+    // publishes a committed version. versions.json goes first so meta.json never points at a
+    // version the list doesn't have; both steps are safe to repeat, so a rerun finishes the job
+    private static boolean commitRelease(ReleaseJournal journal, VersionInfo version, String versionsKey,
+                                         String metaKey, String downloadUrl, RetryPolicy retryPolicy) {
+        try {
+            List<VersionInfo> versions = getExistingVersions(versionsKey);
+            if (versions.stream().noneMatch(v -> v.versionName().equals(version.versionName()))) {
+                versions.add(version);
+                uploadConfigFile(new Versions(versions), versionsKey, retryPolicy);
+            }
+            uploadConfigFile(new MetaFile(downloadUrl + "/" + versionsKey, version), metaKey, retryPolicy);
+            journal.finish();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to publish version {}, run again to finish it", version.versionName(), e);
+            closeJournal(journal);
+            return false;
+        }
+    }
 
-        storageProvider.shutdown();
+    private static List<DirectoryScanner.Root> sourceRoots(ConfigManager configManager) throws IOException {
+        return List.of(new DirectoryScanner.Root(createDirectoryIfNotExists(configManager.getSourceDir()), "common"),
+                new DirectoryScanner.Root(createDirectoryIfNotExists(configManager.getSourceServerDir()), "server"),
+                new DirectoryScanner.Root(createDirectoryIfNotExists(configManager.getSourceClientDir()), "client"));
+    }
+
+    private static Caches openCaches(ConfigManager configManager) {
+        Path workDir = Paths.get(configManager.getWorkDir());
+        HashIndex index;
+        ChecksumIndex checksums;
+        try {
+            index = HashIndex.open(workDir.resolve("hash-index.jsonl"));
+        } catch (IOException e) {
+            logger.error("Failed to open hash index", e);
+            return null;
+        }
+        try {
+            checksums = ChecksumIndex.open(workDir.resolve("checksums.jsonl"));
+        } catch (IOException e) {
+            logger.error("Failed to open checksum index", e);
+            closeIndex(index);
+            return null;
+        }
+        ScanCache scanCache = null;
+        if (configManager.getScanConfig().incremental()) {
+            try {
+                scanCache = ScanCache.open(workDir.resolve("scan-cache.json"));
+            } catch (IOException e) {
+                logger.warn("Failed to open scan cache, scanning in full", e);
+            }
+        }
+        return new Caches(index, checksums, scanCache);
+    }
+
+    // keeps the logs of a long-running daemon from growing without bound
+    private static void compactCaches(Caches caches) {
+        try {
+            caches.index().compact();
+        } catch (IOException e) {
+            logger.warn("Failed to compact hash index", e);
+        }
+        try {
+            caches.checksums().compact();
+        } catch (IOException e) {
+            logger.warn("Failed to compact checksum index", e);
+        }
+    }
+
+    private static void closeCaches(Caches caches) {
+        closeIndex(caches.index());
+        closeChecksums(caches.checksums());
     }
 
     private static Path createDirectoryIfNotExists(String pathStr) throws IOException {
@@ -194,6 +623,38 @@ public class Main {
         return path;
     }
 
+    private static MetricsServer startMetricsServer(RunMetrics metrics, MetricsConfig metricsConfig) {
+        if (metricsConfig.prometheusPort() <= 0) {
+            return null;
+        }
+        try {
+            return new MetricsServer(metrics, metricsConfig.prometheusPort());
+        } catch (IOException e) {
+            logger.warn("Failed to start metrics server on port {}", metricsConfig.prometheusPort(), e);
+            return null;
+        }
+    }
+
+    private static Path reportDir(MetricsConfig metricsConfig, Path workDir) {
+        String reportDir = metricsConfig.reportDir();
+        return reportDir == null || reportDir.isEmpty() ? workDir.resolve("reports") : Paths.get(reportDir);
+    }
+
+    private static void writeMetrics(RunMetrics metrics, MetricsConfig metricsConfig, Path workDir) {
+        Path reports = reportDir(metricsConfig, workDir);
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        Path reportFile = reports.resolve("run-" + timestamp + ".json");
+        try {
+            metrics.writeJson(reportFile);
+            logger.info("Run report written to {}", reportFile);
+            if (metricsConfig.prometheusFile() != null && !metricsConfig.prometheusFile().isEmpty()) {
+                metrics.writePrometheus(Paths.get(metricsConfig.prometheusFile()));
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to write run metrics", e);
+        }
+    }
+
     private static void checkExistingVersions(String metaKey, String versionsKey, String versionName) throws IOException {
         try (InputStream is = storageProvider.getObjectStream(metaKey)) {
             if (is != null) {
@@ -206,10 +667,7 @@ public class Main {
         }
         try (InputStream is = storageProvider.getObjectStream(versionsKey)) {
             if (is != null) {
-                Versions versions = mapper.readValue(is, Versions.class);
-                boolean duplicate = versions.versions().stream()
-                        .anyMatch(v -> v.versionName().equals(versionName));
-                if (duplicate) {
+                if (ManifestReader.containsVersion(is, versionName)) {
                     logger.error("Duplicate version name: {}", versionName);
                     throw new IOException("Duplicate version name");
                 }
@@ -218,35 +676,201 @@ public class Main {
     }
 
     private static List<VersionInfo> getExistingVersions(String versionsKey) {
-        if (storageProvider.fileExists(versionsKey)) {
-            try (InputStream versionsStream = storageProvider.getObjectStream(versionsKey)) {
-                return mapper.readValue(versionsStream, Versions.class).versions();
-            } catch (IOException e) {
-                throw new RuntimeException("Failed to read existing versions", e);
+        try (InputStream versionsStream = storageProvider.getObjectStream(versionsKey)) {
+            if (versionsStream == null) {
+                return new ArrayList<>();
+            }
+            return ManifestReader.readVersions(versionsStream);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read existing versions", e);
+        }
+    }
+
+    private static boolean finishPlan(PlanWriter plan, ManifestWriter manifest, List<VersionInfo> versions,
+                                   String projectId, String versionName, Path reportDir) {
+        try {
+            manifest.finish();
+            ModpackDelta delta = diffWithPrevious(versions, manifest, projectId, versionName);
+            double bytesPerSecond = TransferEstimate.bytesPerSecond(reportDir);
+            double estimatedSeconds = bytesPerSecond > 0 ? plan.uploadBytes() / bytesPerSecond : 0;
+            String createdAt = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+            PlanSummary summary = new PlanSummary(versionName, createdAt, plan.files(), plan.uploads(),
+                    plan.files() - plan.uploads(), plan.bytesRead(), plan.uploadBytes(),
+                    delta == null ? -1 : delta.added().size(), delta == null ? -1 : delta.changed().size(),
+                    delta == null ? -1 : delta.removed().size(), bytesPerSecond / 1024 / 1024, estimatedSeconds);
+            plan.finish(summary);
+            logger.info("================");
+            logger.info("Plan for {}: {} files, {} to upload ({} bytes), {} already stored", versionName,
+                    summary.files(), summary.uploads(), summary.uploadBytes(), summary.reused());
+            if (bytesPerSecond > 0) {
+                logger.info("Estimated transfer time: {}s at {} MB/s", Math.round(estimatedSeconds),
+                        String.format("%.2f", summary.historicalMBps()));
+            } else {
+                logger.info("No earlier run reports to estimate the transfer time from");
+            }
+            logger.info("Run with 'apply' to publish this plan");
+            return true;
+        } catch (IOException e) {
+            logger.error("Failed to save plan", e);
+            return false;
+        } finally {
+            closeManifest(manifest);
+            closePlan(plan);
+        }
+    }
+
+    // a missing or unreadable previous manifest only costs clients the shortcut, so it doesn't fail the release
+    private static ModpackDelta diffWithPrevious(List<VersionInfo> versions, ManifestWriter manifest, String projectId,
+                                                 String versionName) {
+        if (versions.isEmpty()) {
+            return null;
+        }
+        String previousVersion = versions.get(versions.size() - 1).versionName();
+        String previousKey = "stable/" + projectId + "/versions/" + previousVersion + "/modpack.json";
+        ModpackDelta delta;
+        try (InputStream is = storageProvider.getObjectStream(previousKey)) {
+            if (is == null) {
+                logger.warn("Manifest of version {} not found, skipping delta", previousVersion);
+                return null;
+            }
+            delta = ManifestDiff.diff(is, previousVersion, manifest, versionName);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to compare with version {}, skipping delta", previousVersion, e);
+            return null;
+        }
+        logger.info("Delta from {}: {} added, {} changed, {} removed", previousVersion,
+                delta.added().size(), delta.changed().size(), delta.removed().size());
+        return delta;
+    }
+
+    private static String uploadDelta(List<VersionInfo> versions, ManifestWriter manifest, String projectId,
+                                      String versionName, String downloadUrl, RetryPolicy retryPolicy)
+            throws IOException {
+        ModpackDelta delta = diffWithPrevious(versions, manifest, projectId, versionName);
+        if (delta == null) {
+            return null;
+        }
+        String deltaKey = "stable/" + projectId + "/versions/" + versionName + "/delta.json";
+        uploadConfigFile(delta, deltaKey, retryPolicy);
+        return downloadUrl + "/" + deltaKey;
+    }
+
+    private static <T> void uploadConfigFile(T config, String key, RetryPolicy retryPolicy) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (OutputStream os = META_CODEC.encode(baos)) {
+            mapper.writeValue(os, config);
+        }
+        byte[] data = baos.toByteArray();
+        uploadWithRetry(retryPolicy, key,
+                () -> storageProvider.upload(new ByteArrayInputStream(data), data.length, key, META_CODEC));
+    }
+
+    private interface Upload {
+        void run() throws IOException;
+    }
+
+    // metadata goes through the same retry policy as the files of the pipeline
+    private static void uploadWithRetry(RetryPolicy retryPolicy, String key, Upload upload) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                upload.run();
+                retryPolicy.onSuccess();
+                return;
+            } catch (IOException | RuntimeException e) {
+                RetryPolicy.Decision decision = retryPolicy.decide(e, attempt);
+                if (decision != RetryPolicy.Decision.RETRY) {
+                    throw e;
+                }
+                long delay = retryPolicy.backoffMillis(attempt);
+                logger.warn("Retry {} for {} in {} ms: {}", attempt + 1, key, delay, e.getMessage());
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted before retrying " + key);
+                }
             }
         }
-        return new ArrayList<>();
     }
 
-    private static <T> void uploadConfigFile(T config, String key) {
+    private static BundleBuilder startBundles(BundleConfig bundleConfig, Path workDir, Map<String, Path> roots,
+                                              ChecksumIndex checksums) {
+        if (!bundleConfig.enabled()) {
+            return null;
+        }
         try {
-            String configJson = mapper.writeValueAsString(config);
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            DeflaterOutputStream dos = new DeflaterOutputStream(baos, new Deflater(Deflater.BEST_COMPRESSION));
-            dos.write(configJson.getBytes(StandardCharsets.UTF_8));
-            dos.finish();
-            dos.close();
+            return new BundleBuilder(workDir, roots, bundleConfig, checksums);
+        } catch (IOException e) {
+            logger.warn("Failed to start bundles, publishing without them", e);
+            return null;
+        }
+    }
 
-            byte[] configBytes = baos.toByteArray();
+    // bundles only speed up fresh installs, so a version without them is still published
+    private static List<Bundle> finishBundles(BundleBuilder bundles, String downloadUrl) {
+        if (bundles == null) {
+            return List.of();
+        }
+        try {
+            return bundles.finish(storageProvider, downloadUrl);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to store bundles, publishing without them", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while storing bundles, publishing without them", e);
+        }
+        return List.of();
+    }
+
+    private static void closeBundles(BundleBuilder bundles) {
+        if (bundles != null) {
+            bundles.close();
+        }
+    }
 
-            InputStream is = new ByteArrayInputStream(configBytes);
-            storageProvider.upload(is, key, true);
+    private static void closeIndex(HashIndex index) {
+        try {
+            index.close();
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            logger.warn("Failed to save hash index", e);
         }
     }
 
-    private static String getRelativePath(Path file, Path baseDir) {
-        return baseDir.relativize(file).toString().replace("\\", "/");
+    private static void closeChecksums(ChecksumIndex checksums) {
+        try {
+            checksums.close();
+        } catch (IOException e) {
+            logger.warn("Failed to save checksum index", e);
+        }
+    }
+
+    private static void closeJournal(ReleaseJournal journal) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close release journal", e);
+        }
+    }
+
+    private static void closePlan(PlanWriter plan) {
+        if (plan == null) {
+            return;
+        }
+        try {
+            plan.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close plan", e);
+        }
+    }
+
+    private static void closeManifest(ManifestWriter manifest) {
+        try {
+            manifest.close();
+        } catch (IOException e) {
+            logger.warn("Failed to delete manifest buffer", e);
+        }
     }
 }
\ No newline at end of file
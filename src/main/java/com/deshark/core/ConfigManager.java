@@ -1,6 +1,17 @@
 package com.deshark.core;
 
+import com.deshark.core.schemas.BundleConfig;
+import com.deshark.core.schemas.ChunkingConfig;
+import com.deshark.core.schemas.CompressionConfig;
 import com.deshark.core.schemas.Config;
+import com.deshark.core.schemas.DaemonConfig;
+import com.deshark.core.schemas.GcConfig;
+import com.deshark.core.schemas.MetricsConfig;
+import com.deshark.core.schemas.PackConfig;
+import com.deshark.core.schemas.ScanConfig;
+import com.deshark.core.schemas.StorageConfig;
+import com.deshark.core.schemas.UploadConfig;
+import com.deshark.core.schemas.VerifyConfig;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import org.slf4j.Logger;
@@ -12,6 +23,7 @@ import java.io.IOException;
 public class ConfigManager {
 
     private final static Logger logger = LoggerFactory.getLogger(ConfigManager.class);
+    private final static String DEFAULT_WORK_DIR = ".mup";
 
     private Config config;
     private final File configFile = new File("mup-config.json");
@@ -21,6 +33,10 @@ public class ConfigManager {
         loadConfig();
     }
 
+    public ConfigManager(Config config) {
+        this.config = config;
+    }
+
     private void loadConfig() {
         try {
             if (configFile.exists()) {
@@ -43,6 +59,39 @@ public class ConfigManager {
         }
     }
 
+    public StorageConfig getStorageConfig() {
+        return config.storage();
+    }
+    public UploadConfig getUploadConfig() {
+        return config.upload() != null ? config.upload() : UploadConfig.empty();
+    }
+    public ChunkingConfig getChunkingConfig() {
+        return config.chunking() != null ? config.chunking() : ChunkingConfig.empty();
+    }
+    public CompressionConfig getCompressionConfig() {
+        return config.compression() != null ? config.compression() : CompressionConfig.empty();
+    }
+    public MetricsConfig getMetricsConfig() {
+        return config.metrics() != null ? config.metrics() : MetricsConfig.empty();
+    }
+    public ScanConfig getScanConfig() {
+        return config.scan() != null ? config.scan() : ScanConfig.empty();
+    }
+    public GcConfig getGcConfig() {
+        return config.gc() != null ? config.gc() : GcConfig.empty();
+    }
+    public BundleConfig getBundleConfig() {
+        return config.bundle() != null ? config.bundle() : BundleConfig.empty();
+    }
+    public PackConfig getPackConfig() {
+        return config.pack() != null ? config.pack() : PackConfig.empty();
+    }
+    public VerifyConfig getVerifyConfig() {
+        return config.verify() != null ? config.verify() : VerifyConfig.empty();
+    }
+    public DaemonConfig getDaemonConfig() {
+        return config.daemon() != null ? config.daemon() : DaemonConfig.empty();
+    }
     public String getSecretId() {
         return config.storage().secretId();
     }
@@ -73,4 +122,8 @@ public class ConfigManager {
     public String getVersionName() {
         return config.versionName();
     }
+    public String getWorkDir() {
+        String workDir = config.workDir();
+        return workDir == null || workDir.isEmpty() ? DEFAULT_WORK_DIR : workDir;
+    }
 }
\ No newline at end of file
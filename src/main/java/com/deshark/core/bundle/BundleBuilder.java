@@ -0,0 +1,243 @@
+package com.deshark.core.bundle;
+
+import com.deshark.core.codec.Codecs;
+import com.deshark.core.index.ChecksumIndex;
+import com.deshark.core.schemas.Bundle;
+import com.deshark.core.schemas.BundleConfig;
+import com.deshark.core.schemas.ModpackFile;
+import com.deshark.core.storage.CloudStorageProvider;
+import com.deshark.core.storage.StorageKeys;
+import com.deshark.core.utils.Crc64;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Builds the client and server bundles of a version from the files the upload pipeline
+ * publishes. Files are collected as they come and written when the version is done, sorted by
+ * path: the pipeline delivers them in the order the parallel scan found them, which changes
+ * from run to run, and unchanged files have to give the same zip to be found in the bucket
+ * under the same content key. Each file is read once and written to every bundle it belongs
+ * to, and each zip is hashed as it is written. Bundles are an optimization: if one can't be
+ * built the version is published without them.
+ */
+public final class BundleBuilder implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(BundleBuilder.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // a fixed entry time keeps the zip of unchanged files byte for byte the same
+    private static final LocalDateTime ENTRY_TIME = LocalDateTime.of(1980, 1, 1, 0, 0);
+    // by path; a file in more than one dist goes to a bundle from common first
+    private static final Comparator<ModpackFile> ORDER = Comparator.comparing(ModpackFile::file)
+            .thenComparing(file -> !"common".equals(file.dist()))
+            .thenComparing(ModpackFile::dist);
+
+    private final Map<String, Path> roots;
+    private final BundleConfig config;
+    private final ChecksumIndex checksums;
+    private final List<Target> targets = new ArrayList<>();
+    private final List<ModpackFile> files = new ArrayList<>();
+    private boolean closed;
+
+    private static final class Target {
+        final String dist;
+        final Path file;
+        final MessageDigest digest;
+        final Crc64 crc = new Crc64();
+        final ZipOutputStream zip;
+        final Set<String> names = new HashSet<>();
+
+        Target(String dist, Path file) throws IOException {
+            this.dist = dist;
+            this.file = file;
+            this.digest = sha256();
+            this.zip = new ZipOutputStream(new CheckedOutputStream(new DigestOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE), digest), crc));
+        }
+
+        boolean includes(String fileDist) {
+            return "common".equals(fileDist) || dist.equals(fileDist);
+        }
+    }
+
+    // roots maps each dist to the directory its relative paths start from
+    public BundleBuilder(Path workDir, Map<String, Path> roots, BundleConfig config, ChecksumIndex checksums)
+            throws IOException {
+        this.roots = roots;
+        this.config = config;
+        this.checksums = checksums;
+        Path dir = Files.createDirectories(workDir.resolve("bundles"));
+        try {
+            for (String dist : List.of("client", "server")) {
+                targets.add(new Target(dist, Files.createTempFile(dir, dist + "-", ".zip")));
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    // in any order; the bundles are written sorted
+    public synchronized void add(ModpackFile file) {
+        if (file.size() <= config.maxFileSize()) {
+            files.add(file);
+        }
+    }
+
+    // completes the zips and stores those not in the bucket yet; empty if they couldn't be built
+    public List<Bundle> finish(CloudStorageProvider storage, String downloadUrl) throws IOException, InterruptedException {
+        return complete(storage, downloadUrl, null);
+    }
+
+    // completes the zips and stores those whose hash is in hashes again, replacing their objects
+    public List<Bundle> restore(CloudStorageProvider storage, String downloadUrl, Set<String> hashes)
+            throws IOException, InterruptedException {
+        return complete(storage, downloadUrl, hashes);
+    }
+
+    private synchronized List<Bundle> complete(CloudStorageProvider storage, String downloadUrl, Set<String> replace)
+            throws IOException, InterruptedException {
+        List<Bundle> bundles = new ArrayList<>();
+        try {
+            if (!write()) {
+                return bundles;
+            }
+            for (Target target : targets) {
+                target.zip.close();
+                if (target.names.isEmpty()) {
+                    continue;
+                }
+                String hash = HexFormat.of().formatHex(target.digest.digest());
+                String key = StorageKeys.contentKey(hash, Codecs.IDENTITY);
+                long size = Files.size(target.file);
+                if (replace != null) {
+                    if (replace.contains(hash)) {
+                        storage.upload(target.file, key, Codecs.IDENTITY);
+                        checksums.put(key, size, target.crc);
+                    }
+                } else if (storage.fileExists(key)) {
+                    log.info("Bundle {} is unchanged", target.dist);
+                } else {
+                    storage.upload(target.file, key, Codecs.IDENTITY);
+                    checksums.put(key, size, target.crc);
+                }
+                bundles.add(new Bundle(target.dist, hash, downloadUrl + "/" + key, size, target.names.size()));
+                log.info("Bundle {}: {} files, {} bytes", target.dist, target.names.size(), size);
+            }
+            return bundles;
+        } finally {
+            close();
+        }
+    }
+
+    // false if a file couldn't be added, and the bundles are left out
+    private boolean write() throws InterruptedException {
+        files.sort(ORDER);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (ModpackFile file : files) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException("Interrupted while writing bundles");
+            }
+            try {
+                append(file, buffer);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Failed to add {} to the bundles, publishing without them", file.file(), e);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void append(ModpackFile file, byte[] buffer) throws IOException {
+        List<Target> matching = new ArrayList<>();
+        for (Target target : targets) {
+            if (target.includes(file.dist())) {
+                if (target.names.add(file.file())) {
+                    matching.add(target);
+                } else {
+                    log.warn("{} is in more than one dist, the bundle keeps the first", file.file());
+                }
+            }
+        }
+        if (matching.isEmpty()) {
+            return;
+        }
+        Path source = roots.get(file.dist()).resolve(file.file());
+        long size = Files.size(source);
+        if (size != file.size()) {
+            throw new IOException("File changed since it was hashed: " + source);
+        }
+        // files the pipeline found incompressible are stored, not deflated again
+        int level = Codecs.isIdentity(Codecs.forName(file.codec())) ? Deflater.NO_COMPRESSION : config.level();
+        for (Target target : matching) {
+            target.zip.setLevel(level);
+            ZipEntry entry = new ZipEntry(file.file());
+            entry.setTimeLocal(ENTRY_TIME);
+            target.zip.putNextEntry(entry);
+        }
+        long copied = 0;
+        try (InputStream is = Files.newInputStream(source)) {
+            int read;
+            while ((read = is.read(buffer)) > 0) {
+                for (Target target : matching) {
+                    target.zip.write(buffer, 0, read);
+                }
+                copied += read;
+            }
+        }
+        if (copied != size) {
+            throw new IOException("File changed while it was bundled: " + source);
+        }
+        for (Target target : matching) {
+            target.zip.closeEntry();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Target target : targets) {
+            try {
+                target.zip.close();
+            } catch (IOException e) {
+                log.debug("Failed to close bundle {}", target.dist, e);
+            }
+            try {
+                Files.deleteIfExists(target.file);
+            } catch (IOException e) {
+                log.warn("Failed to delete {}", target.file, e);
+            }
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
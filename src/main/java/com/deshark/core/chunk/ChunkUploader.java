@@ -0,0 +1,176 @@
+package com.deshark.core.chunk;
+
+import com.deshark.core.codec.Codec;
+import com.deshark.core.codec.Codecs;
+import com.deshark.core.index.ChecksumIndex;
+import com.deshark.core.schemas.FileChunk;
+import com.deshark.core.storage.CloudStorageProvider;
+import com.deshark.core.storage.StorageKeys;
+import com.deshark.core.utils.Crc64;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Uploads the chunks of one file that aren't in the bucket yet. Each chunk is read from the
+ * file by offset when its upload starts, so at most {@code concurrency} chunks are in memory.
+ * Every request also takes a permit from the caller's {@code connections}, shared with the
+ * uploads of other files, so several chunked files at once don't multiply the connections.
+ */
+public class ChunkUploader {
+
+    public record Result(int chunks, int uploaded, long bytes) {}
+
+    private ChunkUploader() {}
+
+    // path is the file's manifest path, which decides the form of its chunk keys; connections may
+    // be null when there is no limit to share
+    public static Result upload(CloudStorageProvider storage, Path file, String path, List<FileChunk> chunks,
+                                Codec codec,
+                                int concurrency, Semaphore connections, ChecksumIndex checksums)
+            throws IOException, InterruptedException {
+        // a chunk that repeats within the file is uploaded once
+        Map<String, FileChunk> byKey = new LinkedHashMap<>();
+        for (FileChunk chunk : chunks) {
+            byKey.putIfAbsent(StorageKeys.contentKey(chunk.hash(), codec, path), chunk);
+        }
+        Set<String> existing;
+        acquire(connections);
+        try {
+            existing = storage.existingKeys(byKey.keySet());
+        } finally {
+            release(connections);
+        }
+
+        Semaphore permits = new Semaphore(concurrency);
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Future<Long>> uploads = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Map.Entry<String, FileChunk> entry : byKey.entrySet()) {
+                if (existing.contains(entry.getKey())) {
+                    continue;
+                }
+                permits.acquire();
+                acquire(connections);
+                if (failed.get()) {
+                    release(connections);
+                    permits.release();
+                    break;
+                }
+                uploads.add(executor.submit(() -> {
+                    try {
+                        return uploadChunk(storage, channel, entry.getValue(), entry.getKey(), codec, checksums);
+                    } catch (IOException | RuntimeException e) {
+                        failed.set(true);
+                        throw e;
+                    } finally {
+                        release(connections);
+                        permits.release();
+                    }
+                }));
+            }
+            long bytes = 0;
+            for (Future<Long> upload : uploads) {
+                bytes += upload.get();
+            }
+            return new Result(byKey.size(), uploads.size(), bytes);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    // stores one chunk again under key, replacing its object; false if the file no longer holds the chunk
+    public static boolean restore(CloudStorageProvider storage, Path file, FileChunk chunk, String key, Codec codec,
+                                  ChecksumIndex checksums) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < chunk.offset() + chunk.size()) {
+                return false;
+            }
+            byte[] data = read(channel, chunk);
+            if (!HexFormat.of().formatHex(sha256().digest(data)).equals(chunk.hash())) {
+                return false;
+            }
+            store(storage, data, key, codec, checksums);
+            return true;
+        }
+    }
+
+    private static void acquire(Semaphore connections) throws InterruptedException {
+        if (connections != null) {
+            connections.acquire();
+        }
+    }
+
+    private static void release(Semaphore connections) {
+        if (connections != null) {
+            connections.release();
+        }
+    }
+
+    private static long uploadChunk(CloudStorageProvider storage, FileChannel channel, FileChunk chunk,
+                                    String key, Codec codec, ChecksumIndex checksums) throws IOException {
+        return store(storage, read(channel, chunk), key, codec, checksums);
+    }
+
+    private static byte[] read(FileChannel channel, FileChunk chunk) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(chunk.size()));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, chunk.offset() + buffer.position()) < 0) {
+                throw new EOFException("File shrank while uploading chunk at " + chunk.offset());
+            }
+        }
+        return buffer.array();
+    }
+
+    private static long store(CloudStorageProvider storage, byte[] data, String key, Codec codec,
+                              ChecksumIndex checksums) throws IOException {
+        if (!Codecs.isIdentity(codec)) {
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream(data.length / 2);
+            try (OutputStream os = codec.encode(encoded)) {
+                os.write(data);
+            }
+            data = encoded.toByteArray();
+        }
+        Crc64 crc = new Crc64();
+        crc.update(data);
+        storage.upload(new ByteArrayInputStream(data), data.length, key, codec);
+        checksums.put(key, data.length, crc);
+        return data.length;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
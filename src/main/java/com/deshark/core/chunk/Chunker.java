@@ -0,0 +1,133 @@
+package com.deshark.core.chunk;
+
+import com.deshark.core.schemas.ChunkingConfig;
+
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Splits the bytes written to it into content-defined chunks and hashes each one, so an edit
+ * in the middle of a file only changes the chunks around it. Boundaries come from a gear
+ * rolling hash with normalized chunking (FastCDC): a stricter mask below the average size and
+ * a looser one above it keep chunk sizes close to the average. Only the digest state is kept,
+ * never the chunk data.
+ */
+public class Chunker extends OutputStream {
+    // part of the storage format: changing the table or masks moves every boundary
+    private static final long[] GEAR = gearTable(0x6d75702d63646331L);
+
+    private final int minSize;
+    private final int avgSize;
+    private final int maxSize;
+    private final long strictMask;
+    private final long looseMask;
+    private final MessageDigest digest;
+    private final List<Chunk> chunks = new ArrayList<>();
+    private long chunkStart;
+    private int chunkLength;
+    private long fingerprint;
+    private boolean closed;
+
+    public record Chunk(String hash, long offset, int size) {}
+
+    public Chunker(ChunkingConfig config) {
+        this.minSize = config.minChunkSize();
+        this.avgSize = config.avgChunkSize();
+        this.maxSize = config.maxChunkSize();
+        int bits = Integer.numberOfTrailingZeros(avgSize);
+        this.strictMask = highBits(bits + 1);
+        this.looseMask = highBits(bits - 1);
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-256 algorithm not available", e);
+        }
+    }
+
+    @Override
+    public void write(int b) {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        int segmentStart = off;
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            // a byte drops out of the fingerprint after 64 shifts, so anything that far before
+            // the minimum size can't influence a boundary and needn't be hashed
+            int skip = Math.min(end - i, minSize - Long.SIZE - chunkLength);
+            if (skip > 0) {
+                i += skip;
+                chunkLength += skip;
+                if (i == end) {
+                    break;
+                }
+            }
+            fingerprint = (fingerprint << 1) + GEAR[b[i] & 0xFF];
+            chunkLength++;
+            if (isBoundary()) {
+                digest.update(b, segmentStart, i + 1 - segmentStart);
+                segmentStart = i + 1;
+                cut();
+            }
+        }
+        digest.update(b, segmentStart, end - segmentStart);
+    }
+
+    private boolean isBoundary() {
+        if (chunkLength < minSize) {
+            return false;
+        }
+        if (chunkLength >= maxSize) {
+            return true;
+        }
+        return (fingerprint & (chunkLength < avgSize ? strictMask : looseMask)) == 0;
+    }
+
+    private void cut() {
+        chunks.add(new Chunk(HexFormat.of().formatHex(digest.digest()), chunkStart, chunkLength));
+        chunkStart += chunkLength;
+        chunkLength = 0;
+        fingerprint = 0;
+    }
+
+    // emits the last chunk
+    @Override
+    public void close() {
+        if (!closed && chunkLength > 0) {
+            cut();
+        }
+        closed = true;
+    }
+
+    public List<Chunk> chunks() {
+        if (!closed) {
+            throw new IllegalStateException("Chunker is not closed");
+        }
+        return chunks;
+    }
+
+    // the gear hash shifts left, so its high bits cover the widest window of input
+    private static long highBits(int bits) {
+        return bits <= 0 ? 0 : -1L << (64 - bits);
+    }
+
+    // SplitMix64, spelled out so the table never depends on a library implementation
+    private static long[] gearTable(long seed) {
+        long[] table = new long[256];
+        long state = seed;
+        for (int i = 0; i < table.length; i++) {
+            state += 0x9E3779B97F4A7C15L;
+            long z = state;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            table[i] = z ^ (z >>> 31);
+        }
+        return table;
+    }
+}
@@ -0,0 +1,19 @@
+package com.deshark.core.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Encoding applied to an object before upload. The name is recorded in the manifest and sent
+ * as the object's Content-Encoding so launchers and {@code getObjectStream} know how to decode.
+ */
+public interface Codec {
+
+    String name();
+
+    // closing the returned stream finishes the encoding and closes out
+    OutputStream encode(OutputStream out) throws IOException;
+
+    InputStream decode(InputStream in);
+}
@@ -0,0 +1,42 @@
+package com.deshark.core.codec;
+
+import java.util.zip.Deflater;
+
+public class Codecs {
+    public static final String IDENTITY_NAME = "identity";
+    public static final String DEFLATE_NAME = "deflate";
+    // level 9 costs several times the CPU of level 6 for 1-2% smaller output
+    public static final int DEFAULT_DEFLATE_LEVEL = 6;
+
+    public static final Codec IDENTITY = new IdentityCodec();
+    public static final Codec DEFLATE = deflate(DEFAULT_DEFLATE_LEVEL);
+
+    private Codecs() {}
+
+    public static Codec deflate(int level) {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid deflate level: " + level);
+        }
+        return new DeflateCodec(level);
+    }
+
+    // decoder for a manifest codec name or Content-Encoding; null means the object is stored as is
+    public static Codec forName(String name) {
+        if (name == null || name.isEmpty() || IDENTITY_NAME.equals(name)) {
+            return IDENTITY;
+        }
+        if (DEFLATE_NAME.equals(name)) {
+            return DEFLATE;
+        }
+        throw new IllegalArgumentException("Unsupported codec: " + name);
+    }
+
+    public static boolean isIdentity(Codec codec) {
+        return IDENTITY_NAME.equals(codec.name());
+    }
+
+    // Content-Encoding header for objects stored with codec, null when stored as is
+    public static String contentEncoding(Codec codec) {
+        return isIdentity(codec) ? null : codec.name();
+    }
+}
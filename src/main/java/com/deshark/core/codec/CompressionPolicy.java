@@ -0,0 +1,70 @@
+package com.deshark.core.codec;
+
+import com.deshark.core.schemas.CompressionConfig;
+import com.deshark.core.utils.FileUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Picks the codec a file is stored with. Known text formats are deflated and known archives
+ * and media are stored as is; in SNIFF mode anything else is decided by deflating a sample
+ * from the start of the file and checking how much it shrinks.
+ */
+public class CompressionPolicy {
+    private final CompressionConfig config;
+    private final Codec deflate;
+
+    public CompressionPolicy(CompressionConfig config) {
+        this.config = config;
+        this.deflate = Codecs.deflate(config.level());
+    }
+
+    public Codec choose(Path file, long size) throws IOException {
+        if (FileUtil.shouldCompressFile(file)) {
+            return deflate;
+        }
+        if (config.mode() != CompressionConfig.Mode.SNIFF || size == 0 || FileUtil.isIncompressibleFile(file)) {
+            return Codecs.IDENTITY;
+        }
+        return sampleRatio(file) <= config.maxRatio() ? deflate : Codecs.IDENTITY;
+    }
+
+    // the encoder for a codec name recorded by an earlier run, at the configured level
+    public Codec forName(String name) {
+        Codec codec = Codecs.forName(name);
+        return Codecs.isIdentity(codec) ? codec : deflate;
+    }
+
+    private double sampleRatio(Path file) throws IOException {
+        byte[] sample;
+        try (InputStream is = Files.newInputStream(file)) {
+            sample = is.readNBytes(config.sampleSize());
+        }
+        if (sample.length == 0) {
+            return 1;
+        }
+        CountingOutputStream counter = new CountingOutputStream();
+        try (OutputStream os = deflate.encode(counter)) {
+            os.write(sample);
+        }
+        return (double) counter.count / sample.length;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.deshark.core.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
+
+class DeflateCodec implements Codec {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] NO_INPUT = new byte[0];
+
+    private final int level;
+
+    DeflateCodec(int level) {
+        this.level = level;
+    }
+
+    @Override
+    public String name() {
+        return Codecs.DEFLATE_NAME;
+    }
+
+    @Override
+    public OutputStream encode(OutputStream out) {
+        return new Encoder(out, new Deflater(level));
+    }
+
+    @Override
+    public InputStream decode(InputStream in) {
+        return new InflaterInputStream(in);
+    }
+
+    /**
+     * A deflating stream that also accepts {@link ByteBuffer}s, which are handed to the
+     * Deflater as they are so direct and mapped buffers are compressed without a heap copy.
+     * Every write consumes its whole input.
+     */
+    private static class Encoder extends OutputStream implements WritableByteChannel {
+        private final OutputStream out;
+        private final Deflater deflater;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private boolean closed;
+
+        Encoder(OutputStream out, Deflater deflater) {
+            this.out = out;
+            this.deflater = deflater;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ensureOpen();
+            deflater.setInput(b, off, len);
+            drain();
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            ensureOpen();
+            int length = src.remaining();
+            deflater.setInput(src);
+            drain();
+            // the Deflater keeps a reference to its input, and the caller may reuse the buffer
+            deflater.setInput(NO_INPUT);
+            return length;
+        }
+
+        private void drain() throws IOException {
+            while (!deflater.needsInput()) {
+                int length = deflater.deflate(buffer, 0, buffer.length);
+                if (length > 0) {
+                    out.write(buffer, 0, length);
+                }
+            }
+        }
+
+        private void ensureOpen() throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !closed;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int length = deflater.deflate(buffer, 0, buffer.length);
+                    out.write(buffer, 0, length);
+                }
+                out.close();
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+}
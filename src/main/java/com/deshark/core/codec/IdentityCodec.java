@@ -0,0 +1,22 @@
+package com.deshark.core.codec;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+class IdentityCodec implements Codec {
+
+    @Override
+    public String name() {
+        return Codecs.IDENTITY_NAME;
+    }
+
+    @Override
+    public OutputStream encode(OutputStream out) {
+        return out;
+    }
+
+    @Override
+    public InputStream decode(InputStream in) {
+        return in;
+    }
+}
@@ -0,0 +1,120 @@
+package com.deshark.core.daemon;
+
+import com.deshark.core.scan.SourceWatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Keeps running between releases: settled changes from the watcher are synced as they come in
+ * and commands are read line by line from an input. Both are queued and run one at a time on
+ * the thread that called {@link #run}, so a publish never overlaps a sync.
+ */
+public class Daemon {
+    private static final Logger log = LoggerFactory.getLogger(Daemon.class);
+
+    private final SourceWatcher watcher;
+    private final Handler handler;
+    private final BlockingQueue<Runnable> work = new LinkedBlockingQueue<>();
+    private volatile boolean stopped;
+    private volatile Thread loop;
+    private int syncedSincePublish;
+    private String lastPublished;
+
+    public interface Handler {
+        // stores the objects of the given files, or of every source file when files is null
+        void sync(List<SourceWatcher.Changed> files);
+
+        boolean publish(String versionName);
+    }
+
+    public Daemon(SourceWatcher watcher, Handler handler) {
+        this.watcher = watcher;
+        this.handler = handler;
+    }
+
+    // returns once stopped by a command or by stop()
+    public void run(InputStream commands) throws IOException {
+        loop = Thread.currentThread();
+        try {
+            // watching starts before the first sync so nothing changed during it is missed
+            watcher.start(changes -> work.add(() -> sync(changes)));
+            Thread.ofPlatform().daemon().name("daemon-commands").start(() -> read(commands));
+            log.info("Watching {} directories", watcher.directories());
+            handler.sync(null);
+            log.info("Ready, commands: publish <version>, sync, status, stop");
+            while (!stopped) {
+                work.take().run();
+            }
+        } catch (InterruptedException e) {
+            log.info("Daemon interrupted");
+        } finally {
+            // the interrupt would close the channels the caller still has to save its state with
+            Thread.interrupted();
+            watcher.close();
+        }
+    }
+
+    // stops from another thread; a publish in progress is cut short and resumed from its
+    // journal by the next publish of the same version
+    public void stop() {
+        stopped = true;
+        Thread thread = loop;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void read(InputStream commands) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(commands, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String command = line.strip();
+                if (!command.isEmpty()) {
+                    work.add(() -> command(command));
+                }
+            }
+            // run as a service without input it carries on until stopped
+            log.info("Command input closed, running until stopped");
+        } catch (IOException e) {
+            log.warn("Failed to read commands", e);
+        }
+    }
+
+    private void command(String line) {
+        String[] parts = line.split("\\s+");
+        switch (parts[0]) {
+            case "publish" -> {
+                if (parts.length != 2) {
+                    log.error("Usage: publish <version>");
+                } else if (handler.publish(parts[1])) {
+                    lastPublished = parts[1];
+                    syncedSincePublish = 0;
+                }
+            }
+            case "sync" -> handler.sync(null);
+            case "status" -> log.info("Watching {} directories, {} files synced since the last publish, last published: {}",
+                    watcher.directories(), syncedSincePublish, lastPublished == null ? "none" : lastPublished);
+            case "stop" -> stopped = true;
+            default -> log.error("Unknown command: {} (expected publish <version>, sync, status or stop)", parts[0]);
+        }
+    }
+
+    private void sync(SourceWatcher.Changes changes) {
+        if (changes.rescan()) {
+            log.info("Changes may have been missed, syncing everything");
+            handler.sync(null);
+            return;
+        }
+        syncedSincePublish += changes.files().size();
+        handler.sync(changes.files());
+    }
+}
@@ -0,0 +1,293 @@
+package com.deshark.core.gc;
+
+import com.deshark.core.codec.Codec;
+import com.deshark.core.codec.Codecs;
+import com.deshark.core.index.HashIndex;
+import com.deshark.core.manifest.ManifestReader;
+import com.deshark.core.schemas.Bundle;
+import com.deshark.core.schemas.FileChunk;
+import com.deshark.core.schemas.GcConfig;
+import com.deshark.core.schemas.ModpackFile;
+import com.deshark.core.schemas.VersionInfo;
+import com.deshark.core.storage.CloudStorageProvider;
+import com.deshark.core.storage.StorageKeys;
+import com.deshark.core.storage.StoredObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes content-addressed objects that no published version references. The files and
+ * bundles of every manifest listed in {@code versions.json} are streamed into a set of 64-bit
+ * key fingerprints; a fingerprint collision can only keep an object that could have been
+ * deleted, never the other way round. The content shards are then listed in parallel and
+ * unreferenced objects older than the grace period are deleted in batches.
+ *
+ * <p>Must not run while a publish is in flight: an object that a publish finds and reuses
+ * is only referenced once that version lands in {@code versions.json}. As a guard the
+ * version list is read again before anything is deleted and the run stops if it changed.
+ */
+public class GarbageCollector {
+    private static final Logger log = LoggerFactory.getLogger(GarbageCollector.class);
+    private static final String HEX = "0123456789abcdef";
+
+    private final CloudStorageProvider storage;
+    private final GcConfig config;
+    private final String projectId;
+    private final String downloadUrl;
+    private final Clock clock;
+
+    public record Result(int versions, long liveKeys, long listed, long unreferenced, long young,
+                         long deleted, long deletedBytes) {}
+
+    private record ShardResult(long listed, long young, List<StoredObject> garbage) {}
+
+    private record DeleteResult(List<StoredObject> batch, Set<String> deleted) {}
+
+    private interface Task<T> {
+        T call() throws Exception;
+    }
+
+    public GarbageCollector(CloudStorageProvider storage, GcConfig config, String projectId, String downloadUrl,
+                            Clock clock) {
+        this.storage = storage;
+        this.config = config;
+        this.projectId = projectId;
+        this.downloadUrl = downloadUrl;
+        this.clock = clock;
+    }
+
+    // index is updated so files whose objects were deleted are uploaded again; may be null
+    public Result run(HashIndex index) throws IOException, InterruptedException {
+        List<VersionInfo> versions = readVersions();
+        LongHashSet live = new LongHashSet(1 << 16);
+        for (VersionInfo version : versions) {
+            String manifestKey = "stable/" + projectId + "/versions/" + version.versionName() + "/modpack.json";
+            try (InputStream is = storage.getObjectStream(manifestKey)) {
+                if (is == null) {
+                    // without it the objects only this version uses would look unreferenced
+                    throw new IOException("Manifest of version " + version.versionName() + " is missing: " + manifestKey);
+                }
+                ManifestReader.forEachEntry(is,
+                        file -> linkedKeys(file).forEach(key -> live.add(fingerprint(key))),
+                        bundle -> bundleKeys(bundle).forEach(key -> live.add(fingerprint(key))));
+            }
+        }
+        log.info("{} versions reference {} objects", versions.size(), live.size());
+
+        List<ShardResult> shards = scanShards(live);
+        List<StoredObject> garbage = new ArrayList<>();
+        long listed = 0;
+        long young = 0;
+        for (ShardResult shard : shards) {
+            listed += shard.listed();
+            young += shard.young();
+            garbage.addAll(shard.garbage());
+        }
+        long garbageBytes = garbage.stream().mapToLong(StoredObject::size).sum();
+        log.info("Listed {} objects: {} unreferenced ({} bytes), {} more within the grace period",
+                listed, garbage.size(), garbageBytes, young);
+        if (config.dryRun() || garbage.isEmpty()) {
+            return new Result(versions.size(), live.size(), listed, garbage.size(), young, 0, 0);
+        }
+
+        if (!readVersions().equals(versions)) {
+            throw new IOException("versions.json changed while collecting garbage, nothing was deleted");
+        }
+        LongHashSet deleted = new LongHashSet(garbage.size());
+        long deletedBytes = deleteAll(garbage, deleted);
+        if (index != null) {
+            forgetDeleted(index, deleted);
+        }
+        return new Result(versions.size(), live.size(), listed, garbage.size(), young, deleted.size(), deletedBytes);
+    }
+
+    private List<VersionInfo> readVersions() throws IOException {
+        String versionsKey = "stable/" + projectId + "/versions.json";
+        try (InputStream is = storage.getObjectStream(versionsKey)) {
+            if (is == null) {
+                // with nothing published everything would look unreferenced
+                throw new IOException("No versions.json at " + versionsKey + ", refusing to collect");
+            }
+            return ManifestReader.readVersions(is);
+        }
+    }
+
+    // every key a manifest entry can be served from
+    static List<String> liveKeys(ModpackFile file) {
+        List<String> keys = new ArrayList<>();
+        if (file.pack() != null) {
+            keys.add(StorageKeys.contentKey(file.pack().hash(), Codecs.IDENTITY));
+        } else if (file.chunks() != null) {
+            for (FileChunk chunk : file.chunks()) {
+                addContentKeys(keys, chunk.hash(), file);
+            }
+        } else if (file.hash() != null) {
+            addContentKeys(keys, file.hash(), file);
+        }
+        return keys;
+    }
+
+    // releases between the suffixed layout and the bare keys for the original forms stored
+    // every encoded object under the suffix, so both forms count as live
+    private static void addContentKeys(List<String> keys, String hash, ModpackFile file) {
+        Codec codec = Codecs.forName(file.codec());
+        String key = StorageKeys.contentKey(hash, codec, file.file());
+        keys.add(key);
+        String suffixed = StorageKeys.contentKey(hash, codec);
+        if (!suffixed.equals(key)) {
+            keys.add(suffixed);
+        }
+    }
+
+    private List<String> linkedKeys(ModpackFile file) {
+        List<String> keys = liveKeys(file);
+        // older manifests may predate the current key layout; the link is what clients fetch
+        addLinkKey(keys, file.link());
+        if (file.pack() != null) {
+            addLinkKey(keys, file.pack().link());
+        }
+        return keys;
+    }
+
+    private List<String> bundleKeys(Bundle bundle) {
+        List<String> keys = new ArrayList<>();
+        if (bundle.hash() != null) {
+            keys.add(StorageKeys.contentKey(bundle.hash(), Codecs.IDENTITY));
+        }
+        addLinkKey(keys, bundle.link());
+        return keys;
+    }
+
+    private void addLinkKey(List<String> keys, String link) {
+        String prefix = downloadUrl + "/";
+        if (link != null && link.startsWith(prefix)) {
+            keys.add(link.substring(prefix.length()));
+        }
+    }
+
+    // the live set is complete and only read from here on, so shards can share it
+    private ShardResult scanShard(String shard, LongHashSet live) {
+        long cutoff = clock.millis() - TimeUnit.HOURS.toMillis(config.gracePeriodHours());
+        List<StoredObject> objects = storage.list(shard);
+        List<StoredObject> garbage = new ArrayList<>();
+        long young = 0;
+        for (StoredObject object : objects) {
+            if (StorageKeys.shardPrefix(object.key()) == null || live.contains(fingerprint(object.key()))) {
+                continue;
+            }
+            if (object.lastModified() > cutoff) {
+                young++;
+            } else {
+                garbage.add(object);
+            }
+        }
+        return new ShardResult(objects.size(), young, garbage);
+    }
+
+    private long deleteAll(List<StoredObject> garbage, LongHashSet deleted) throws IOException, InterruptedException {
+        List<Task<DeleteResult>> tasks = new ArrayList<>();
+        for (int i = 0; i < garbage.size(); i += config.deleteBatchSize()) {
+            List<StoredObject> batch = garbage.subList(i, Math.min(garbage.size(), i + config.deleteBatchSize()));
+            tasks.add(() -> new DeleteResult(batch, storage.delete(batch.stream().map(StoredObject::key).toList())));
+        }
+        long deletedBytes = 0;
+        long failed = 0;
+        for (DeleteResult result : run(tasks)) {
+            for (StoredObject object : result.batch()) {
+                if (result.deleted().contains(object.key())) {
+                    deleted.add(fingerprint(object.key()));
+                    deletedBytes += object.size();
+                } else {
+                    failed++;
+                }
+            }
+        }
+        if (failed > 0) {
+            log.warn("{} objects could not be deleted", failed);
+        }
+        return deletedBytes;
+    }
+
+    private List<ShardResult> scanShards(LongHashSet live) throws IOException, InterruptedException {
+        List<Task<ShardResult>> tasks = new ArrayList<>();
+        for (char c : HEX.toCharArray()) {
+            String shard = c + "/";
+            tasks.add(() -> scanShard(shard, live));
+        }
+        return run(tasks);
+    }
+
+    private <T> List<T> run(List<Task<T>> tasks) throws IOException, InterruptedException {
+        Semaphore permits = new Semaphore(config.concurrency());
+        List<Future<T>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Task<T> task : tasks) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return task.call();
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    // an index entry that claims an object is uploaded would make the next publish skip it
+    private static void forgetDeleted(HashIndex index, LongHashSet deleted) {
+        int forgotten = 0;
+        for (HashIndex.Entry entry : index.entries()) {
+            if (!entry.uploaded()) {
+                continue;
+            }
+            ModpackFile asFile = new ModpackFile(entry.path(), entry.hash(), null, entry.size(), null, false,
+                    entry.codec(), entry.chunks(), null);
+            if (liveKeys(asFile).stream().anyMatch(key -> deleted.contains(fingerprint(key)))) {
+                index.put(new HashIndex.Entry(entry.path(), entry.size(), entry.mtime(), entry.hash(), false,
+                        entry.codec(), entry.chunks(), entry.key()));
+                forgotten++;
+            }
+        }
+        log.info("Marked {} hash index entries as not uploaded", forgotten);
+    }
+
+    // FNV-1a with a final avalanche step
+    static long fingerprint(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,82 @@
+package com.deshark.core.gc;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing set of primitive longs, about 8 to 16 bytes per element instead of the
+ * ~80 a {@code HashSet<String>} of storage keys costs. Not thread-safe.
+ */
+class LongHashSet {
+    private static final long EMPTY = 0;
+    private static final double MAX_LOAD = 0.6;
+
+    private long[] slots;
+    private int size;
+    // EMPTY marks a free slot, so the value itself is tracked separately
+    private boolean containsEmpty;
+
+    LongHashSet(int expected) {
+        slots = new long[capacityFor(Math.max(expected, 16))];
+    }
+
+    boolean add(long value) {
+        if (value == EMPTY) {
+            boolean added = !containsEmpty;
+            containsEmpty = true;
+            return added;
+        }
+        if (size + 1 > slots.length * MAX_LOAD) {
+            rehash(slots.length * 2);
+        }
+        int mask = slots.length - 1;
+        for (int i = mix(value) & mask; ; i = (i + 1) & mask) {
+            long slot = slots[i];
+            if (slot == value) {
+                return false;
+            }
+            if (slot == EMPTY) {
+                slots[i] = value;
+                size++;
+                return true;
+            }
+        }
+    }
+
+    boolean contains(long value) {
+        if (value == EMPTY) {
+            return containsEmpty;
+        }
+        int mask = slots.length - 1;
+        for (int i = mix(value) & mask; ; i = (i + 1) & mask) {
+            long slot = slots[i];
+            if (slot == value) {
+                return true;
+            }
+            if (slot == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    int size() {
+        return size + (containsEmpty ? 1 : 0);
+    }
+
+    private void rehash(int capacity) {
+        long[] old = slots;
+        slots = new long[capacity];
+        size = 0;
+        Arrays.stream(old).filter(value -> value != EMPTY).forEach(this::add);
+    }
+
+    private static int capacityFor(int expected) {
+        return Integer.highestOneBit((int) Math.ceil(expected / MAX_LOAD) * 2 - 1);
+    }
+
+    private static int mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        return (int) value;
+    }
+}
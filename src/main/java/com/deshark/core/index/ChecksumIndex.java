@@ -0,0 +1,134 @@
+package com.deshark.core.index;
+
+import com.deshark.core.utils.Crc64;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Size and CRC64 of the objects this machine stored, keyed by object key, as computed from
+ * the bytes that were sent. An entry is only made once an object has been stored: an object
+ * found in the bucket may hold other bytes under the same key, such as another deflate level
+ * or content that differs only in whitespace. Like {@link HashIndex} the log is appended to
+ * as objects are stored and compacted on close.
+ */
+public class ChecksumIndex implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(ChecksumIndex.class);
+
+    private final Path file;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private BufferedWriter writer;
+
+    // crc64 is formatted like the store reports it, see Crc64.format
+    public record Entry(String key, long size, String crc64) {}
+
+    private ChecksumIndex(Path file) {
+        this.file = file;
+    }
+
+    public static ChecksumIndex open(Path file) throws IOException {
+        ChecksumIndex index = new ChecksumIndex(file);
+        index.load();
+        return index;
+    }
+
+    private void load() throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        if (Files.exists(file)) {
+            int skipped = 0;
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    try {
+                        Entry entry = mapper.readValue(line, Entry.class);
+                        entries.put(entry.key(), entry);
+                    } catch (JsonProcessingException e) {
+                        skipped++;
+                    }
+                }
+            }
+            if (skipped > 0) {
+                log.warn("Ignored {} corrupt lines in checksum index {}", skipped, file);
+            }
+        }
+        // a torn last line is skipped on load, the newline keeps it from swallowing the next one
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        writer.newLine();
+    }
+
+    public Entry lookup(String key) {
+        return entries.get(key);
+    }
+
+    // under the lock compact() holds, like HashIndex.put
+    public synchronized void put(String key, long size, Crc64 crc) {
+        Entry entry = new Entry(key, size, Crc64.format(crc.getValue()));
+        if (entry.equals(entries.put(key, entry)) || writer == null) {
+            return;
+        }
+        try {
+            writer.write(mapper.writeValueAsString(entry));
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            log.warn("Failed to append to checksum index {}", file, e);
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    // rewrites the log as a snapshot like close does, but keeps the index open for more updates
+    public synchronized void compact() throws IOException {
+        if (writer == null) {
+            return;
+        }
+        writer.close();
+        try {
+            writeSnapshot();
+        } finally {
+            writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer == null) {
+            return;
+        }
+        writer.close();
+        writer = null;
+        writeSnapshot();
+    }
+
+    private void writeSnapshot() throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Entry entry : entries.values()) {
+                out.write(mapper.writeValueAsString(entry));
+                out.newLine();
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
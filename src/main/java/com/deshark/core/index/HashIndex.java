@@ -0,0 +1,181 @@
+package com.deshark.core.index;
+
+import com.deshark.core.schemas.FileChunk;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local record of file hashes keyed by path, size and mtime, persisted as an append-only
+ * JSON-lines log. Every update is appended and flushed, so a crash loses at most the line
+ * being written; the log is compacted into a fresh snapshot on {@link #close()}.
+ */
+public class HashIndex implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(HashIndex.class);
+    // files modified this recently may still change within the same mtime tick
+    private static final long MIN_AGE_MILLIS = 2000;
+
+    private final Path file;
+    private final ObjectMapper mapper = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private BufferedWriter writer;
+
+    // codec is the encoding the object was uploaded with, null for entries written before codecs;
+    // key is the object's content key, null for chunked files and entries written before keys
+    public record Entry(String path, long size, long mtime, String hash, boolean uploaded, String codec,
+                        List<FileChunk> chunks, String key) {}
+
+    private HashIndex(Path file) {
+        this.file = file;
+    }
+
+    public static HashIndex open(Path file) throws IOException {
+        HashIndex index = new HashIndex(file);
+        index.load();
+        return index;
+    }
+
+    private void load() throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        if (Files.exists(file)) {
+            int skipped = 0;
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    try {
+                        Entry entry = mapper.readValue(line, Entry.class);
+                        entries.put(entry.path(), entry);
+                    } catch (JsonProcessingException e) {
+                        // torn write from an interrupted run
+                        skipped++;
+                    }
+                }
+            }
+            if (skipped > 0) {
+                log.warn("Ignored {} corrupt lines in hash index {}", skipped, file);
+            }
+            log.debug("Loaded {} entries from hash index {}", entries.size(), file);
+        }
+        boolean tornTail = endsWithPartialLine();
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (tornTail) {
+            writer.newLine();
+        }
+    }
+
+    private boolean endsWithPartialLine() throws IOException {
+        if (!Files.exists(file) || Files.size(file) == 0) {
+            return false;
+        }
+        try (SeekableByteChannel channel = Files.newByteChannel(file)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.position(channel.size() - 1).read(last);
+            return last.get(0) != '\n';
+        }
+    }
+
+    public Entry lookup(String path, long size, long mtime) {
+        Entry entry = entries.get(path);
+        if (entry != null && entry.size() == size && entry.mtime() == mtime) {
+            hits.incrementAndGet();
+            return entry;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    // the map and the log change under the lock compact() holds, so a snapshot never misses an
+    // entry whose line went to the log it replaced, and the log keeps the order of the map
+    public synchronized void put(Entry entry) {
+        if (System.currentTimeMillis() - entry.mtime() < MIN_AGE_MILLIS) {
+            return;
+        }
+        Entry previous = entries.put(entry.path(), entry);
+        if (entry.equals(previous) || writer == null) {
+            return;
+        }
+        try {
+            writer.write(mapper.writeValueAsString(entry));
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            log.warn("Failed to append to hash index {}", file, e);
+        }
+    }
+
+    public Collection<Entry> entries() {
+        return entries.values();
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    // rewrites the log as a snapshot like close does, but keeps the index open for more updates
+    public synchronized void compact() throws IOException {
+        if (writer == null) {
+            return;
+        }
+        writer.close();
+        try {
+            writeSnapshot();
+        } finally {
+            writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer == null) {
+            return;
+        }
+        writer.close();
+        writer = null;
+        writeSnapshot();
+    }
+
+    private void writeSnapshot() throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Entry entry : entries.values()) {
+                out.write(mapper.writeValueAsString(entry));
+                out.newLine();
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,173 @@
+package com.deshark.core.journal;
+
+import com.deshark.core.schemas.ModpackFile;
+import com.deshark.core.schemas.VersionInfo;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Write-ahead log of one release, in {@code <version>.jsonl} under the journal directory. Each
+ * file whose objects are stored is appended as it completes, so a run that dies part way can
+ * be started again and only does the files that are left. Once the manifest is uploaded the
+ * version entry is appended and forced to disk: from then on the release is committed, and a
+ * rerun only finishes publishing {@code versions.json} and {@code meta.json}. The journal is
+ * deleted when the release is out.
+ */
+public class ReleaseJournal implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(ReleaseJournal.class);
+
+    private final Path file;
+    private final ObjectMapper mapper = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    private final Map<String, Completed> completed = new ConcurrentHashMap<>();
+    private final AtomicInteger resumed = new AtomicInteger();
+    private volatile VersionInfo committed;
+    private FileChannel channel;
+
+    // path is dist/relativePath, size and mtime are of the source when it was done
+    public record Completed(String path, long size, long mtime, ModpackFile file) {}
+
+    // one line of the journal; exactly one field is set
+    private record Line(Completed completed, VersionInfo committed) {}
+
+    private ReleaseJournal(Path file) {
+        this.file = file;
+    }
+
+    public static ReleaseJournal open(Path dir, String versionName) throws IOException {
+        ReleaseJournal journal = new ReleaseJournal(dir.resolve(versionName + ".jsonl"));
+        journal.load();
+        return journal;
+    }
+
+    private void load() throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        if (Files.exists(file)) {
+            int skipped = 0;
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String text;
+                while ((text = reader.readLine()) != null) {
+                    if (text.isBlank()) {
+                        continue;
+                    }
+                    try {
+                        Line line = mapper.readValue(text, Line.class);
+                        if (line.completed() != null) {
+                            completed.put(line.completed().path(), line.completed());
+                        } else if (line.committed() != null) {
+                            committed = line.committed();
+                        }
+                    } catch (JsonProcessingException e) {
+                        // torn write from the run that died
+                        skipped++;
+                    }
+                }
+            }
+            if (skipped > 0) {
+                log.warn("Ignored {} corrupt lines in release journal {}", skipped, file);
+            }
+            log.info("Resuming release from {}: {} files done{}", file, completed.size(),
+                    committed != null ? ", manifest committed" : "");
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        // a torn last line is skipped on load, the newline keeps it from swallowing the next one
+        channel.write(ByteBuffer.wrap(new byte[]{'\n'}));
+    }
+
+    // the result of an earlier run for this file, if the file is unchanged since
+    public ModpackFile completed(Path source, String dist, String relativePath) {
+        Completed done = completed.get(dist + "/" + relativePath);
+        if (done == null) {
+            return null;
+        }
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(source, BasicFileAttributes.class);
+        } catch (IOException e) {
+            // gone or unreadable, it is done again and fails there if it has to
+            return null;
+        }
+        if (attrs.size() != done.size() || attrs.lastModifiedTime().toMillis() != done.mtime()) {
+            return null;
+        }
+        resumed.incrementAndGet();
+        return done.file();
+    }
+
+    public void record(String path, long size, long mtime, ModpackFile result) {
+        Completed done = new Completed(path, size, mtime, result);
+        completed.put(path, done);
+        try {
+            append(new Line(done, null), false);
+        } catch (IOException e) {
+            log.warn("Failed to append to release journal {}", file, e);
+        }
+    }
+
+    // the version entry the manifest was published under, if an earlier run got that far
+    public VersionInfo committed() {
+        return committed;
+    }
+
+    // called once the manifest is stored; the entry is on disk when this returns
+    public void commit(VersionInfo version) throws IOException {
+        append(new Line(null, version), true);
+        committed = version;
+    }
+
+    // files answered from the journal in this run
+    public int resumed() {
+        return resumed.get();
+    }
+
+    // the release is out, nothing is left to resume
+    public synchronized void finish() throws IOException {
+        close();
+        Files.deleteIfExists(file);
+    }
+
+    private void append(Line line, boolean force) throws IOException {
+        byte[] bytes = (mapper.writeValueAsString(line) + "\n").getBytes(StandardCharsets.UTF_8);
+        synchronized (this) {
+            if (channel == null) {
+                return;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (force) {
+                channel.force(false);
+            }
+        }
+    }
+
+    // a journal that never got anything is not kept around
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+            if (completed.isEmpty() && committed == null) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.deshark.core.manifest;
+
+import com.deshark.core.schemas.ModpackDelta;
+import com.deshark.core.schemas.ModpackFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Computes what changed between the previous version's manifest and the one being published.
+ * Entries are matched by dist and path and compared by hash. Both manifests are read as
+ * streams: the previous one is checked against the hashes collected by the writer, then the
+ * new one is replayed to pick up the full added and changed entries.
+ */
+public class ManifestDiff {
+
+    private ManifestDiff() {}
+
+    public static ModpackDelta diff(InputStream previousManifest, String fromVersion,
+                                    ManifestWriter current, String toVersion) throws IOException {
+        Map<String, String> currentHashes = current.hashes();
+        Set<String> kept = new HashSet<>();
+        Set<String> changedKeys = new HashSet<>();
+        List<ModpackFile> removed = new ArrayList<>();
+        ManifestReader.forEachFile(previousManifest, old -> {
+            String key = ManifestWriter.key(old);
+            String hash = currentHashes.get(key);
+            if (hash == null) {
+                removed.add(old);
+            } else if (kept.add(key) && !hash.equals(old.hash())) {
+                changedKeys.add(key);
+            }
+        });
+
+        List<ModpackFile> added = new ArrayList<>();
+        List<ModpackFile> changed = new ArrayList<>();
+        try (InputStream is = current.openStream()) {
+            ManifestReader.forEachFile(is, file -> {
+                String key = ManifestWriter.key(file);
+                if (!kept.contains(key)) {
+                    added.add(file);
+                } else if (changedKeys.contains(key)) {
+                    changed.add(file);
+                }
+            });
+        }
+        return new ModpackDelta(fromVersion, toVersion, added, changed, removed);
+    }
+}
@@ -0,0 +1,101 @@
+package com.deshark.core.manifest;
+
+import com.deshark.core.schemas.Bundle;
+import com.deshark.core.schemas.ModpackFile;
+import com.deshark.core.schemas.VersionInfo;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Reads the entries of {@code modpack.json} and {@code versions.json} one at a time with the
+ * Jackson streaming parser, without building the whole document.
+ */
+public class ManifestReader {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private ManifestReader() {}
+
+    public static void forEachFile(InputStream manifest, Consumer<ModpackFile> consumer) throws IOException {
+        forEach(manifest, "files", ModpackFile.class, file -> {
+            consumer.accept(file);
+            return true;
+        });
+    }
+
+    // files and bundles of a manifest in one pass
+    public static void forEachEntry(InputStream manifest, Consumer<ModpackFile> files, Consumer<Bundle> bundles)
+            throws IOException {
+        forEach(manifest, Map.of(
+                "files", element(ModpackFile.class, file -> {
+                    files.accept(file);
+                    return true;
+                }),
+                "bundles", element(Bundle.class, bundle -> {
+                    bundles.accept(bundle);
+                    return true;
+                })));
+    }
+
+    public static List<VersionInfo> readVersions(InputStream versions) throws IOException {
+        List<VersionInfo> result = new ArrayList<>();
+        forEach(versions, "versions", VersionInfo.class, version -> {
+            result.add(version);
+            return true;
+        });
+        return result;
+    }
+
+    // stops reading at the first match
+    public static boolean containsVersion(InputStream versions, String versionName) throws IOException {
+        boolean[] found = {false};
+        forEach(versions, "versions", VersionInfo.class, version -> {
+            found[0] = version.versionName().equals(versionName);
+            return !found[0];
+        });
+        return found[0];
+    }
+
+    private interface ElementVisitor {
+        boolean visit(JsonParser parser) throws IOException;
+    }
+
+    private static <T> ElementVisitor element(Class<T> type, Predicate<T> visitor) {
+        return parser -> visitor.test(mapper.readValue(parser, type));
+    }
+
+    // feeds the elements of the top-level array field to the visitor until it returns false
+    private static <T> void forEach(InputStream is, String field, Class<T> type, Predicate<T> visitor) throws IOException {
+        forEach(is, Map.of(field, element(type, visitor)));
+    }
+
+    // a visitor returning false stops the whole document
+    private static void forEach(InputStream is, Map<String, ElementVisitor> visitors) throws IOException {
+        try (JsonParser parser = mapper.getFactory().createParser(is)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                ElementVisitor visitor = visitors.get(parser.currentName());
+                JsonToken value = parser.nextToken();
+                if (visitor == null || value != JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    if (!visitor.visit(parser)) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+}
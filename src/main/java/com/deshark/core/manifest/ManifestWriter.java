@@ -0,0 +1,113 @@
+package com.deshark.core.manifest;
+
+import com.deshark.core.codec.Codec;
+import com.deshark.core.schemas.Bundle;
+import com.deshark.core.schemas.ModpackFile;
+import com.deshark.core.utils.SpillBuffer;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes {@code modpack.json} entry by entry with the Jackson streaming generator straight
+ * into the encoder of its codec, so the manifest never exists as a string or object graph. The
+ * compressed result is buffered with a known size for the upload. Besides the document, only
+ * the hash of each entry is kept, for the delta against the previous version.
+ */
+public class ManifestWriter implements Closeable {
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    private static final int IN_MEMORY_LIMIT = 4 * 1024 * 1024;
+
+    private final SpillBuffer buffer = new SpillBuffer(IN_MEMORY_LIMIT);
+    private final Codec codec;
+    private final JsonGenerator generator;
+    private final Map<String, String> hashes = new HashMap<>();
+    private final String version;
+    private final Map<String, String> libraries;
+    private boolean finished;
+
+    public ManifestWriter(String version, Map<String, String> libraries, Codec codec) {
+        this.version = version;
+        this.libraries = libraries;
+        this.codec = codec;
+        try {
+            generator = mapper.getFactory().createGenerator(codec.encode(buffer));
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("files");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public synchronized void write(ModpackFile file) throws IOException {
+        mapper.writeValue(generator, file);
+        hashes.put(key(file), file.hash());
+    }
+
+    public void finish() throws IOException {
+        finish(List.of());
+    }
+
+    // completes the document; the file list comes first, like the Modpack record
+    public synchronized void finish(List<Bundle> bundles) throws IOException {
+        generator.writeEndArray();
+        if (!bundles.isEmpty()) {
+            generator.writeObjectField("bundles", bundles);
+        }
+        generator.writeStringField("version", version);
+        generator.writeObjectField("libraries", libraries);
+        generator.writeEndObject();
+        generator.close();
+        finished = true;
+    }
+
+    public Codec codec() {
+        return codec;
+    }
+
+    public int count() {
+        return hashes.size();
+    }
+
+    // dist/path of every entry written so far, mapped to its hash
+    public Map<String, String> hashes() {
+        return hashes;
+    }
+
+    public long compressedSize() {
+        return buffer.size();
+    }
+
+    public InputStream openCompressedStream() throws IOException {
+        if (!finished) {
+            throw new IllegalStateException("Manifest is not finished");
+        }
+        return buffer.openInputStream();
+    }
+
+    public InputStream openStream() throws IOException {
+        return codec.decode(openCompressedStream());
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!finished) {
+            generator.close();
+        }
+        buffer.delete();
+    }
+
+    static String key(ModpackFile file) {
+        return file.dist() + "/" + file.file();
+    }
+}
@@ -0,0 +1,173 @@
+package com.deshark.core.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and per-stage latency histograms for one run of the uploader, exported as a JSON
+ * report and in the Prometheus text format.
+ */
+public class RunMetrics {
+    public static final String HASH = "hash";
+    public static final String COMPRESS = "compress";
+    public static final String EXISTS = "exists";
+    public static final String UPLOAD = "upload";
+
+    private static final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private final Instant startedAt = Instant.now();
+    private final long startNanos = System.nanoTime();
+    private final Map<String, LatencyHistogram> stages = new ConcurrentHashMap<>();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong compressedIn = new AtomicLong();
+    private final AtomicLong compressedOut = new AtomicLong();
+    private final AtomicLong bytesUploaded = new AtomicLong();
+    private final AtomicLong filesUploaded = new AtomicLong();
+    private final AtomicLong filesSkipped = new AtomicLong();
+    private final AtomicLong filesFailed = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong chunks = new AtomicLong();
+    private final AtomicLong chunksUploaded = new AtomicLong();
+
+    public record StageReport(long count, double totalSeconds, double meanMillis,
+                              double p50Millis, double p90Millis, double p99Millis, double maxMillis) {}
+
+    public record Report(
+            String startedAt,
+            long durationMillis,
+            long filesUploaded,
+            long filesSkipped,
+            long filesFailed,
+            long retries,
+            long chunks,
+            long chunksUploaded,
+            long bytesRead,
+            long bytesUploaded,
+            double compressionRatio,
+            double uploadMBps,
+            Map<String, StageReport> stages
+    ) {}
+
+    public void record(String stage, long startNanos) {
+        stages.computeIfAbsent(stage, s -> new LatencyHistogram()).record(System.nanoTime() - startNanos);
+    }
+
+    public void addBytesRead(long bytes) {
+        bytesRead.addAndGet(bytes);
+    }
+
+    public void addCompressed(long in, long out) {
+        compressedIn.addAndGet(in);
+        compressedOut.addAndGet(out);
+    }
+
+    public void addUploaded(long bytes) {
+        filesUploaded.incrementAndGet();
+        bytesUploaded.addAndGet(bytes);
+    }
+
+    public void addSkipped() {
+        filesSkipped.incrementAndGet();
+    }
+
+    public void addFailed() {
+        filesFailed.incrementAndGet();
+    }
+
+    public void addRetry() {
+        retries.incrementAndGet();
+    }
+
+    public void addChunks(long total, long uploaded) {
+        chunks.addAndGet(total);
+        chunksUploaded.addAndGet(uploaded);
+    }
+
+    public Report report() {
+        Map<String, StageReport> stageReports = new LinkedHashMap<>();
+        for (String name : new String[]{HASH, COMPRESS, EXISTS, UPLOAD}) {
+            LatencyHistogram histogram = stages.get(name);
+            if (histogram != null) {
+                stageReports.put(name, new StageReport(histogram.count(), histogram.sumSeconds(), histogram.meanMillis(),
+                        histogram.percentileMillis(0.5), histogram.percentileMillis(0.9),
+                        histogram.percentileMillis(0.99), histogram.maxMillis()));
+            }
+        }
+        long durationMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        return new Report(startedAt.toString(), durationMillis, filesUploaded.get(), filesSkipped.get(), filesFailed.get(),
+                retries.get(), chunks.get(), chunksUploaded.get(), bytesRead.get(), bytesUploaded.get(), compressionRatio(), uploadMBps(durationMillis),
+                stageReports);
+    }
+
+    // compressed size over original size for the files that were deflated
+    private double compressionRatio() {
+        long in = compressedIn.get();
+        return in == 0 ? 1.0 : (double) compressedOut.get() / in;
+    }
+
+    private double uploadMBps(long durationMillis) {
+        return durationMillis == 0 ? 0 : bytesUploaded.get() / 1024.0 / 1024.0 / (durationMillis / 1000.0);
+    }
+
+    public void writeJson(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        mapper.writeValue(file.toFile(), report());
+    }
+
+    public String toPrometheus() {
+        Report report = report();
+        StringBuilder sb = new StringBuilder();
+        sb.append("# TYPE mup_stage_latency_seconds summary\n");
+        report.stages().forEach((stage, r) -> {
+            quantile(sb, stage, "0.5", r.p50Millis());
+            quantile(sb, stage, "0.9", r.p90Millis());
+            quantile(sb, stage, "0.99", r.p99Millis());
+            sb.append(format("mup_stage_latency_seconds_sum{stage=\"%s\"} %f\n", stage, r.totalSeconds()));
+            sb.append(format("mup_stage_latency_seconds_count{stage=\"%s\"} %d\n", stage, r.count()));
+        });
+        sb.append("# TYPE mup_files_total counter\n");
+        sb.append(format("mup_files_total{result=\"uploaded\"} %d\n", report.filesUploaded()));
+        sb.append(format("mup_files_total{result=\"skipped\"} %d\n", report.filesSkipped()));
+        sb.append(format("mup_files_total{result=\"failed\"} %d\n", report.filesFailed()));
+        sb.append("# TYPE mup_retries_total counter\n");
+        sb.append(format("mup_retries_total %d\n", report.retries()));
+        sb.append("# TYPE mup_chunks_total counter\n");
+        sb.append(format("mup_chunks_total{result=\"uploaded\"} %d\n", report.chunksUploaded()));
+        sb.append(format("mup_chunks_total{result=\"skipped\"} %d\n", report.chunks() - report.chunksUploaded()));
+        sb.append("# TYPE mup_bytes_total counter\n");
+        sb.append(format("mup_bytes_total{direction=\"read\"} %d\n", report.bytesRead()));
+        sb.append(format("mup_bytes_total{direction=\"uploaded\"} %d\n", report.bytesUploaded()));
+        sb.append("# TYPE mup_compression_ratio gauge\n");
+        sb.append(format("mup_compression_ratio %f\n", report.compressionRatio()));
+        sb.append("# TYPE mup_upload_throughput_mbps gauge\n");
+        sb.append(format("mup_upload_throughput_mbps %f\n", report.uploadMBps()));
+        return sb.toString();
+    }
+
+    public void writePrometheus(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(temp, toPrometheus(), StandardCharsets.UTF_8);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void quantile(StringBuilder sb, String stage, String quantile, double millis) {
+        sb.append(format("mup_stage_latency_seconds{stage=\"%s\",quantile=\"%s\"} %f\n", stage, quantile, millis / 1000));
+    }
+
+    private static String format(String pattern, Object... args) {
+        return String.format(Locale.ROOT, pattern, args);
+    }
+}
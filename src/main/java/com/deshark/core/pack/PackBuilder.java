@@ -0,0 +1,267 @@
+package com.deshark.core.pack;
+
+import com.deshark.core.codec.Codec;
+import com.deshark.core.codec.Codecs;
+import com.deshark.core.metrics.RunMetrics;
+import com.deshark.core.schemas.ModpackFile;
+import com.deshark.core.schemas.PackConfig;
+import com.deshark.core.schemas.PackRef;
+import com.deshark.core.storage.CloudStorageProvider;
+import com.deshark.core.storage.StorageKeys;
+import com.deshark.core.task.RetryPolicy;
+import com.deshark.core.task.UploadContext;
+import com.deshark.core.utils.Crc64;
+import com.deshark.core.utils.HashUtil;
+import com.deshark.core.utils.SpillBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Stores small files inside shared pack objects instead of one object each. Files are spread
+ * over a fixed number of packs by their content hash and sorted by hash within a pack, so a
+ * pack only changes when one of its own members does and an unchanged pack is found in the
+ * bucket under the same content key. Each member is encoded with the codec of its file on its
+ * own, so a client can fetch and decode it with a single range request.
+ */
+public class PackBuilder {
+    private static final Logger log = LoggerFactory.getLogger(PackBuilder.class);
+    private static final int IN_MEMORY_LIMIT = 8 * 1024 * 1024;
+
+    private final UploadContext context;
+    private final PackConfig config;
+    private final Map<String, Path> roots;
+    private final PackCache cache;
+    // files waiting for their pack, per pack
+    private final Map<Integer, List<ModpackFile>> buckets = new LinkedHashMap<>();
+
+    private record Built(PackCache.Layout layout, boolean uploaded) {}
+
+    // roots maps each dist to the directory its relative paths start from
+    public PackBuilder(UploadContext context, PackConfig config, Map<String, Path> roots, PackCache cache) {
+        this.context = context;
+        this.config = config;
+        this.roots = roots;
+        this.cache = cache;
+    }
+
+    public static boolean isPackable(PackConfig config, long size, boolean chunked) {
+        return config.enabled() && !chunked && size <= config.maxFileSize();
+    }
+
+    // keeps a file the upload task left to a pack; false for files stored on their own
+    public synchronized boolean add(ModpackFile file) {
+        if (file.link() != null || file.chunks() != null || file.pack() != null) {
+            return false;
+        }
+        int bucket = Integer.parseInt(file.hash().substring(0, 6), 16) % config.packCount();
+        buckets.computeIfAbsent(bucket, b -> new ArrayList<>()).add(file);
+        return true;
+    }
+
+    // builds and stores the packs and returns the packed files with their pack references
+    public List<ModpackFile> finish() throws IOException, InterruptedException {
+        List<Map.Entry<Integer, List<ModpackFile>>> pending = new ArrayList<>(buckets.entrySet());
+        pending.sort(Map.Entry.comparingByKey());
+        Semaphore permits = new Semaphore(config.concurrency());
+        AtomicInteger uploaded = new AtomicInteger();
+        List<Future<List<ModpackFile>>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Map.Entry<Integer, List<ModpackFile>> bucket : pending) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return pack(bucket.getValue(), uploaded);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+            List<ModpackFile> packed = new ArrayList<>();
+            for (Future<List<ModpackFile>> future : futures) {
+                packed.addAll(future.get());
+            }
+            cache.save();
+            log.info("Packed {} small files into {} packs, {} uploaded", packed.size(), pending.size(), uploaded.get());
+            return packed;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    // stores a pack of a published version again, replacing its object; false if the local
+    // files no longer make up that pack
+    public boolean restore(PackRef pack, List<ModpackFile> files) throws IOException, InterruptedException {
+        return build(members(files), pack.hash()) != null;
+    }
+
+    private List<ModpackFile> pack(List<ModpackFile> files, AtomicInteger uploaded) throws IOException, InterruptedException {
+        Map<String, ModpackFile> members = members(files);
+        String signature = signature(members.keySet());
+
+        PackCache.Layout layout = cache.lookup(signature);
+        if (layout == null || !context.storage().fileExists(contentKey(layout.hash()))) {
+            Built built = build(members, null);
+            layout = built.layout();
+            if (built.uploaded()) {
+                uploaded.incrementAndGet();
+            }
+        } else {
+            context.metrics().addSkipped();
+        }
+        cache.record(signature, layout);
+
+        String link = context.downloadUrl() + "/" + contentKey(layout.hash());
+        List<ModpackFile> packed = new ArrayList<>(files.size());
+        for (ModpackFile file : files) {
+            PackCache.Member member = layout.members().get(memberKey(file));
+            packed.add(new ModpackFile(file.file(), file.hash(), null, file.size(), file.dist(), file.compressed(),
+                    file.codec(), null, new PackRef(layout.hash(), link, member.offset(), member.length())));
+        }
+        return packed;
+    }
+
+    // one member per distinct content, in hash order
+    private static Map<String, ModpackFile> members(List<ModpackFile> files) {
+        Map<String, ModpackFile> members = new LinkedHashMap<>();
+        files.stream()
+                .sorted(Comparator.comparing(PackBuilder::memberKey))
+                .forEach(file -> members.putIfAbsent(memberKey(file), file));
+        return members;
+    }
+
+    // with replaceHash set, the pack is only stored if it comes out with that hash, and then
+    // replaces the object already there; null if it doesn't
+    private Built build(Map<String, ModpackFile> members, String replaceHash) throws IOException, InterruptedException {
+        SpillBuffer buffer = new SpillBuffer(IN_MEMORY_LIMIT);
+        try {
+            MessageDigest digest = sha256();
+            Crc64 crc = new Crc64();
+            Map<String, PackCache.Member> layoutMembers = new LinkedHashMap<>();
+            long offset = 0;
+            try (OutputStream os = new CheckedOutputStream(new DigestOutputStream(buffer, digest), crc)) {
+                for (Map.Entry<String, ModpackFile> member : members.entrySet()) {
+                    byte[] encoded = encode(member.getValue());
+                    os.write(encoded);
+                    layoutMembers.put(member.getKey(), new PackCache.Member(offset, encoded.length));
+                    offset += encoded.length;
+                }
+            }
+            PackCache.Layout layout = new PackCache.Layout(HexFormat.of().formatHex(digest.digest()), offset,
+                    layoutMembers);
+            String key = contentKey(layout.hash());
+            if (replaceHash != null && !replaceHash.equals(layout.hash())) {
+                return null;
+            }
+            if (replaceHash == null && context.storage().fileExists(key)) {
+                context.metrics().addSkipped();
+                return new Built(layout, false);
+            }
+            upload(buffer, key);
+            context.checksums().put(key, offset, crc);
+            return new Built(layout, true);
+        } finally {
+            buffer.delete();
+        }
+    }
+
+    private byte[] encode(ModpackFile file) throws IOException {
+        Path source = roots.get(file.dist()).resolve(file.file());
+        byte[] data = Files.readAllBytes(source);
+        if (!HashUtil.SHA256(new ByteArrayInputStream(data)).equals(file.hash())) {
+            throw new IOException("File changed since it was hashed: " + source);
+        }
+        context.metrics().addBytesRead(data.length);
+        Codec codec = context.compression().forName(file.codec());
+        if (Codecs.isIdentity(codec)) {
+            return data;
+        }
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(data.length / 2 + 64);
+        try (OutputStream os = codec.encode(encoded)) {
+            os.write(data);
+        }
+        return encoded.toByteArray();
+    }
+
+    // packs go through the same retry policy as the files of the pipeline
+    private void upload(SpillBuffer buffer, String key) throws IOException, InterruptedException {
+        CloudStorageProvider storage = context.storage();
+        RetryPolicy retryPolicy = context.retryPolicy();
+        RunMetrics metrics = context.metrics();
+        for (int attempt = 0; ; attempt++) {
+            long start = System.nanoTime();
+            try (InputStream is = buffer.openInputStream()) {
+                storage.upload(is, buffer.size(), key, Codecs.IDENTITY);
+                retryPolicy.onSuccess();
+                metrics.record(RunMetrics.UPLOAD, start);
+                metrics.addUploaded(buffer.size());
+                return;
+            } catch (IOException | RuntimeException e) {
+                RetryPolicy.Decision decision = retryPolicy.decide(e, attempt);
+                if (decision != RetryPolicy.Decision.RETRY) {
+                    throw e;
+                }
+                long delay = retryPolicy.backoffMillis(attempt);
+                metrics.addRetry();
+                log.warn("Retry {} for pack {} in {} ms: {}", attempt + 1, key, delay, e.getMessage());
+                Thread.sleep(delay);
+            }
+        }
+    }
+
+    private static String contentKey(String hash) {
+        return StorageKeys.contentKey(hash, Codecs.IDENTITY);
+    }
+
+    // the same content stored with another codec is a different member
+    private static String memberKey(ModpackFile file) {
+        return file.hash() + "." + file.codec();
+    }
+
+    private static String signature(Iterable<String> memberKeys) {
+        MessageDigest digest = sha256();
+        for (String key : memberKeys) {
+            digest.update(key.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.deshark.core.pack;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Layouts of the packs built by the previous run, keyed by the signature of their members. A
+ * pack is a function of its members, so while the members of a pack are unchanged its layout
+ * is reused without reading the files again.
+ */
+public class PackCache {
+    private static final Logger log = LoggerFactory.getLogger(PackCache.class);
+
+    private final Path file;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, Layout> previous;
+    private final Map<String, Layout> current = new ConcurrentHashMap<>();
+
+    // members are keyed by hash and codec name, see PackBuilder.memberKey
+    public record Layout(String hash, long size, Map<String, Member> members) {}
+
+    public record Member(long offset, long length) {}
+
+    private PackCache(Path file, Map<String, Layout> previous) {
+        this.file = file;
+        this.previous = previous;
+    }
+
+    public static PackCache open(Path file) {
+        Map<String, Layout> previous = Map.of();
+        if (Files.exists(file)) {
+            try {
+                previous = new ObjectMapper().readValue(file.toFile(), new TypeReference<Map<String, Layout>>() {});
+            } catch (IOException e) {
+                log.warn("Ignoring unreadable pack cache {}", file, e);
+            }
+        }
+        return new PackCache(file, previous);
+    }
+
+    Layout lookup(String signature) {
+        return previous.get(signature);
+    }
+
+    void record(String signature, Layout layout) {
+        current.put(signature, layout);
+    }
+
+    // replaces the stored layouts with the packs of the last run
+    public void save() throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        mapper.writeValue(tmp.toFile(), current);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.debug("Saved {} pack layouts to {}", current.size(), file);
+    }
+}
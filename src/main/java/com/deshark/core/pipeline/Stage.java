@@ -0,0 +1,192 @@
+package com.deshark.core.pipeline;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A fixed set of worker threads draining a bounded queue. {@link #submit} blocks while the
+ * queue is full, which is what keeps upstream stages from running ahead. In virtual mode a
+ * single dispatcher starts one virtual thread per item, at most {@code threads} at a time.
+ */
+public class Stage<T> {
+    private static final Logger log = LoggerFactory.getLogger(Stage.class);
+    private static final long POLL_MILLIS = 100;
+
+    private final String name;
+    private final int threads;
+    private final int capacity;
+    private final boolean virtual;
+    private final BlockingQueue<T> queue;
+    private final Consumer<T> handler;
+    private final CountDownLatch finished;
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger deferred = new AtomicInteger();
+    // taken from the queue and not done yet; such an item may still defer a retry
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile boolean closed;
+    private long startNanos;
+
+    public Stage(String name, int threads, int capacity, Consumer<T> handler) {
+        this(name, threads, capacity, false, handler);
+    }
+
+    public Stage(String name, int threads, int capacity, boolean virtual, Consumer<T> handler) {
+        this.name = name;
+        this.threads = threads;
+        this.capacity = capacity;
+        this.virtual = virtual;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.handler = handler;
+        this.finished = new CountDownLatch(virtual ? 1 : threads);
+    }
+
+    public void start() {
+        startNanos = System.nanoTime();
+        if (virtual) {
+            Thread dispatcher = new Thread(this::dispatch, name + "-dispatch");
+            dispatcher.setDaemon(true);
+            dispatcher.start();
+            return;
+        }
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(this::work, name + "-" + (i + 1));
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    public void submit(T item) throws InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("Stage " + name + " is closed");
+        }
+        queue.put(item);
+    }
+
+    // announces an item that will come back through resubmit, keeping the stage open for it
+    public void defer() {
+        deferred.incrementAndGet();
+    }
+
+    public void resubmit(T item) throws InterruptedException {
+        try {
+            queue.put(item);
+        } finally {
+            deferred.decrementAndGet();
+        }
+    }
+
+    // no more items will be submitted; workers exit once the queue is drained
+    public void close() {
+        closed = true;
+    }
+
+    public void awaitTermination() throws InterruptedException {
+        finished.await();
+    }
+
+    public void drainTo(Consumer<T> discard) {
+        T item;
+        while ((item = queue.poll()) != null) {
+            discard.accept(item);
+        }
+    }
+
+    private void work() {
+        try {
+            T item;
+            while ((item = next()) != null) {
+                process(item);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    private void dispatch() {
+        Semaphore permits = new Semaphore(threads);
+        Thread.Builder builder = Thread.ofVirtual().name(name + "-", 1);
+        try {
+            T item;
+            while ((item = next()) != null) {
+                permits.acquire();
+                T current = item;
+                builder.start(() -> {
+                    try {
+                        process(current);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+            // wait for the items still in flight
+            permits.acquire(threads);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    // next queued item, or null once the stage is closed and drained
+    private T next() throws InterruptedException {
+        while (true) {
+            T item = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (item != null) {
+                inFlight.incrementAndGet();
+                return item;
+            }
+            if (closed && deferred.get() == 0 && inFlight.get() == 0 && queue.isEmpty()) {
+                return null;
+            }
+        }
+    }
+
+    private void process(T item) {
+        long start = System.nanoTime();
+        active.incrementAndGet();
+        try {
+            handler.accept(item);
+        } catch (RuntimeException e) {
+            log.error("Unhandled error in stage {}", name, e);
+        } finally {
+            active.decrementAndGet();
+            busyNanos.addAndGet(System.nanoTime() - start);
+            processed.incrementAndGet();
+            // after the handler, so a retry it deferred is already counted
+            inFlight.decrementAndGet();
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    public long processed() {
+        return processed.get();
+    }
+
+    public String report() {
+        double elapsed = Math.max(1, System.nanoTime() - startNanos) / 1e9;
+        double utilization = busyNanos.get() / 1e9 / (elapsed * threads);
+        return String.format("%s: queue %d/%d, active %d/%d, done %d (%.1f/s), utilization %.0f%%",
+                name, queue.size(), capacity, active.get(), threads, processed.get(),
+                processed.get() / elapsed, utilization * 100);
+    }
+}
@@ -0,0 +1,257 @@
+package com.deshark.core.pipeline;
+
+import com.deshark.core.schemas.ModpackFile;
+import com.deshark.core.schemas.UploadConfig;
+import com.deshark.core.task.ModpackFileUploadTask;
+import com.deshark.core.task.RetryPolicy;
+import com.deshark.core.task.UploadContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs upload tasks through three bounded stages: hashing, compression and upload. Files are
+ * fed in with {@link #submit} as they are discovered and results are handed to the sink in
+ * submission order as soon as every earlier file is done, so nothing has to hold the full
+ * result list. A file that takes long holds back the results behind it, so submit blocks once
+ * too many of them wait.
+ */
+public class UploadPipeline implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(UploadPipeline.class);
+    private static final long REPORT_INTERVAL_SECONDS = 10;
+    // files between the oldest unfinished one and the newest submitted, per queue slot
+    private static final int REORDER_WINDOW_PER_SLOT = 4;
+
+    private final UploadContext context;
+    private final Semaphore connectionPermits;
+    private final Stage<Item> hashStage;
+    private final Stage<Item> compressStage;
+    private final Stage<Item> uploadStage;
+    private final List<Stage<Item>> stages;
+    private final ResultSink sink;
+    // results that finished ahead of an earlier file, guarded by itself
+    private final Map<Long, ModpackFile> pending = new HashMap<>();
+    // one permit per submitted file, returned when its result reaches the sink or it fails
+    private final Semaphore reorderWindow;
+    private long nextResult;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final ScheduledExecutorService reporter;
+    private final ScheduledExecutorService retryTimer;
+    private long sequence;
+    private boolean finished;
+
+    private record Item(long sequence, ModpackFileUploadTask task, int attempt) {}
+
+    public interface ResultSink {
+        void accept(ModpackFile file) throws IOException;
+    }
+
+    public UploadPipeline(UploadContext context, UploadConfig config, ResultSink sink) {
+        this.context = context;
+        this.sink = sink;
+        this.connectionPermits = new Semaphore(config.maxConnections());
+        this.reorderWindow = new Semaphore(config.queueCapacity() * REORDER_WINDOW_PER_SLOT);
+        this.hashStage = new Stage<>("hash", config.hashThreads(), config.queueCapacity(), this::hash);
+        this.compressStage = new Stage<>("compress", config.compressThreads(), config.queueCapacity(), this::compress);
+        if (config.executionMode() == UploadConfig.ExecutionMode.VIRTUAL) {
+            // items in flight are bounded by the queue size, network requests by the permits
+            this.uploadStage = new Stage<>("upload", config.queueCapacity(), config.queueCapacity(), true, this::upload);
+        } else {
+            this.uploadStage = new Stage<>("upload", config.uploadThreads(), config.queueCapacity(), this::upload);
+        }
+        this.stages = List.of(hashStage, compressStage, uploadStage);
+        stages.forEach(Stage::start);
+
+        reporter = Executors.newSingleThreadScheduledExecutor(daemonThread("pipeline-report"));
+        retryTimer = Executors.newSingleThreadScheduledExecutor(daemonThread("upload-retry"));
+        reporter.scheduleAtFixedRate(() -> stages.forEach(stage -> log.info(stage.report())),
+                REPORT_INTERVAL_SECONDS, REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public void submit(Path file, String relativePath, String dist) throws InterruptedException {
+        submit(new ModpackFileUploadTask(context, file, relativePath, dist));
+    }
+
+    public void submit(ModpackFileUploadTask task) throws InterruptedException {
+        if (failure.get() != null) {
+            return;
+        }
+        reorderWindow.acquire();
+        if (failure.get() != null) {
+            reorderWindow.release();
+            return;
+        }
+        hashStage.submit(new Item(sequence++, task, 0));
+    }
+
+    // returns the number of results delivered to the sink
+    public long finish() throws ExecutionException, InterruptedException {
+        finished = true;
+        try {
+            for (Stage<Item> stage : stages) {
+                stage.close();
+                stage.awaitTermination();
+            }
+        } finally {
+            reporter.shutdownNow();
+            retryTimer.shutdownNow();
+        }
+        stages.forEach(stage -> log.info(stage.report()));
+        Throwable error = failure.get();
+        if (error != null) {
+            throw new ExecutionException(error);
+        }
+        // a file that got lost on the way must not go unnoticed into a manifest
+        if (nextResult != sequence) {
+            throw new ExecutionException(new IllegalStateException(
+                    "Only " + nextResult + " of " + sequence + " files finished"));
+        }
+        return nextResult;
+    }
+
+    private void hash(Item item) {
+        if (skipAfterFailure(item)) {
+            return;
+        }
+        try {
+            item.task().hash();
+            compressStage.submit(item);
+        } catch (Exception e) {
+            fail(item, e);
+        }
+    }
+
+    private void compress(Item item) {
+        if (skipAfterFailure(item)) {
+            return;
+        }
+        try {
+            item.task().compress();
+            uploadStage.submit(item);
+        } catch (Exception e) {
+            fail(item, e);
+        }
+    }
+
+    private void upload(Item item) {
+        if (skipAfterFailure(item)) {
+            return;
+        }
+        ModpackFileUploadTask task = item.task();
+        RetryPolicy retryPolicy = context.retryPolicy();
+        ModpackFile result;
+        try {
+            if (task.uploadsChunks()) {
+                // one permit per chunk, so the chunks of all files together stay within maxConnections
+                result = task.upload(connectionPermits);
+            } else {
+                connectionPermits.acquire();
+                try {
+                    result = task.upload();
+                } finally {
+                    connectionPermits.release();
+                }
+            }
+            retryPolicy.onSuccess();
+            task.release();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(item, e);
+            return;
+        } catch (Exception e) {
+            RetryPolicy.Decision decision = retryPolicy.decide(e, item.attempt());
+            if (decision == RetryPolicy.Decision.RETRY) {
+                long delay = retryPolicy.backoffMillis(item.attempt());
+                context.metrics().addRetry();
+                log.warn("Retry {} for file {} in {} ms: {}", item.attempt() + 1, task.relativePath(), delay, e.getMessage());
+                scheduleRetry(new Item(item.sequence(), task, item.attempt() + 1), delay);
+            } else {
+                log.error("Upload failed for file {} ({}, {} retries)", task.relativePath(), decision, item.attempt(), e);
+                fail(item, new RuntimeException("Upload failed after " + item.attempt() + " retries: " + decision, e));
+            }
+            return;
+        }
+        try {
+            emit(item.sequence(), result);
+        } catch (IOException | RuntimeException e) {
+            fail(item, e);
+        }
+    }
+
+    private void emit(long sequence, ModpackFile result) throws IOException {
+        synchronized (pending) {
+            pending.put(sequence, result);
+            ModpackFile next;
+            while ((next = pending.remove(nextResult)) != null) {
+                sink.accept(next);
+                nextResult++;
+                reorderWindow.release();
+            }
+        }
+    }
+
+    // the worker is free while the retry waits; the item re-enters the upload queue when due
+    private void scheduleRetry(Item item, long delayMillis) {
+        uploadStage.defer();
+        retryTimer.schedule(() -> {
+            try {
+                uploadStage.resubmit(item);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(item, e);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private boolean skipAfterFailure(Item item) {
+        if (failure.get() == null) {
+            return false;
+        }
+        item.task().release();
+        reorderWindow.release();
+        return true;
+    }
+
+    private void fail(Item item, Throwable error) {
+        item.task().release();
+        // wakes a submit waiting on the window, which then sees the failure
+        reorderWindow.release();
+        context.metrics().addFailed();
+        if (failure.compareAndSet(null, error)) {
+            log.error("Aborting upload pipeline after failure on {}", item.task().relativePath());
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!finished) {
+            failure.compareAndSet(null, new IllegalStateException("Pipeline closed before finish"));
+            stages.forEach(stage -> {
+                stage.close();
+                stage.drainTo(item -> item.task().release());
+            });
+            reporter.shutdownNow();
+            retryTimer.shutdownNow();
+        }
+    }
+
+    private static ThreadFactory daemonThread(String name) {
+        return r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
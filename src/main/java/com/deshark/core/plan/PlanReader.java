@@ -0,0 +1,50 @@
+package com.deshark.core.plan;
+
+import com.deshark.core.schemas.PlanEntry;
+import com.deshark.core.schemas.PlanSummary;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+/**
+ * Reads back a plan saved by {@link PlanWriter}, one entry at a time.
+ */
+public class PlanReader {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    public interface EntryConsumer {
+        void accept(PlanEntry entry) throws IOException, InterruptedException;
+    }
+
+    private PlanReader() {}
+
+    public static PlanSummary readSummary(Path planDir, String versionName) throws IOException {
+        Path file = PlanWriter.summaryFile(planDir, versionName);
+        if (!Files.exists(file)) {
+            throw new NoSuchFileException(file.toString(), null, "no plan for version " + versionName);
+        }
+        return mapper.readValue(file.toFile(), PlanSummary.class);
+    }
+
+    // returns the number of entries passed to the consumer
+    public static long forEachEntry(Path planDir, String versionName, EntryConsumer consumer)
+            throws IOException, InterruptedException {
+        long count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(PlanWriter.entriesFile(planDir, versionName),
+                StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    consumer.accept(mapper.readValue(line, PlanEntry.class));
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,88 @@
+package com.deshark.core.plan;
+
+import com.deshark.core.schemas.PlanEntry;
+import com.deshark.core.schemas.PlanSummary;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes an upload plan as it is computed: one JSON line per file in {@code <version>.jsonl}
+ * and the totals in {@code <version>.json}, both under the plan directory. The entries are
+ * written to a temp file and only moved into place by {@link #finish}, so an interrupted plan
+ * never leaves something {@code apply} would pick up.
+ */
+public class PlanWriter implements Closeable {
+    private final ObjectMapper mapper = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    private final Path entriesFile;
+    private final Path summaryFile;
+    private final Path tmp;
+    private final BufferedWriter writer;
+    private long files;
+    private long uploads;
+    private long bytesRead;
+    private long uploadBytes;
+
+    public PlanWriter(Path planDir, String versionName) throws IOException {
+        Files.createDirectories(planDir);
+        this.entriesFile = entriesFile(planDir, versionName);
+        this.summaryFile = summaryFile(planDir, versionName);
+        this.tmp = entriesFile.resolveSibling(entriesFile.getFileName() + ".tmp");
+        this.writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8);
+    }
+
+    static Path entriesFile(Path planDir, String versionName) {
+        return planDir.resolve(versionName + ".jsonl");
+    }
+
+    static Path summaryFile(Path planDir, String versionName) {
+        return planDir.resolve(versionName + ".json");
+    }
+
+    public synchronized void add(PlanEntry entry) throws IOException {
+        writer.write(mapper.writeValueAsString(entry));
+        writer.newLine();
+        files++;
+        bytesRead += entry.size();
+        if (entry.action() == PlanEntry.Action.UPLOAD) {
+            uploads++;
+            uploadBytes += entry.uploadBytes();
+        }
+    }
+
+    public synchronized long files() {
+        return files;
+    }
+
+    public synchronized long uploads() {
+        return uploads;
+    }
+
+    public synchronized long bytesRead() {
+        return bytesRead;
+    }
+
+    public synchronized long uploadBytes() {
+        return uploadBytes;
+    }
+
+    public synchronized void finish(PlanSummary summary) throws IOException {
+        writer.close();
+        Files.move(tmp, entriesFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        mapper.copy().enable(SerializationFeature.INDENT_OUTPUT).writeValue(summaryFile.toFile(), summary);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+        Files.deleteIfExists(tmp);
+    }
+}
@@ -0,0 +1,66 @@
+package com.deshark.core.plan;
+
+import com.deshark.core.metrics.RunMetrics;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Upload throughput of recent runs, taken from the run reports written by {@link RunMetrics}.
+ * Bytes are divided by whole-run time, so hashing and request overhead are part of the rate.
+ */
+public class TransferEstimate {
+    private static final Logger log = LoggerFactory.getLogger(TransferEstimate.class);
+    private static final int RECENT_RUNS = 10;
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    private TransferEstimate() {}
+
+    // bytes per second over the recent runs that uploaded anything, 0 without history
+    public static double bytesPerSecond(Path reportDir) {
+        if (!Files.isDirectory(reportDir)) {
+            return 0;
+        }
+        List<Path> reports;
+        try (Stream<Path> files = Files.list(reportDir)) {
+            // run-yyyyMMdd-HHmmss.json sorts by time
+            reports = files.filter(file -> {
+                        String name = file.getFileName().toString();
+                        return name.startsWith("run-") && name.endsWith(".json");
+                    })
+                    .sorted(Comparator.reverseOrder())
+                    .toList();
+        } catch (IOException e) {
+            log.warn("Failed to list run reports in {}", reportDir, e);
+            return 0;
+        }
+        long bytes = 0;
+        long millis = 0;
+        int runs = 0;
+        for (Path file : reports) {
+            if (runs == RECENT_RUNS) {
+                break;
+            }
+            try {
+                RunMetrics.Report report = mapper.readValue(file.toFile(), RunMetrics.Report.class);
+                if (report.bytesUploaded() > 0 && report.durationMillis() > 0) {
+                    bytes += report.bytesUploaded();
+                    millis += report.durationMillis();
+                    runs++;
+                }
+            } catch (IOException e) {
+                log.debug("Skipping unreadable run report {}", file, e);
+            }
+        }
+        return millis == 0 ? 0 : bytes * 1000.0 / millis;
+    }
+}
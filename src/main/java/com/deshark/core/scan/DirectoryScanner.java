@@ -0,0 +1,182 @@
+package com.deshark.core.scan;
+
+import com.deshark.core.schemas.ScanConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Walks source directories on a fork-join pool, one task per directory, and hands files to a
+ * sink on the calling thread as they are found. The hand-off queue is bounded, so a sink that
+ * blocks (the upload pipeline when its queues are full) pauses the walk instead of letting the
+ * found paths pile up.
+ */
+public class DirectoryScanner {
+    private static final Logger log = LoggerFactory.getLogger(DirectoryScanner.class);
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final Found END = new Found(null, null, null);
+
+    private final ScanConfig config;
+    private final ScanCache cache;
+    private final AtomicLong directories = new AtomicLong();
+    private final AtomicLong reusedListings = new AtomicLong();
+
+    public record Root(Path dir, String dist) {}
+
+    private record Found(Path file, Root root, String relativePath) {}
+
+    public interface FileSink {
+        void accept(Path file, String relativePath, String dist) throws InterruptedException;
+    }
+
+    // cache is null for a full scan
+    public DirectoryScanner(ScanConfig config, ScanCache cache) {
+        this.config = config;
+        this.cache = cache;
+    }
+
+    // returns the number of files passed to the sink
+    public long scan(List<Root> roots, FileSink sink) throws IOException, InterruptedException {
+        BlockingQueue<Found> found = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        ForkJoinPool pool = new ForkJoinPool(config.parallelism());
+        long count = 0;
+        try {
+            pool.execute(() -> {
+                try {
+                    List<DirectoryTask> tasks = new ArrayList<>();
+                    for (Root root : roots) {
+                        tasks.add(new DirectoryTask(root, root.dir(), IgnoreRules.NONE, found));
+                    }
+                    ForkJoinTask.invokeAll(tasks);
+                } catch (Throwable e) {
+                    failure.set(e);
+                } finally {
+                    // blocks like the files before it; only interrupted when the sink gave up
+                    try {
+                        found.put(END);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            Found next;
+            while ((next = found.take()) != END) {
+                sink.accept(next.file(), next.relativePath(), next.root().dist());
+                count++;
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        Throwable error = failure.get();
+        if (error instanceof UncheckedIOException unchecked) {
+            throw unchecked.getCause();
+        }
+        if (error != null) {
+            throw new IOException("Directory scan failed", error);
+        }
+        log.debug("Scanned {} directories, {} from cache", directories.get(), reusedListings.get());
+        return count;
+    }
+
+    // fork-join tasks are Serializable by inheritance only; these never leave the scan
+    private class DirectoryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Root root;
+        private final transient Path dir;
+        private final transient IgnoreRules inherited;
+        private final transient BlockingQueue<Found> found;
+
+        DirectoryTask(Root root, Path dir, IgnoreRules inherited, BlockingQueue<Found> found) {
+            this.root = root;
+            this.dir = dir;
+            this.inherited = inherited;
+            this.found = found;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                ScanCache.Listing listing = list();
+                IgnoreRules rules = inherited;
+                if (listing.files().contains(config.ignoreFile())) {
+                    rules = rules.withFile(dir.resolve(config.ignoreFile()));
+                }
+                List<DirectoryTask> subtasks = new ArrayList<>();
+                for (String name : listing.directories()) {
+                    Path child = dir.resolve(name);
+                    if (!rules.isIgnored(child, true)) {
+                        subtasks.add(new DirectoryTask(root, child, rules, found));
+                    }
+                }
+                // directories first so other workers can steal them while this one emits files
+                for (DirectoryTask subtask : subtasks) {
+                    subtask.fork();
+                }
+                for (String name : listing.files()) {
+                    Path file = dir.resolve(name);
+                    if (!name.equals(config.ignoreFile()) && !rules.isIgnored(file, false)) {
+                        found.put(new Found(file, root, relativePath(file)));
+                    }
+                }
+                for (DirectoryTask subtask : subtasks) {
+                    subtask.join();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Directory scan interrupted", e);
+            }
+        }
+
+        private ScanCache.Listing list() throws IOException {
+            directories.incrementAndGet();
+            long mtime = Files.getLastModifiedTime(dir).toMillis();
+            if (cache != null) {
+                ScanCache.Listing cached = cache.lookup(dir, mtime);
+                if (cached != null) {
+                    reusedListings.incrementAndGet();
+                    cache.record(dir, cached);
+                    return cached;
+                }
+            }
+            List<String> files = new ArrayList<>();
+            List<String> subdirectories = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    // like Files.walkFileTree, symbolic links are listed as files and never descended into
+                    BasicFileAttributes attrs = Files.readAttributes(entry, BasicFileAttributes.class,
+                            LinkOption.NOFOLLOW_LINKS);
+                    (attrs.isDirectory() ? subdirectories : files).add(entry.getFileName().toString());
+                }
+            }
+            ScanCache.Listing listing = new ScanCache.Listing(mtime, files, subdirectories);
+            if (cache != null) {
+                cache.record(dir, listing);
+            }
+            return listing;
+        }
+
+        private String relativePath(Path file) {
+            return root.dir().relativize(file).toString().replace("\\", "/");
+        }
+    }
+}
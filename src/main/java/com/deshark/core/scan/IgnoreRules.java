@@ -0,0 +1,122 @@
+package com.deshark.core.scan;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Ignore patterns read from the ignore files of a directory and its parents, with gitignore
+ * semantics: a pattern without a slash matches a name at any depth, one with a slash is
+ * relative to the directory of its ignore file, a trailing slash matches only directories,
+ * {@code !} re-includes, and the last matching pattern wins with deeper files read last.
+ */
+class IgnoreRules {
+    static final IgnoreRules NONE = new IgnoreRules(null, null, List.of());
+
+    private final IgnoreRules parent;
+    private final Path base;
+    private final List<Rule> rules;
+
+    private record Rule(Pattern pattern, boolean anchored, boolean directoryOnly, boolean negated) {}
+
+    private IgnoreRules(IgnoreRules parent, Path base, List<Rule> rules) {
+        this.parent = parent;
+        this.base = base;
+        this.rules = rules;
+    }
+
+    // adds the patterns of an ignore file, for the entries of the directory it is in
+    IgnoreRules withFile(Path file) throws IOException {
+        List<Rule> parsed = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            Rule rule = parse(line.strip());
+            if (rule != null) {
+                parsed.add(rule);
+            }
+        }
+        return parsed.isEmpty() ? this : new IgnoreRules(this, file.getParent(), parsed);
+    }
+
+    boolean isIgnored(Path path, boolean directory) {
+        return ignored(path, directory, false);
+    }
+
+    private boolean ignored(Path path, boolean directory, boolean fallback) {
+        boolean ignored = parent == null ? fallback : parent.ignored(path, directory, fallback);
+        if (rules.isEmpty()) {
+            return ignored;
+        }
+        String relative = base.relativize(path).toString().replace('\\', '/');
+        String name = path.getFileName().toString();
+        for (Rule rule : rules) {
+            if (rule.directoryOnly() && !directory) {
+                continue;
+            }
+            if (rule.pattern().matcher(rule.anchored() ? relative : name).matches()) {
+                ignored = !rule.negated();
+            }
+        }
+        return ignored;
+    }
+
+    private static Rule parse(String line) {
+        if (line.isEmpty() || line.startsWith("#")) {
+            return null;
+        }
+        boolean negated = line.startsWith("!");
+        if (negated) {
+            line = line.substring(1);
+        }
+        boolean directoryOnly = line.endsWith("/");
+        if (directoryOnly) {
+            line = line.substring(0, line.length() - 1);
+        }
+        boolean anchored = line.contains("/");
+        if (line.startsWith("/")) {
+            line = line.substring(1);
+        }
+        if (line.isEmpty()) {
+            return null;
+        }
+        return new Rule(Pattern.compile(globToRegex(line)), anchored, directoryOnly, negated);
+    }
+
+    private static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            switch (c) {
+                case '*' -> {
+                    if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                        i++;
+                        if (i + 1 < glob.length() && glob.charAt(i + 1) == '/') {
+                            i++;
+                            regex.append("(?:.*/)?");
+                        } else {
+                            regex.append(".*");
+                        }
+                    } else {
+                        regex.append("[^/]*");
+                    }
+                }
+                case '?' -> regex.append("[^/]");
+                case '[' -> {
+                    int close = glob.indexOf(']', i + 1);
+                    if (close < 0) {
+                        regex.append("\\[");
+                    } else {
+                        String set = glob.substring(i + 1, close);
+                        regex.append('[').append(set.startsWith("!") ? "^" + set.substring(1) : set).append(']');
+                        i = close;
+                    }
+                }
+                default -> regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return regex.toString();
+    }
+}
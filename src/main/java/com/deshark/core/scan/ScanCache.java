@@ -0,0 +1,74 @@
+package com.deshark.core.scan;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Directory listings from the previous scan, keyed by absolute path. A directory's mtime only
+ * changes when entries are added, removed or renamed, so a listing is reused while the mtime
+ * matches; files edited in place are still caught by the hash index when they are hashed.
+ */
+public class ScanCache {
+    private static final Logger log = LoggerFactory.getLogger(ScanCache.class);
+    // directories modified this recently may still change within the same mtime tick
+    private static final long MIN_AGE_MILLIS = 2000;
+
+    private final Path file;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private volatile Map<String, Listing> previous;
+    private volatile Map<String, Listing> current = new ConcurrentHashMap<>();
+
+    public record Listing(long mtime, List<String> files, List<String> directories) {}
+
+    private ScanCache(Path file, Map<String, Listing> previous) {
+        this.file = file;
+        this.previous = previous;
+    }
+
+    public static ScanCache open(Path file) throws IOException {
+        Map<String, Listing> previous = Map.of();
+        if (Files.exists(file)) {
+            try {
+                previous = new ObjectMapper().readValue(file.toFile(), new TypeReference<Map<String, Listing>>() {});
+            } catch (IOException e) {
+                log.warn("Ignoring unreadable scan cache {}", file, e);
+            }
+        }
+        return new ScanCache(file, previous);
+    }
+
+    Listing lookup(Path dir, long mtime) {
+        Listing listing = previous.get(dir.toAbsolutePath().toString());
+        return listing != null && listing.mtime() == mtime ? listing : null;
+    }
+
+    void record(Path dir, Listing listing) {
+        if (listing.mtime() > System.currentTimeMillis() - MIN_AGE_MILLIS) {
+            return;
+        }
+        current.put(dir.toAbsolutePath().toString(), listing);
+    }
+
+    // replaces the stored listings with the ones seen by the last scan, which the next scan
+    // with this cache then starts from
+    public void save() throws IOException {
+        Map<String, Listing> seen = current;
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        mapper.writeValue(tmp.toFile(), seen);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.debug("Saved {} directory listings to {}", seen.size(), file);
+        previous = seen;
+        current = new ConcurrentHashMap<>();
+    }
+}
@@ -0,0 +1,204 @@
+package com.deshark.core.scan;
+
+import com.deshark.core.schemas.ScanConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Watches the source directories and reports the files that changed once nothing has changed
+ * for the debounce time, so a file that is still being written is reported once, when it is
+ * done. The watch service doesn't recurse, so every directory is registered on its own and new
+ * ones as they appear, with their files reported as changed. Ignore files apply like they do
+ * for {@link DirectoryScanner}; when one changes, or the service drops events, everything is
+ * registered again and the batch asks for a rescan.
+ */
+public class SourceWatcher implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(SourceWatcher.class);
+
+    private final List<DirectoryScanner.Root> roots;
+    private final ScanConfig config;
+    private final long debounceMillis;
+    private final WatchService service;
+    private final Map<WatchKey, Watched> watched = new ConcurrentHashMap<>();
+    private Thread thread;
+
+    private record Watched(DirectoryScanner.Root root, Path dir, IgnoreRules rules) {}
+
+    public record Changed(Path file, String relativePath, String dist) {}
+
+    // files may be incomplete when rescan is set, the receiver has to look at everything
+    public record Changes(List<Changed> files, boolean rescan) {}
+
+    public SourceWatcher(List<DirectoryScanner.Root> roots, ScanConfig config, long debounceMillis) throws IOException {
+        this.roots = roots;
+        this.config = config;
+        this.debounceMillis = debounceMillis;
+        this.service = FileSystems.getDefault().newWatchService();
+    }
+
+    // registers the directories and hands settled changes to the consumer on a watcher thread
+    public void start(Consumer<Changes> consumer) throws IOException {
+        registerAll();
+        thread = Thread.ofPlatform().daemon().name("source-watcher").start(() -> watch(consumer));
+    }
+
+    public int directories() {
+        return watched.size();
+    }
+
+    private void watch(Consumer<Changes> consumer) {
+        Map<Path, Changed> pending = new LinkedHashMap<>();
+        boolean rescan = false;
+        long deadline = 0;
+        try {
+            while (true) {
+                WatchKey key;
+                if (pending.isEmpty() && !rescan) {
+                    key = service.take();
+                } else {
+                    key = service.poll(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                }
+                if (key != null) {
+                    rescan |= handle(key, pending);
+                    deadline = System.currentTimeMillis() + debounceMillis;
+                    continue;
+                }
+                if (rescan) {
+                    reregister();
+                }
+                consumer.accept(new Changes(List.copyOf(pending.values()), rescan));
+                pending.clear();
+                rescan = false;
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            log.debug("Source watcher stopped");
+        }
+    }
+
+    // true if changes may have been missed
+    private boolean handle(WatchKey key, Map<Path, Changed> pending) {
+        Watched dir = watched.get(key);
+        boolean missed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                missed = true;
+                continue;
+            }
+            // deleted files drop out of the next scan on their own
+            if (dir == null || event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                continue;
+            }
+            Path child = dir.dir().resolve((Path) event.context());
+            if (child.getFileName().toString().equals(config.ignoreFile())) {
+                missed = true;
+                continue;
+            }
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (IOException e) {
+                // gone again before it settled
+                continue;
+            }
+            if (!attrs.isDirectory()) {
+                if (!dir.rules().isIgnored(child, false)) {
+                    pending.put(child, changed(dir.root(), child));
+                }
+            } else if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && !dir.rules().isIgnored(child, true)) {
+                try {
+                    register(dir.root(), child, dir.rules(), pending);
+                } catch (IOException e) {
+                    log.warn("Failed to watch {}", child, e);
+                    missed = true;
+                }
+            }
+        }
+        if (!key.reset()) {
+            watched.remove(key);
+        }
+        return missed;
+    }
+
+    // before the rescan, so nothing that changes while it runs is missed
+    private void reregister() {
+        watched.keySet().forEach(WatchKey::cancel);
+        watched.clear();
+        try {
+            registerAll();
+        } catch (IOException e) {
+            log.warn("Failed to watch all source directories, changes in some are only seen by a sync", e);
+        }
+    }
+
+    private void registerAll() throws IOException {
+        for (DirectoryScanner.Root root : roots) {
+            register(root, root.dir(), IgnoreRules.NONE, null);
+        }
+        log.debug("Watching {} directories", watched.size());
+    }
+
+    // registers dir and the directories below it; with pending set their files are reported too
+    private void register(DirectoryScanner.Root root, Path dir, IgnoreRules inherited, Map<Path, Changed> pending)
+            throws IOException {
+        Path ignoreFile = dir.resolve(config.ignoreFile());
+        IgnoreRules rules = Files.isRegularFile(ignoreFile) ? inherited.withFile(ignoreFile) : inherited;
+        // registered before listing, so a file created in between is seen by one or the other
+        WatchKey key = dir.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        watched.put(key, new Watched(root, dir, rules));
+        List<Path> subdirectories = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            for (Path entry : entries) {
+                BasicFileAttributes attrs = Files.readAttributes(entry, BasicFileAttributes.class,
+                        LinkOption.NOFOLLOW_LINKS);
+                if (attrs.isDirectory()) {
+                    if (!rules.isIgnored(entry, true)) {
+                        subdirectories.add(entry);
+                    }
+                } else if (pending != null && !entry.equals(ignoreFile) && !rules.isIgnored(entry, false)) {
+                    pending.put(entry, changed(root, entry));
+                }
+            }
+        }
+        for (Path subdirectory : subdirectories) {
+            register(root, subdirectory, rules, pending);
+        }
+    }
+
+    private static Changed changed(DirectoryScanner.Root root, Path file) {
+        return new Changed(file, root.dir().relativize(file).toString().replace("\\", "/"), root.dist());
+    }
+
+    @Override
+    public void close() throws IOException {
+        service.close();
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.deshark.core.schemas;
+
+// a zip of the files a fresh install of one side needs, for fetching in one request
+public record Bundle(
+        // client or server; the bundle holds the common files plus those of this side
+        String dist,
+        String hash,
+        String link,
+        long size,
+        int files
+) {}
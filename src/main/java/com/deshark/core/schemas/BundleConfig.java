@@ -0,0 +1,26 @@
+package com.deshark.core.schemas;
+
+public record BundleConfig(
+        // builds a client and a server zip per version for fresh installs
+        boolean enabled,
+        // larger files are left out and fetched by their own link
+        long maxFileSize,
+        // deflate level of compressible entries; entries stored as is are not compressed again
+        int level
+) {
+    private static final long DEFAULT_MAX_FILE_SIZE = 16L * 1024 * 1024;
+    private static final int DEFAULT_LEVEL = 6;
+
+    public BundleConfig {
+        if (maxFileSize <= 0) {
+            maxFileSize = DEFAULT_MAX_FILE_SIZE;
+        }
+        if (level <= 0 || level > 9) {
+            level = DEFAULT_LEVEL;
+        }
+    }
+
+    public static BundleConfig empty() {
+        return new BundleConfig(false, DEFAULT_MAX_FILE_SIZE, DEFAULT_LEVEL);
+    }
+}
@@ -0,0 +1,41 @@
+package com.deshark.core.schemas;
+
+public record ChunkingConfig(
+        // stores large files as content-defined chunks; needs a launcher that reads chunk lists
+        boolean enabled,
+        long minFileSize,
+        int minChunkSize,
+        int avgChunkSize,
+        int maxChunkSize,
+        // chunk uploads in flight per file
+        int concurrency
+) {
+    private static final long DEFAULT_MIN_FILE_SIZE = 32L * 1024 * 1024;
+    private static final int DEFAULT_MIN_CHUNK_SIZE = 256 * 1024;
+    private static final int DEFAULT_AVG_CHUNK_SIZE = 1024 * 1024;
+    private static final int DEFAULT_MAX_CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final int DEFAULT_CONCURRENCY = 8;
+
+    public ChunkingConfig {
+        if (minFileSize <= 0) {
+            minFileSize = DEFAULT_MIN_FILE_SIZE;
+        }
+        if (avgChunkSize <= 0 || Integer.bitCount(avgChunkSize) != 1) {
+            avgChunkSize = DEFAULT_AVG_CHUNK_SIZE;
+        }
+        if (minChunkSize <= 0 || minChunkSize > avgChunkSize) {
+            minChunkSize = avgChunkSize / 4;
+        }
+        if (maxChunkSize < avgChunkSize) {
+            maxChunkSize = avgChunkSize * 4;
+        }
+        if (concurrency <= 0) {
+            concurrency = DEFAULT_CONCURRENCY;
+        }
+    }
+
+    public static ChunkingConfig empty() {
+        return new ChunkingConfig(false, DEFAULT_MIN_FILE_SIZE, DEFAULT_MIN_CHUNK_SIZE, DEFAULT_AVG_CHUNK_SIZE,
+                DEFAULT_MAX_CHUNK_SIZE, DEFAULT_CONCURRENCY);
+    }
+}
@@ -0,0 +1,41 @@
+package com.deshark.core.schemas;
+
+public record CompressionConfig(
+        Mode mode,
+        // deflate level 1-9
+        int level,
+        // SNIFF compresses a file only if its sample shrinks to at most this fraction
+        double maxRatio,
+        int sampleSize
+) {
+    private static final int DEFAULT_LEVEL = 6;
+    private static final double DEFAULT_MAX_RATIO = 0.9;
+    private static final int DEFAULT_SAMPLE_SIZE = 64 * 1024;
+
+    public enum Mode {
+        // deflate known text formats, store everything else as is; the default
+        EXTENSION,
+        // like EXTENSION, but test-compress a sample of files with unknown extensions; opt-in,
+        // since it changes the stored form, and so the keys, of files the baseline stored as is
+        SNIFF
+    }
+
+    public CompressionConfig {
+        if (mode == null) {
+            mode = Mode.EXTENSION;
+        }
+        if (level < 1 || level > 9) {
+            level = DEFAULT_LEVEL;
+        }
+        if (maxRatio <= 0 || maxRatio > 1) {
+            maxRatio = DEFAULT_MAX_RATIO;
+        }
+        if (sampleSize <= 0) {
+            sampleSize = DEFAULT_SAMPLE_SIZE;
+        }
+    }
+
+    public static CompressionConfig empty() {
+        return new CompressionConfig(Mode.EXTENSION, DEFAULT_LEVEL, DEFAULT_MAX_RATIO, DEFAULT_SAMPLE_SIZE);
+    }
+}
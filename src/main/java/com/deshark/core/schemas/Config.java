@@ -5,9 +5,23 @@ public record Config(
         String sourceDir,
         String sourceServerDir,
         String sourceClientDir,
-        String versionName
+        String versionName,
+        String workDir,
+        UploadConfig upload,
+        MetricsConfig metrics,
+        CompressionConfig compression,
+        ChunkingConfig chunking,
+        ScanConfig scan,
+        GcConfig gc,
+        BundleConfig bundle,
+        PackConfig pack,
+        VerifyConfig verify,
+        DaemonConfig daemon
 ) {
     public static Config empty() {
-        return new Config(StorageConfig.empty(), "source", "source-server", "source-client", "1.0.0");
+        return new Config(StorageConfig.empty(), "source", "source-server", "source-client", "1.0.0", ".mup",
+                UploadConfig.empty(), MetricsConfig.empty(), CompressionConfig.empty(),
+                ChunkingConfig.empty(), ScanConfig.empty(), GcConfig.empty(), BundleConfig.empty(),
+                PackConfig.empty(), VerifyConfig.empty(), DaemonConfig.empty());
     }
 }
@@ -0,0 +1,19 @@
+package com.deshark.core.schemas;
+
+public record DaemonConfig(
+        // quiet time after the last change before the changed files are uploaded; below 2000 a
+        // file is too fresh for the hash index to keep and publish hashes it again
+        long debounceMillis
+) {
+    private static final long DEFAULT_DEBOUNCE_MILLIS = 2000;
+
+    public DaemonConfig {
+        if (debounceMillis <= 0) {
+            debounceMillis = DEFAULT_DEBOUNCE_MILLIS;
+        }
+    }
+
+    public static DaemonConfig empty() {
+        return new DaemonConfig(DEFAULT_DEBOUNCE_MILLIS);
+    }
+}
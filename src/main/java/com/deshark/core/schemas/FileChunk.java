@@ -0,0 +1,8 @@
+package com.deshark.core.schemas;
+
+public record FileChunk(
+        String hash,
+        String link,
+        long offset,
+        long size
+) {}
@@ -0,0 +1,32 @@
+package com.deshark.core.schemas;
+
+public record GcConfig(
+        // objects younger than this are kept even when unreferenced, so an upload in progress survives
+        long gracePeriodHours,
+        // keys per delete request, at most 1000
+        int deleteBatchSize,
+        // shards listed and deleted at once
+        int concurrency,
+        // only report what would be deleted
+        boolean dryRun
+) {
+    private static final long DEFAULT_GRACE_PERIOD_HOURS = 7 * 24;
+    private static final int DEFAULT_DELETE_BATCH_SIZE = 1000;
+    private static final int DEFAULT_CONCURRENCY = 8;
+
+    public GcConfig {
+        if (gracePeriodHours <= 0) {
+            gracePeriodHours = DEFAULT_GRACE_PERIOD_HOURS;
+        }
+        if (deleteBatchSize <= 0 || deleteBatchSize > DEFAULT_DELETE_BATCH_SIZE) {
+            deleteBatchSize = DEFAULT_DELETE_BATCH_SIZE;
+        }
+        if (concurrency <= 0) {
+            concurrency = DEFAULT_CONCURRENCY;
+        }
+    }
+
+    public static GcConfig empty() {
+        return new GcConfig(DEFAULT_GRACE_PERIOD_HOURS, DEFAULT_DELETE_BATCH_SIZE, DEFAULT_CONCURRENCY, false);
+    }
+}
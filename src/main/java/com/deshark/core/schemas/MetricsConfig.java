@@ -0,0 +1,14 @@
+package com.deshark.core.schemas;
+
+public record MetricsConfig(
+        // run reports are written here, relative paths resolve against the working directory
+        String reportDir,
+        // optional Prometheus text file, rewritten at the end of every run
+        String prometheusFile,
+        // optional port serving /metrics while the run is in progress, 0 disables it
+        int prometheusPort
+) {
+    public static MetricsConfig empty() {
+        return new MetricsConfig(null, null, 0);
+    }
+}
@@ -5,6 +5,7 @@ import java.util.Map;
 
 public record Modpack(
         List<ModpackFile> files,
+        List<Bundle> bundles,
         String version,
         Map<String, String> libraries
 ) {
@@ -0,0 +1,11 @@
+package com.deshark.core.schemas;
+
+import java.util.List;
+
+public record ModpackDelta(
+        String fromVersion,
+        String toVersion,
+        List<ModpackFile> added,
+        List<ModpackFile> changed,
+        List<ModpackFile> removed
+) {}
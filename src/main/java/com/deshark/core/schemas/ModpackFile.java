@@ -1,10 +1,18 @@
 package com.deshark.core.schemas;
 
+import java.util.List;
+
 public record ModpackFile(
         String file,
         String hash,
         String link,
         long size,
         String dist,
-        boolean compressed
+        // kept for older launchers, true whenever codec is not identity
+        boolean compressed,
+        String codec,
+        // set for files stored as content-defined chunks, which then have no link of their own
+        List<FileChunk> chunks,
+        // set for small files stored inside a pack, which then have no link of their own
+        PackRef pack
 ) {}
\ No newline at end of file
@@ -0,0 +1,32 @@
+package com.deshark.core.schemas;
+
+public record PackConfig(
+        // stores small files inside shared pack objects; needs a launcher that reads pack ranges
+        boolean enabled,
+        // files up to this size are packed
+        long maxFileSize,
+        // small files are spread over this many packs by content hash; changing it repacks everything
+        int packCount,
+        // packs built and uploaded at once
+        int concurrency
+) {
+    private static final long DEFAULT_MAX_FILE_SIZE = 16 * 1024;
+    private static final int DEFAULT_PACK_COUNT = 64;
+    private static final int DEFAULT_CONCURRENCY = 8;
+
+    public PackConfig {
+        if (maxFileSize <= 0) {
+            maxFileSize = DEFAULT_MAX_FILE_SIZE;
+        }
+        if (packCount <= 0) {
+            packCount = DEFAULT_PACK_COUNT;
+        }
+        if (concurrency <= 0) {
+            concurrency = DEFAULT_CONCURRENCY;
+        }
+    }
+
+    public static PackConfig empty() {
+        return new PackConfig(false, DEFAULT_MAX_FILE_SIZE, DEFAULT_PACK_COUNT, DEFAULT_CONCURRENCY);
+    }
+}
@@ -0,0 +1,10 @@
+package com.deshark.core.schemas;
+
+// where a packed file's bytes sit in its pack; fetch with an HTTP range request
+public record PackRef(
+        String hash,
+        String link,
+        long offset,
+        // of the stored bytes, which are encoded with the file's codec
+        long length
+) {}
@@ -0,0 +1,20 @@
+package com.deshark.core.schemas;
+
+import java.util.List;
+
+public record PlanEntry(
+        // absolute path of the source file, checked against size and mtime before applying
+        String source,
+        String file,
+        String dist,
+        long size,
+        long mtime,
+        String hash,
+        String codec,
+        List<FileChunk> chunks,
+        Action action,
+        // bytes to send after encoding; raw chunk sizes for chunked files
+        long uploadBytes
+) {
+    public enum Action { UPLOAD, REUSE }
+}
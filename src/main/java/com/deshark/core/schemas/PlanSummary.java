@@ -0,0 +1,18 @@
+package com.deshark.core.schemas;
+
+public record PlanSummary(
+        String versionName,
+        String createdAt,
+        long files,
+        long uploads,
+        long reused,
+        long bytesRead,
+        long uploadBytes,
+        // against the latest published version, -1 when there is none to compare with
+        int added,
+        int changed,
+        int removed,
+        // from earlier run reports, 0 when there are none
+        double historicalMBps,
+        double estimatedSeconds
+) {}
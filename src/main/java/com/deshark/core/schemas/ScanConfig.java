@@ -0,0 +1,24 @@
+package com.deshark.core.schemas;
+
+public record ScanConfig(
+        // directories listed at once, defaults to the number of cores
+        int parallelism,
+        // reuse the previous listing of directories whose mtime hasn't changed
+        boolean incremental,
+        String ignoreFile
+) {
+    private static final String DEFAULT_IGNORE_FILE = ".mupignore";
+
+    public ScanConfig {
+        if (parallelism <= 0) {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        }
+        if (ignoreFile == null || ignoreFile.isEmpty()) {
+            ignoreFile = DEFAULT_IGNORE_FILE;
+        }
+    }
+
+    public static ScanConfig empty() {
+        return new ScanConfig(0, false, DEFAULT_IGNORE_FILE);
+    }
+}
@@ -0,0 +1,27 @@
+package com.deshark.core.schemas;
+
+// network conditions the in-memory provider imitates; all zero means an ideal, instant bucket
+public record SimulationConfig(
+        // added to every request
+        long latencyMillis,
+        // uniform random extra on top of latencyMillis
+        long latencyJitterMillis,
+        // shared by all transfers in flight, 0 for unlimited
+        long bandwidthBytesPerSecond,
+        // fraction of writes that fail with a retryable 500
+        double errorRate,
+        // writes beyond this many in flight are rejected with 503 SlowDown, 0 for unlimited
+        int maxConcurrentRequests
+) {
+    public SimulationConfig {
+        latencyMillis = Math.max(0, latencyMillis);
+        latencyJitterMillis = Math.max(0, latencyJitterMillis);
+        bandwidthBytesPerSecond = Math.max(0, bandwidthBytesPerSecond);
+        errorRate = Math.min(1, Math.max(0, errorRate));
+        maxConcurrentRequests = Math.max(0, maxConcurrentRequests);
+    }
+
+    public static SimulationConfig empty() {
+        return new SimulationConfig(0, 0, 0, 0, 0);
+    }
+}
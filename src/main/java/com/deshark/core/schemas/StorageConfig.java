@@ -7,9 +7,25 @@ public record StorageConfig(
         String region,
         String bucketName,
         String downloadUrl,
-        String projectId
+        String projectId,
+        // tencent_cos, local or memory
+        String type,
+        // bucket directory of the local provider, defaults to <workDir>/local-storage
+        String localDir,
+        SimulationConfig simulation
 ) {
+    private static final String DEFAULT_TYPE = "tencent_cos";
+
+    public StorageConfig {
+        if (type == null || type.isBlank()) {
+            type = DEFAULT_TYPE;
+        }
+        if (simulation == null) {
+            simulation = SimulationConfig.empty();
+        }
+    }
+
     public static StorageConfig empty() {
-        return new StorageConfig("", "", "", "", "", "");
+        return new StorageConfig("", "", "", "", "", "", DEFAULT_TYPE, "", SimulationConfig.empty());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,99 @@
+package com.deshark.core.schemas;
+
+public record UploadConfig(
+        long multipartThreshold,
+        long partSize,
+        int partConcurrency,
+        int maxConnections,
+        int hashThreads,
+        int compressThreads,
+        int uploadThreads,
+        int queueCapacity,
+        ExecutionMode executionMode,
+        // retries per file, 0 for none; null (missing) for the default
+        Integer maxRetries,
+        long retryBaseDelayMillis,
+        long retryMaxDelayMillis,
+        int retryBudget,
+        // tunes uploads in flight between minConnections and maxConnections from latency and throttling
+        boolean adaptiveConcurrency,
+        int minConnections,
+        // average upload rate cap across all uploads, 0 for none
+        long maxBytesPerSecond
+) {
+    private static final long DEFAULT_MULTIPART_THRESHOLD = 64L * 1024 * 1024;
+    private static final long DEFAULT_PART_SIZE = 16L * 1024 * 1024;
+    private static final int DEFAULT_PART_CONCURRENCY = 8;
+    private static final int DEFAULT_MAX_CONNECTIONS = 50;
+    private static final int DEFAULT_QUEUE_CAPACITY = 256;
+    private static final int DEFAULT_MAX_RETRIES = 3;
+    private static final long DEFAULT_RETRY_BASE_DELAY_MILLIS = 500;
+    private static final long DEFAULT_RETRY_MAX_DELAY_MILLIS = 30_000;
+    private static final int DEFAULT_RETRY_BUDGET = 100;
+    private static final int DEFAULT_MIN_CONNECTIONS = 4;
+
+    public enum ExecutionMode {
+        // fixed pools of platform threads for every stage
+        PLATFORM,
+        // network work on virtual threads, limited to maxConnections concurrent requests
+        VIRTUAL
+    }
+
+    public UploadConfig {
+        // missing fields in older config files deserialize as 0
+        if (multipartThreshold <= 0) {
+            multipartThreshold = DEFAULT_MULTIPART_THRESHOLD;
+        }
+        if (partSize <= 0) {
+            partSize = DEFAULT_PART_SIZE;
+        }
+        if (partConcurrency <= 0) {
+            partConcurrency = DEFAULT_PART_CONCURRENCY;
+        }
+        if (maxConnections <= 0) {
+            maxConnections = DEFAULT_MAX_CONNECTIONS;
+        }
+        if (hashThreads <= 0) {
+            hashThreads = Runtime.getRuntime().availableProcessors();
+        }
+        if (compressThreads <= 0) {
+            compressThreads = Runtime.getRuntime().availableProcessors();
+        }
+        if (uploadThreads <= 0) {
+            uploadThreads = maxConnections;
+        }
+        if (queueCapacity <= 0) {
+            queueCapacity = DEFAULT_QUEUE_CAPACITY;
+        }
+        if (executionMode == null) {
+            executionMode = ExecutionMode.PLATFORM;
+        }
+        if (maxRetries == null) {
+            maxRetries = DEFAULT_MAX_RETRIES;
+        } else if (maxRetries < 0) {
+            maxRetries = 0;
+        }
+        if (retryBaseDelayMillis <= 0) {
+            retryBaseDelayMillis = DEFAULT_RETRY_BASE_DELAY_MILLIS;
+        }
+        if (retryMaxDelayMillis <= 0) {
+            retryMaxDelayMillis = DEFAULT_RETRY_MAX_DELAY_MILLIS;
+        }
+        if (retryBudget <= 0) {
+            retryBudget = DEFAULT_RETRY_BUDGET;
+        }
+        if (minConnections <= 0 || minConnections > maxConnections) {
+            minConnections = Math.min(DEFAULT_MIN_CONNECTIONS, maxConnections);
+        }
+        if (maxBytesPerSecond < 0) {
+            maxBytesPerSecond = 0;
+        }
+    }
+
+    public static UploadConfig empty() {
+        return new UploadConfig(DEFAULT_MULTIPART_THRESHOLD, DEFAULT_PART_SIZE, DEFAULT_PART_CONCURRENCY,
+                DEFAULT_MAX_CONNECTIONS, 0, 0, 0, DEFAULT_QUEUE_CAPACITY, ExecutionMode.PLATFORM,
+                DEFAULT_MAX_RETRIES, DEFAULT_RETRY_BASE_DELAY_MILLIS, DEFAULT_RETRY_MAX_DELAY_MILLIS, DEFAULT_RETRY_BUDGET,
+                false, DEFAULT_MIN_CONNECTIONS, 0);
+    }
+}
@@ -0,0 +1,29 @@
+package com.deshark.core.schemas;
+
+public record VerifyConfig(
+        // metadata requests in flight at once
+        int concurrency,
+        // caps metadata requests per second, 0 for no cap; repairs fall under upload.maxBytesPerSecond
+        int maxRequestsPerSecond,
+        // stores objects that are missing or differ again from the local files; on when missing
+        Boolean repair
+) {
+    private static final int DEFAULT_CONCURRENCY = 16;
+    private static final boolean DEFAULT_REPAIR = true;
+
+    public VerifyConfig {
+        if (concurrency <= 0) {
+            concurrency = DEFAULT_CONCURRENCY;
+        }
+        if (maxRequestsPerSecond < 0) {
+            maxRequestsPerSecond = 0;
+        }
+        if (repair == null) {
+            repair = DEFAULT_REPAIR;
+        }
+    }
+
+    public static VerifyConfig empty() {
+        return new VerifyConfig(DEFAULT_CONCURRENCY, 0, null);
+    }
+}
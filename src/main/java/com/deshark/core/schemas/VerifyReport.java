@@ -0,0 +1,40 @@
+package com.deshark.core.schemas;
+
+import java.util.List;
+
+public record VerifyReport(
+        String versionName,
+        String checkedAt,
+        // distinct objects the manifest references: files, chunks, packs and bundles
+        int objects,
+        // size and CRC64 match what was computed locally
+        int verified,
+        // size matches; no CRC64 to compare on one side
+        int sizeOnly,
+        // present, but nothing known locally to compare it with
+        int unchecked,
+        int repaired,
+        List<Finding> problems
+) {
+    public enum Problem {
+        MISSING,
+        SIZE_MISMATCH,
+        CHECKSUM_MISMATCH,
+        // the store couldn't be asked; the object is neither good nor bad
+        CHECK_FAILED
+    }
+
+    // sizes are -1 and checksums null where unknown; note says why a repair didn't happen
+    public record Finding(
+            String key,
+            String kind,
+            Problem problem,
+            long expectedSize,
+            long actualSize,
+            String expectedCrc64,
+            String actualCrc64,
+            String etag,
+            boolean repaired,
+            String note
+    ) {}
+}
@@ -4,5 +4,7 @@ public record VersionInfo(
         String versionName,
         String versionDate,
         String packFilePath,
-        String changelogPath
+        String changelogPath,
+        // changes against the previous version, null for the first version
+        String deltaPath
 ) {}
@@ -0,0 +1,186 @@
+package com.deshark.core.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits requests in flight the way TCP limits its congestion window. The limit starts at
+ * the minimum and doubles every round trip (slow start) until the first congestion signal,
+ * then grows by one per round trip. Throttling responses halve it, at most once per round
+ * trip. Latency is the other signal: once the link is saturated, more requests only queue and
+ * take longer without moving more bytes. Requests differ a lot in size, so a window is compared
+ * with what its requests would have taken at the best rates seen: a fixed cost per request,
+ * learned from small requests, plus their bytes at the best throughput of large ones. A window
+ * that took more than twice that scales the limit down in proportion to the excess.
+ */
+public class AdaptiveConcurrencyLimiter {
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+    private static final double BACKOFF = 0.5;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    // lets the baseline follow a network that got slower for good; only windows run at the
+    // minimum limit move it, above that a slower window is requests queueing behind each other
+    private static final double BASELINE_DRIFT = 0.01;
+    private static final int MIN_WINDOW_SAMPLES = 8;
+    // requests this large mostly measure throughput, smaller ones mostly the round trip
+    private static final long LARGE_REQUEST_BYTES = 256 * 1024;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private double limit;
+    private double slowStartThreshold;
+    private int inFlight;
+    private int peak;
+    private long congestionEvents;
+    // requests started before this were in flight when the limit was last cut
+    private long lastDecreaseNanos;
+    private int windowSamples;
+    private long windowLatencyNanos;
+    private long windowBytes;
+    private int windowSmallSamples;
+    private long windowSmallLatencyNanos;
+    private long windowLargeBytes;
+    private long windowLargeLatencyNanos;
+    // fixed cost of a request and transfer time per byte, the lowest window averages seen
+    private double baselineLatencyNanos = Double.NaN;
+    private double baselineNanosPerByte = Double.NaN;
+
+    public enum Outcome {
+        SUCCESS,
+        // throttled or timed out: the endpoint or the link is overloaded
+        CONGESTION,
+        // failed for a reason that says nothing about load
+        FAILURE
+    }
+
+    public AdaptiveConcurrencyLimiter(int minLimit, int maxLimit) {
+        this.minLimit = Math.max(1, Math.min(minLimit, maxLimit));
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = this.minLimit;
+        this.slowStartThreshold = this.maxLimit;
+        this.peak = this.minLimit;
+        this.lastDecreaseNanos = System.nanoTime();
+    }
+
+    // blocks until a request may start and returns its start time for release
+    public synchronized long acquire() throws InterruptedException {
+        while (inFlight >= (int) limit) {
+            wait();
+        }
+        inFlight++;
+        return System.nanoTime();
+    }
+
+    // bytes is the size of the request body
+    public void release(long startNanos, long bytes, Outcome outcome) {
+        release(startNanos, System.nanoTime(), bytes, outcome);
+    }
+
+    synchronized void release(long startNanos, long now, long bytes, Outcome outcome) {
+        // growth only counts when the limit was what held requests back
+        boolean saturated = inFlight >= (int) limit;
+        inFlight--;
+        switch (outcome) {
+            case SUCCESS -> {
+                if (saturated) {
+                    limit = Math.min(maxLimit, limit + (limit < slowStartThreshold ? 1 : 1 / limit));
+                    peak = Math.max(peak, (int) limit);
+                }
+                sampleLatency(startNanos, now, bytes);
+            }
+            case CONGESTION -> {
+                congestionEvents++;
+                decrease(startNanos, now, BACKOFF, "throttled");
+            }
+            case FAILURE -> {
+            }
+        }
+        notifyAll();
+    }
+
+    public synchronized int limit() {
+        return (int) limit;
+    }
+
+    public synchronized int peak() {
+        return peak;
+    }
+
+    public synchronized long congestionEvents() {
+        return congestionEvents;
+    }
+
+    private void sampleLatency(long startNanos, long now, long bytes) {
+        long latency = now - startNanos;
+        windowSamples++;
+        windowLatencyNanos += latency;
+        windowBytes += bytes;
+        if (bytes >= LARGE_REQUEST_BYTES) {
+            windowLargeBytes += bytes;
+            windowLargeLatencyNanos += latency;
+        } else {
+            windowSmallSamples++;
+            windowSmallLatencyNanos += latency;
+        }
+        if (windowSamples < Math.max(MIN_WINDOW_SAMPLES, (int) limit)) {
+            return;
+        }
+        double expected = expectedNanos();
+        if (!Double.isNaN(expected)) {
+            double excess = windowLatencyNanos / expected;
+            if ((int) limit > minLimit && excess > LATENCY_TOLERANCE) {
+                decrease(startNanos, now, Math.max(BACKOFF, LATENCY_TOLERANCE / excess),
+                        String.format("latency %.1fx the expected", excess));
+            } else if ((int) limit <= minLimit && excess > 1) {
+                double drift = 1 + (excess - 1) * BASELINE_DRIFT;
+                baselineLatencyNanos *= drift;
+                baselineNanosPerByte *= drift;
+            }
+        }
+        learn();
+        windowSamples = 0;
+        windowLatencyNanos = 0;
+        windowBytes = 0;
+        windowSmallSamples = 0;
+        windowSmallLatencyNanos = 0;
+        windowLargeBytes = 0;
+        windowLargeLatencyNanos = 0;
+    }
+
+    // what the requests of this window would have taken at the baseline; NaN while a baseline
+    // they need is still unknown
+    private double expectedNanos() {
+        if (Double.isNaN(baselineLatencyNanos) || windowLargeBytes > 0 && Double.isNaN(baselineNanosPerByte)) {
+            return Double.NaN;
+        }
+        double perByte = Double.isNaN(baselineNanosPerByte) ? 0 : baselineNanosPerByte;
+        return windowSamples * baselineLatencyNanos + windowBytes * perByte;
+    }
+
+    private void learn() {
+        if (windowSmallSamples > 0) {
+            double average = (double) windowSmallLatencyNanos / windowSmallSamples;
+            if (Double.isNaN(baselineLatencyNanos) || average < baselineLatencyNanos) {
+                baselineLatencyNanos = average;
+            }
+        }
+        if (windowLargeBytes > 0) {
+            double fixed = Double.isNaN(baselineLatencyNanos) ? 0 : baselineLatencyNanos;
+            long largeSamples = windowSamples - windowSmallSamples;
+            double perByte = Math.max(0, windowLargeLatencyNanos - largeSamples * fixed) / windowLargeBytes;
+            if (Double.isNaN(baselineNanosPerByte) || perByte < baselineNanosPerByte) {
+                baselineNanosPerByte = perByte;
+            }
+        }
+    }
+
+    private void decrease(long startNanos, long now, double factor, String reason) {
+        if (startNanos - lastDecreaseNanos < 0) {
+            // already answered by the last cut
+            return;
+        }
+        limit = Math.max(minLimit, limit * factor);
+        slowStartThreshold = limit;
+        lastDecreaseNanos = now;
+        log.debug("Upload concurrency lowered to {} ({})", (int) limit, reason);
+    }
+}
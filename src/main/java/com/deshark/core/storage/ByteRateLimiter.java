@@ -0,0 +1,35 @@
+package com.deshark.core.storage;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps the average upload rate. Each transfer books its size on a shared timeline and waits
+ * until its slot comes up; a large object goes out at full speed but pushes the following
+ * ones back. Up to a second of unused allowance carries over as burst.
+ */
+public class ByteRateLimiter {
+    private static final long MAX_BURST_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final long bytesPerSecond;
+    private long nextFreeNanos = System.nanoTime();
+
+    public ByteRateLimiter(long bytesPerSecond) {
+        if (bytesPerSecond <= 0) {
+            throw new IllegalArgumentException("bytesPerSecond must be positive: " + bytesPerSecond);
+        }
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    public void acquire(long bytes) throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long start = nextFreeNanos - now < -MAX_BURST_NANOS ? now - MAX_BURST_NANOS : nextFreeNanos;
+            nextFreeNanos = start + (long) (bytes * 1e9 / bytesPerSecond);
+            waitNanos = start - now;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+}
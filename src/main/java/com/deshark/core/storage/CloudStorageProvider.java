@@ -1,18 +1,54 @@
 package com.deshark.core.storage;
 
+import com.deshark.core.codec.Codec;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 public interface CloudStorageProvider {
 
-    void upload(Path file, String key, boolean compressed) throws IOException;
+    // codec is the encoding the content is already in, stored as the object's Content-Encoding
+    void upload(Path file, String key, Codec codec) throws IOException;
+
+    default void upload(InputStream is, String key, Codec codec) throws IOException {
+        upload(is, is.available(), key, codec);
+    }
 
-    void upload(InputStream is, String key, boolean compressed) throws IOException;
+    void upload(InputStream is, long contentLength, String key, Codec codec) throws IOException;
 
     boolean fileExists(String key);
 
+    // the subset of keys that are present in the bucket
+    default Set<String> existingKeys(Collection<String> keys) {
+        return keys.stream().filter(this::fileExists).collect(Collectors.toSet());
+    }
+
+    List<StoredObject> list(String prefix);
+
+    // metadata of one object without its body, null if it doesn't exist
+    default StoredObject stat(String key) {
+        for (StoredObject object : list(key)) {
+            if (object.key().equals(key)) {
+                return object;
+            }
+        }
+        return null;
+    }
+
+    // deletes up to 1000 keys in one request and returns the ones that are gone; missing keys count as deleted
+    Set<String> delete(Collection<String> keys);
+
     InputStream getObjectStream(String key);
 
+    // forgets what the provider remembers about the bucket, so objects deleted behind its back
+    // since are noticed; called between runs of a provider that outlives them
+    default void refresh() {
+    }
+
     void shutdown();
 }
@@ -0,0 +1,121 @@
+package com.deshark.core.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Answer to "does this key exist" until {@link #clear}, for a run or one publish of a daemon
+ * session. Once a top-level shard of the content layout sees enough lookups it is listed in
+ * one go and later lookups are served from memory; everything else falls back to a per-key HEAD.
+ */
+public class ExistenceCache {
+    private static final Logger log = LoggerFactory.getLogger(ExistenceCache.class);
+    // HEAD requests per shard before the whole shard is listed instead
+    private static final int LIST_THRESHOLD = 8;
+
+    private final Function<String, List<StoredObject>> lister;
+    private final Predicate<String> head;
+    private final Map<String, CompletableFuture<Set<String>>> listedShards = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> headCounts = new ConcurrentHashMap<>();
+    private final Set<String> uploaded = ConcurrentHashMap.newKeySet();
+
+    public ExistenceCache(Function<String, List<StoredObject>> lister, Predicate<String> head) {
+        this.lister = lister;
+        this.head = head;
+    }
+
+    public boolean exists(String key) {
+        if (uploaded.contains(key)) {
+            return true;
+        }
+        String shard = StorageKeys.shardPrefix(key);
+        if (shard == null) {
+            return head.test(key);
+        }
+        CompletableFuture<Set<String>> listing = listedShards.get(shard);
+        if (listing == null && headCounts.computeIfAbsent(shard, s -> new AtomicInteger()).incrementAndGet() > LIST_THRESHOLD) {
+            listing = listShard(shard);
+        }
+        if (listing != null) {
+            Set<String> keys = listing.exceptionally(e -> null).join();
+            if (keys != null) {
+                return keys.contains(key);
+            }
+        }
+        return head.test(key);
+    }
+
+    public Set<String> existing(Collection<String> keys) {
+        Map<String, List<String>> byShard = new HashMap<>();
+        for (String key : keys) {
+            String shard = StorageKeys.shardPrefix(key);
+            byShard.computeIfAbsent(shard == null ? "" : shard, s -> new ArrayList<>()).add(key);
+        }
+        Set<String> result = new HashSet<>();
+        byShard.forEach((shard, shardKeys) -> {
+            if (!shard.isEmpty() && shardKeys.size() >= LIST_THRESHOLD) {
+                listShard(shard);
+            }
+            for (String key : shardKeys) {
+                if (exists(key)) {
+                    result.add(key);
+                }
+            }
+        });
+        return result;
+    }
+
+    public void markPresent(String key) {
+        uploaded.add(key);
+    }
+
+    public void markDeleted(String key) {
+        uploaded.remove(key);
+        String shard = StorageKeys.shardPrefix(key);
+        CompletableFuture<Set<String>> listing = shard == null ? null : listedShards.get(shard);
+        if (listing != null && listing.isDone() && !listing.isCompletedExceptionally()) {
+            listing.join().remove(key);
+        }
+    }
+
+    // the next lookups list and HEAD again; not for use while lookups are running
+    public void clear() {
+        listedShards.clear();
+        headCounts.clear();
+        uploaded.clear();
+    }
+
+    private CompletableFuture<Set<String>> listShard(String shard) {
+        CompletableFuture<Set<String>> created = new CompletableFuture<>();
+        CompletableFuture<Set<String>> existing = listedShards.putIfAbsent(shard, created);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            Set<String> keys = ConcurrentHashMap.newKeySet();
+            for (StoredObject object : lister.apply(shard)) {
+                keys.add(object.key());
+            }
+            log.debug("Listed {} objects under {} in {} ms", keys.size(), shard, System.currentTimeMillis() - start);
+            created.complete(keys);
+        } catch (RuntimeException e) {
+            log.warn("Failed to list {}, falling back to per-file checks", shard, e);
+            created.completeExceptionally(e);
+        }
+        return created;
+    }
+}
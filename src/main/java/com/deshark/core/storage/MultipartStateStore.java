@@ -0,0 +1,91 @@
+package com.deshark.core.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Persists the progress of multipart uploads so an interrupted upload can continue with the
+ * parts that are still missing. One small JSON file per object key.
+ */
+public class MultipartStateStore {
+    private static final Logger log = LoggerFactory.getLogger(MultipartStateStore.class);
+
+    private final Path directory;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public record MultipartState(
+            String key,
+            String uploadId,
+            String source,
+            long size,
+            long mtime,
+            long partSize,
+            Map<Integer, String> parts
+    ) {
+        public MultipartState {
+            parts = new TreeMap<>(parts == null ? Map.of() : parts);
+        }
+
+        public boolean matches(String source, long size, long mtime, long partSize) {
+            return this.source.equals(source) && this.size == size && this.mtime == mtime && this.partSize == partSize;
+        }
+    }
+
+    public MultipartStateStore(Path directory) {
+        this.directory = directory;
+    }
+
+    public MultipartState load(String key) {
+        Path file = stateFile(key);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            return mapper.readValue(file.toFile(), MultipartState.class);
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable multipart state {}", file, e);
+            return null;
+        }
+    }
+
+    public synchronized void save(MultipartState state) {
+        Path file = stateFile(state.key());
+        try {
+            Files.createDirectories(directory);
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            mapper.writeValue(temp.toFile(), state);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Failed to save multipart state for {}", state.key(), e);
+        }
+    }
+
+    public void delete(String key) {
+        try {
+            Files.deleteIfExists(stateFile(key));
+        } catch (IOException e) {
+            log.warn("Failed to delete multipart state for {}", key, e);
+        }
+    }
+
+    private Path stateFile(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return directory.resolve(HexFormat.of().formatHex(digest, 0, 16) + ".json");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-256 algorithm not available", e);
+        }
+    }
+}
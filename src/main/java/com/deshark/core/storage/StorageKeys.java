@@ -0,0 +1,58 @@
+package com.deshark.core.storage;
+
+import com.deshark.core.codec.Codec;
+import com.deshark.core.codec.Codecs;
+
+import java.util.Locale;
+import java.util.Set;
+
+public class StorageKeys {
+    // what was deflated before codecs existed; the list in FileUtil has grown since
+    private static final Set<String> BARE_DEFLATE_EXTENSIONS = Set.of(
+            ".json", ".txt", ".xml", ".toml", ".js", ".cfg", ".properties");
+
+    private StorageKeys() {}
+
+    // content-addressed layout: h/hh/hhhh/<rest>, sharded by the leading hash characters
+    public static String contentKey(String fileHash) {
+        if (fileHash == null || fileHash.length() < 8) {
+            throw new IllegalArgumentException("Invalid file hash");
+        }
+        return fileHash.charAt(0) + "/" +
+                fileHash.substring(1, 3) + "/" +
+                fileHash.substring(3, 7) + "/" +
+                fileHash.substring(8);
+    }
+
+    // the key with the codec's name as a suffix, bare for objects stored as is
+    public static String contentKey(String fileHash, Codec codec) {
+        String key = contentKey(fileHash);
+        return Codecs.isIdentity(codec) ? key : key + "." + codec.name();
+    }
+
+    // key of the object of a file at path stored with codec. The form the layout before codecs
+    // gave such a file (its text formats deflated, anything else as is) keeps the bare key, so
+    // those objects are still found; any other encoding gets the suffix, so two forms of the
+    // same content never share a key
+    public static String contentKey(String fileHash, Codec codec, String path) {
+        return isBareForm(codec, path) ? contentKey(fileHash) : contentKey(fileHash, codec);
+    }
+
+    private static boolean isBareForm(Codec codec, String path) {
+        if (Codecs.isIdentity(codec)) {
+            return true;
+        }
+        String name = path.substring(path.lastIndexOf('/') + 1).toLowerCase(Locale.ROOT);
+        int dot = name.lastIndexOf('.');
+        return Codecs.DEFLATE_NAME.equals(codec.name()) && dot >= 0
+                && BARE_DEFLATE_EXTENSIONS.contains(name.substring(dot));
+    }
+
+    // top-level shard ("a/") of a content key, or null for keys outside the content layout
+    public static String shardPrefix(String key) {
+        if (key.length() < 3 || key.charAt(1) != '/' || Character.digit(key.charAt(0), 16) < 0) {
+            return null;
+        }
+        return key.substring(0, 2);
+    }
+}
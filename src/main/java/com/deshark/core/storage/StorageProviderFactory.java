@@ -1,18 +1,56 @@
 package com.deshark.core.storage;
 
+import com.deshark.core.schemas.StorageConfig;
+import com.deshark.core.schemas.UploadConfig;
+import com.deshark.core.storage.impl.InMemoryStorageProvider;
+import com.deshark.core.storage.impl.LocalFileSystemProvider;
 import com.deshark.core.storage.impl.TencentCOSProvider;
 
+import java.nio.file.Path;
+import java.util.Locale;
+
 public class StorageProviderFactory {
 
     public enum StorageType {
         TENCENT_COS,
-        ALIYUN_OSS
+        ALIYUN_OSS,
+        // a directory with the bucket's key layout, for offline runs
+        LOCAL,
+        // objects kept in memory with simulated network conditions, for load tests
+        MEMORY;
+
+        public static StorageType fromName(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("不支持的存储类型: " + name, e);
+            }
+        }
+    }
+
+    public static CloudStorageProvider createProvider(StorageConfig storage, UploadConfig upload, Path workDir) {
+        CloudStorageProvider provider = createProvider(StorageType.fromName(storage.type()), storage, upload, workDir);
+        if (!upload.adaptiveConcurrency() && upload.maxBytesPerSecond() == 0) {
+            return provider;
+        }
+        AdaptiveConcurrencyLimiter limiter = upload.adaptiveConcurrency()
+                ? new AdaptiveConcurrencyLimiter(upload.minConnections(), upload.maxConnections()) : null;
+        ByteRateLimiter rateLimiter = upload.maxBytesPerSecond() > 0 ? new ByteRateLimiter(upload.maxBytesPerSecond()) : null;
+        return new ThrottledStorageProvider(provider, limiter, rateLimiter);
     }
 
-    public static CloudStorageProvider createProvider(StorageType type, String... params) {
+    public static CloudStorageProvider createProvider(StorageType type, StorageConfig storage,
+                                                      UploadConfig upload, Path workDir) {
         switch (type) {
             case TENCENT_COS:
-                return new TencentCOSProvider(params[0], params[1], params[2], params[3]);
+                return new TencentCOSProvider(storage.secretId(), storage.secretKey(), storage.region(),
+                        storage.bucketName(), upload, workDir);
+            case LOCAL:
+                String localDir = storage.localDir();
+                return new LocalFileSystemProvider(localDir == null || localDir.isEmpty()
+                        ? workDir.resolve("local-storage") : Path.of(localDir));
+            case MEMORY:
+                return new InMemoryStorageProvider(storage.simulation());
             default:
                 throw new IllegalArgumentException("不支持的存储类型: " + type);
         }
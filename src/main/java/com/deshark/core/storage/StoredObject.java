@@ -0,0 +1,10 @@
+package com.deshark.core.storage;
+
+// crc64 is the CRC-64/ECMA of the stored bytes as an unsigned decimal, null where the store doesn't report it
+public record StoredObject(
+        String key,
+        long size,
+        String etag,
+        long lastModified,
+        String crc64
+) {}
@@ -0,0 +1,126 @@
+package com.deshark.core.storage;
+
+import com.deshark.core.codec.Codec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Puts uploads to another provider under an adaptive concurrency limit and an optional byte
+ * rate cap. Chunk and multipart uploads go through here as well, so the limit covers every
+ * write of a run; reads, listings and existence checks pass straight through.
+ */
+public class ThrottledStorageProvider implements CloudStorageProvider {
+    private static final Logger log = LoggerFactory.getLogger(ThrottledStorageProvider.class);
+
+    private final CloudStorageProvider delegate;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final ByteRateLimiter rateLimiter;
+
+    private interface Upload {
+        void run() throws IOException;
+    }
+
+    // either limiter may be null
+    public ThrottledStorageProvider(CloudStorageProvider delegate, AdaptiveConcurrencyLimiter limiter,
+                                    ByteRateLimiter rateLimiter) {
+        this.delegate = delegate;
+        this.limiter = limiter;
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    public void upload(Path file, String key, Codec codec) throws IOException {
+        send(Files.size(file), () -> delegate.upload(file, key, codec));
+    }
+
+    @Override
+    public void upload(InputStream is, long contentLength, String key, Codec codec) throws IOException {
+        send(contentLength, () -> delegate.upload(is, contentLength, key, codec));
+    }
+
+    @Override
+    public boolean fileExists(String key) {
+        return delegate.fileExists(key);
+    }
+
+    @Override
+    public Set<String> existingKeys(Collection<String> keys) {
+        return delegate.existingKeys(keys);
+    }
+
+    @Override
+    public List<StoredObject> list(String prefix) {
+        return delegate.list(prefix);
+    }
+
+    @Override
+    public StoredObject stat(String key) {
+        return delegate.stat(key);
+    }
+
+    @Override
+    public Set<String> delete(Collection<String> keys) {
+        return delegate.delete(keys);
+    }
+
+    @Override
+    public InputStream getObjectStream(String key) {
+        return delegate.getObjectStream(key);
+    }
+
+    @Override
+    public void refresh() {
+        delegate.refresh();
+    }
+
+    @Override
+    public void shutdown() {
+        if (limiter != null) {
+            log.info("Upload concurrency ended at {} (peak {}, {} congestion signals)",
+                    limiter.limit(), limiter.peak(), limiter.congestionEvents());
+        }
+        delegate.shutdown();
+    }
+
+    private void send(long bytes, Upload upload) throws IOException {
+        long start;
+        try {
+            if (rateLimiter != null) {
+                rateLimiter.acquire(bytes);
+            }
+            start = limiter != null ? limiter.acquire() : 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to upload");
+        }
+        AdaptiveConcurrencyLimiter.Outcome outcome = AdaptiveConcurrencyLimiter.Outcome.FAILURE;
+        try {
+            upload.run();
+            outcome = AdaptiveConcurrencyLimiter.Outcome.SUCCESS;
+        } catch (StorageException e) {
+            if (isCongestion(e)) {
+                outcome = AdaptiveConcurrencyLimiter.Outcome.CONGESTION;
+            }
+            throw e;
+        } finally {
+            if (limiter != null) {
+                limiter.release(start, bytes, outcome);
+            }
+        }
+    }
+
+    // throttling responses, and requests that got no response at all
+    private static boolean isCongestion(StorageException e) {
+        int status = e.getStatusCode();
+        return e.isRetryable() && (status == 429 || status == 503 || status == -1);
+    }
+}
@@ -0,0 +1,183 @@
+package com.deshark.core.storage.impl;
+
+import com.deshark.core.schemas.UploadConfig;
+import com.deshark.core.storage.MultipartStateStore;
+import com.deshark.core.storage.MultipartStateStore.MultipartState;
+import com.qcloud.cos.COSClient;
+import com.qcloud.cos.exception.CosClientException;
+import com.qcloud.cos.exception.CosServiceException;
+import com.qcloud.cos.model.AbortMultipartUploadRequest;
+import com.qcloud.cos.model.CompleteMultipartUploadRequest;
+import com.qcloud.cos.model.InitiateMultipartUploadRequest;
+import com.qcloud.cos.model.ListPartsRequest;
+import com.qcloud.cos.model.ObjectMetadata;
+import com.qcloud.cos.model.PartETag;
+import com.qcloud.cos.model.PartListing;
+import com.qcloud.cos.model.PartSummary;
+import com.qcloud.cos.model.UploadPartRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Uploads large files as parallel multipart uploads. Completed parts are recorded in a
+ * {@link MultipartStateStore}, so a retry or a later run of the same file only sends the
+ * parts the bucket doesn't have yet.
+ */
+class COSMultipartUploader {
+    private static final Logger log = LoggerFactory.getLogger(COSMultipartUploader.class);
+    private static final long MIN_PART_SIZE = 1024 * 1024;
+    private static final int MAX_PARTS = 10000;
+
+    private final COSClient cosClient;
+    private final String bucketName;
+    private final UploadConfig config;
+    private final MultipartStateStore stateStore;
+    private final ExecutorService partExecutor;
+
+    COSMultipartUploader(COSClient cosClient, String bucketName, UploadConfig config, MultipartStateStore stateStore) {
+        this.cosClient = cosClient;
+        this.bucketName = bucketName;
+        this.config = config;
+        this.stateStore = stateStore;
+        this.partExecutor = Executors.newFixedThreadPool(config.partConcurrency(), r -> {
+            Thread thread = new Thread(r, "cos-part-upload");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    boolean shouldUse(long size) {
+        return size >= config.multipartThreshold();
+    }
+
+    void upload(Path file, String key, ObjectMetadata metadata) throws IOException {
+        long size = Files.size(file);
+        long mtime = Files.getLastModifiedTime(file).toMillis();
+        String source = file.toAbsolutePath().toString();
+        long partSize = partSize(size);
+        int partCount = (int) ((size + partSize - 1) / partSize);
+
+        MultipartState state = resume(key, source, size, mtime, partSize);
+        if (state == null) {
+            InitiateMultipartUploadRequest request = new InitiateMultipartUploadRequest(bucketName, key);
+            request.setObjectMetadata(metadata);
+            String uploadId = cosClient.initiateMultipartUpload(request).getUploadId();
+            state = new MultipartState(key, uploadId, source, size, mtime, partSize, Map.of());
+            stateStore.save(state);
+        } else {
+            log.info("Resuming multipart upload of {} with {}/{} parts done", key, state.parts().size(), partCount);
+        }
+
+        MultipartState current = state;
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        for (int partNumber = 1; partNumber <= partCount; partNumber++) {
+            if (current.parts().containsKey(partNumber)) {
+                continue;
+            }
+            int number = partNumber;
+            long offset = (partNumber - 1) * partSize;
+            long length = Math.min(partSize, size - offset);
+            pending.add(CompletableFuture.runAsync(() -> uploadPart(file, current, number, offset, length), partExecutor));
+        }
+        try {
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            // finished parts stay recorded for the next attempt; a failed part is reported like any
+            // other request of the provider, with its status and whether it is worth retrying
+            if (e.getCause() instanceof CosClientException cause) {
+                throw TencentCOSProvider.translate("Multipart upload failed for " + key, cause);
+            }
+            throw new IOException("Multipart upload failed for " + key, e.getCause());
+        }
+
+        List<PartETag> partETags = new ArrayList<>();
+        synchronized (current) {
+            current.parts().forEach((number, etag) -> partETags.add(new PartETag(number, etag)));
+        }
+        cosClient.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, key, current.uploadId(), partETags));
+        stateStore.delete(key);
+        log.debug("Multipart upload of {} completed with {} parts", key, partCount);
+    }
+
+    private void uploadPart(Path file, MultipartState state, int partNumber, long offset, long length) {
+        UploadPartRequest request = new UploadPartRequest();
+        request.setBucketName(bucketName);
+        request.setKey(state.key());
+        request.setUploadId(state.uploadId());
+        request.setPartNumber(partNumber);
+        request.setFile(file.toFile());
+        request.setFileOffset(offset);
+        request.setPartSize(length);
+        String etag = cosClient.uploadPart(request).getPartETag().getETag();
+        synchronized (state) {
+            state.parts().put(partNumber, etag);
+            stateStore.save(state);
+        }
+    }
+
+    // loads saved progress for the same source file, reconciled with the parts the bucket actually has
+    private MultipartState resume(String key, String source, long size, long mtime, long partSize) {
+        MultipartState saved = stateStore.load(key);
+        if (saved == null) {
+            return null;
+        }
+        if (!saved.matches(source, size, mtime, partSize)) {
+            abortQuietly(saved);
+            return null;
+        }
+        try {
+            Map<Integer, String> uploaded = new HashMap<>();
+            ListPartsRequest request = new ListPartsRequest(bucketName, key, saved.uploadId());
+            PartListing listing;
+            do {
+                listing = cosClient.listParts(request);
+                for (PartSummary part : listing.getParts()) {
+                    long expected = Math.min(partSize, size - (part.getPartNumber() - 1) * partSize);
+                    if (part.getSize() == expected) {
+                        uploaded.put(part.getPartNumber(), part.getETag());
+                    }
+                }
+                request.setPartNumberMarker(listing.getNextPartNumberMarker());
+            } while (listing.isTruncated());
+            return new MultipartState(key, saved.uploadId(), source, size, mtime, partSize, uploaded);
+        } catch (CosServiceException e) {
+            if (e.getStatusCode() == 404) {
+                log.debug("Multipart upload {} for {} no longer exists, starting over", saved.uploadId(), key);
+                stateStore.delete(key);
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private void abortQuietly(MultipartState state) {
+        try {
+            cosClient.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, state.key(), state.uploadId()));
+        } catch (CosServiceException e) {
+            log.debug("Failed to abort stale multipart upload {}", state.uploadId(), e);
+        }
+        stateStore.delete(state.key());
+    }
+
+    private long partSize(long size) {
+        long partSize = Math.max(config.partSize(), MIN_PART_SIZE);
+        long minForCount = (size + MAX_PARTS - 1) / MAX_PARTS;
+        return Math.max(partSize, minForCount);
+    }
+
+    void shutdown() {
+        partExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,199 @@
+package com.deshark.core.storage.impl;
+
+import com.deshark.core.codec.Codec;
+import com.deshark.core.schemas.SimulationConfig;
+import com.deshark.core.storage.CloudStorageProvider;
+import com.deshark.core.storage.StorageException;
+import com.deshark.core.storage.StoredObject;
+import com.deshark.core.utils.Crc64;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps objects in memory so the publish flow can run and be benchmarked without a bucket.
+ * Objects are decoded on read according to the codec they were stored with.
+ *
+ * <p>A {@link SimulationConfig} makes it behave like a remote bucket: every request waits out
+ * a latency, transfers share a bandwidth cap, and writes fail at a configured rate or once too
+ * many are in flight. Failures are raised before a write stores anything, as a rejected
+ * request would be.
+ */
+public class InMemoryStorageProvider implements CloudStorageProvider {
+    private final ConcurrentNavigableMap<String, Blob> objects = new ConcurrentSkipListMap<>();
+    private final SimulationConfig simulation;
+    private final AtomicInteger writesInFlight = new AtomicInteger();
+    // nanoTime at which the simulated link is free again
+    private long linkFreeAt = System.nanoTime();
+
+    private record Blob(byte[] data, Codec codec, String etag, String crc64, long lastModified) {}
+
+    public InMemoryStorageProvider() {
+        this(SimulationConfig.empty());
+    }
+
+    public InMemoryStorageProvider(SimulationConfig simulation) {
+        this.simulation = simulation;
+    }
+
+    @Override
+    public void upload(Path file, String key, Codec codec) throws IOException {
+        Objects.requireNonNull(file, "File cannot be null");
+        byte[] data = Files.readAllBytes(file);
+        write(key, data, codec);
+    }
+
+    @Override
+    public void upload(InputStream is, long contentLength, String key, Codec codec) throws IOException {
+        Objects.requireNonNull(is, "Input stream cannot be null");
+        byte[] data = is.readAllBytes();
+        if (data.length != contentLength) {
+            throw new IOException("Expected " + contentLength + " bytes for " + key + " but got " + data.length);
+        }
+        write(key, data, codec);
+    }
+
+    @Override
+    public boolean fileExists(String key) {
+        Objects.requireNonNull(key, "key cannot be null");
+        request(0);
+        return objects.containsKey(key);
+    }
+
+    @Override
+    public List<StoredObject> list(String prefix) {
+        Objects.requireNonNull(prefix, "Prefix cannot be null");
+        request(0);
+        List<StoredObject> result = new ArrayList<>();
+        for (var entry : objects.tailMap(prefix).entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) {
+                break;
+            }
+            result.add(toStoredObject(entry.getKey(), entry.getValue()));
+        }
+        return result;
+    }
+
+    @Override
+    public StoredObject stat(String key) {
+        Objects.requireNonNull(key, "key cannot be null");
+        request(0);
+        Blob blob = objects.get(key);
+        return blob != null ? toStoredObject(key, blob) : null;
+    }
+
+    @Override
+    public Set<String> delete(Collection<String> keys) {
+        request(0);
+        Set<String> deleted = new HashSet<>();
+        for (String key : keys) {
+            objects.remove(key);
+            deleted.add(key);
+        }
+        return deleted;
+    }
+
+    @Override
+    public InputStream getObjectStream(String key) {
+        Objects.requireNonNull(key, "Key cannot be null");
+        Blob blob = objects.get(key);
+        request(blob != null ? blob.data().length : 0);
+        if (blob == null) {
+            return null;
+        }
+        return blob.codec().decode(new ByteArrayInputStream(blob.data()));
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    public int objectCount() {
+        return objects.size();
+    }
+
+    public long totalBytes() {
+        return objects.values().stream().mapToLong(blob -> blob.data().length).sum();
+    }
+
+    private void write(String key, byte[] data, Codec codec) {
+        Objects.requireNonNull(key, "Key cannot be null");
+        int maxInFlight = simulation.maxConcurrentRequests();
+        try {
+            if (writesInFlight.incrementAndGet() > maxInFlight && maxInFlight > 0) {
+                throw new StorageException("SlowDown: simulated throttling of " + key, 503, true, null);
+            }
+            if (simulation.errorRate() > 0 && ThreadLocalRandom.current().nextDouble() < simulation.errorRate()) {
+                throw new StorageException("Simulated error uploading " + key, 500, true, null);
+            }
+            request(data.length);
+            put(key, data, codec);
+        } finally {
+            writesInFlight.decrementAndGet();
+        }
+    }
+
+    // waits as long as a request moving this many bytes would take
+    private void request(long bytes) {
+        long waitNanos = TimeUnit.MILLISECONDS.toNanos(simulation.latencyMillis());
+        if (simulation.latencyJitterMillis() > 0) {
+            waitNanos += TimeUnit.MILLISECONDS.toNanos(
+                    ThreadLocalRandom.current().nextLong(simulation.latencyJitterMillis() + 1));
+        }
+        if (bytes > 0 && simulation.bandwidthBytesPerSecond() > 0) {
+            long transferNanos = bytes * 1_000_000_000L / simulation.bandwidthBytesPerSecond();
+            synchronized (this) {
+                // transfers queue up on the link behind the ones already in flight
+                long now = System.nanoTime();
+                long queuedNanos = Math.max(linkFreeAt - now, 0);
+                linkFreeAt = now + queuedNanos + transferNanos;
+                waitNanos = Math.max(waitNanos, queuedNanos + transferNanos);
+            }
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new StorageException("Interrupted while simulating a request", -1, false, e);
+            }
+        }
+    }
+
+    private void put(String key, byte[] data, Codec codec) {
+        Objects.requireNonNull(key, "Key cannot be null");
+        Crc64 crc = new Crc64();
+        crc.update(data);
+        objects.put(key, new Blob(data, codec, md5(data), Crc64.format(crc.getValue()), System.currentTimeMillis()));
+    }
+
+    private static StoredObject toStoredObject(String key, Blob blob) {
+        return new StoredObject(key, blob.data().length, blob.etag(), blob.lastModified(), blob.crc64());
+    }
+
+    // simple uploads to COS report the MD5 of the stored bytes as their ETag
+    private static String md5(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
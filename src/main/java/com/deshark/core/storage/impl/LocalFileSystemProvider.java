@@ -0,0 +1,234 @@
+package com.deshark.core.storage.impl;
+
+import com.deshark.core.codec.Codec;
+import com.deshark.core.codec.Codecs;
+import com.deshark.core.storage.CloudStorageProvider;
+import com.deshark.core.storage.StoredObject;
+import com.deshark.core.utils.Crc64;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Stores objects as files under a directory, one file per key in the bucket's key layout, so
+ * the directory can be served as is by a static web server. The Content-Encoding, ETag and
+ * CRC64 of each object are kept in a sidecar file under {@code .meta/}; objects are written to a temp
+ * file first and moved into place, so readers never see a partial object.
+ */
+public class LocalFileSystemProvider implements CloudStorageProvider {
+    private static final Logger log = LoggerFactory.getLogger(LocalFileSystemProvider.class);
+    private static final String META_DIR = ".meta";
+    private static final String TEMP_SUFFIX = ".uploading";
+
+    private final Path root;
+    private final Path metaRoot;
+
+    private record Meta(Codec codec, String etag, String crc64) {}
+
+    public LocalFileSystemProvider(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+        this.metaRoot = this.root.resolve(META_DIR);
+    }
+
+    @Override
+    public void upload(Path file, String key, Codec codec) throws IOException {
+        Objects.requireNonNull(file, "File cannot be null");
+        try (InputStream is = Files.newInputStream(file)) {
+            store(is, Files.size(file), key, codec);
+        }
+    }
+
+    @Override
+    public void upload(InputStream is, long contentLength, String key, Codec codec) throws IOException {
+        Objects.requireNonNull(is, "Input stream cannot be null");
+        store(is, contentLength, key, codec);
+    }
+
+    @Override
+    public boolean fileExists(String key) {
+        Objects.requireNonNull(key, "key cannot be null");
+        return Files.isRegularFile(resolve(key));
+    }
+
+    @Override
+    public List<StoredObject> list(String prefix) {
+        Objects.requireNonNull(prefix, "Prefix cannot be null");
+        int slash = prefix.lastIndexOf('/');
+        Path start = slash < 0 ? root : resolve(prefix.substring(0, slash));
+        if (!Files.isDirectory(start)) {
+            return List.of();
+        }
+        List<StoredObject> objects = new ArrayList<>();
+        try {
+            Files.walkFileTree(start, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    return dir.equals(metaRoot) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    String key = keyOf(file);
+                    if (attrs.isRegularFile() && key.startsWith(prefix) && !key.endsWith(TEMP_SUFFIX)) {
+                        objects.add(toStoredObject(key, attrs));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list objects: " + prefix, e);
+        }
+        // buckets list in key order
+        objects.sort(Comparator.comparing(StoredObject::key));
+        return objects;
+    }
+
+    @Override
+    public StoredObject stat(String key) {
+        Objects.requireNonNull(key, "key cannot be null");
+        try {
+            return toStoredObject(key, Files.readAttributes(resolve(key), BasicFileAttributes.class));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to check object: " + key, e);
+        }
+    }
+
+    @Override
+    public Set<String> delete(Collection<String> keys) {
+        Set<String> deleted = new HashSet<>();
+        for (String key : keys) {
+            try {
+                Files.deleteIfExists(resolve(key));
+                Files.deleteIfExists(metaPath(key));
+                deleted.add(key);
+            } catch (IOException e) {
+                log.warn("Failed to delete {}", key, e);
+            }
+        }
+        return deleted;
+    }
+
+    @Override
+    public InputStream getObjectStream(String key) {
+        Objects.requireNonNull(key, "Key cannot be null");
+        try {
+            Meta meta = readMeta(key);
+            return meta.codec().decode(Files.newInputStream(resolve(key)));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read object: " + key, e);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    public Path root() {
+        return root;
+    }
+
+    private void store(InputStream is, long contentLength, String key, Codec codec) throws IOException {
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(target.getFileName() + "." + Thread.currentThread().threadId() + TEMP_SUFFIX);
+        try {
+            MessageDigest md5 = md5();
+            Crc64 crc = new Crc64();
+            long written;
+            try (OutputStream os = new CheckedOutputStream(
+                    new DigestOutputStream(Files.newOutputStream(temp), md5), crc)) {
+                written = is.transferTo(os);
+            }
+            if (written != contentLength) {
+                throw new IOException("Expected " + contentLength + " bytes for " + key + " but got " + written);
+            }
+            // the sidecar goes first so an object is never visible with the wrong encoding
+            writeMeta(key, codec, HexFormat.of().formatHex(md5.digest()), Crc64.format(crc.getValue()));
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void writeMeta(String key, Codec codec, String etag, String crc64) throws IOException {
+        Path meta = metaPath(key);
+        Files.createDirectories(meta.getParent());
+        String encoding = Codecs.contentEncoding(codec);
+        Path temp = meta.resolveSibling(meta.getFileName() + "." + Thread.currentThread().threadId() + TEMP_SUFFIX);
+        Files.writeString(temp, (encoding != null ? encoding : Codecs.IDENTITY_NAME) + "\n" + etag + "\n" + crc64 + "\n");
+        Files.move(temp, meta, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // objects copied into the directory by hand have no sidecar and are taken as stored as is
+    private Meta readMeta(String key) throws IOException {
+        Path meta = metaPath(key);
+        if (Files.exists(meta)) {
+            List<String> lines = Files.readAllLines(meta, StandardCharsets.UTF_8);
+            // sidecars written before checksums have no CRC line
+            return new Meta(Codecs.forName(lines.get(0)), lines.get(1), lines.size() > 2 ? lines.get(2) : null);
+        }
+        MessageDigest md5 = md5();
+        Crc64 crc = new Crc64();
+        try (InputStream is = Files.newInputStream(resolve(key))) {
+            is.transferTo(new CheckedOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), md5), crc));
+        }
+        return new Meta(Codecs.IDENTITY, HexFormat.of().formatHex(md5.digest()), Crc64.format(crc.getValue()));
+    }
+
+    private StoredObject toStoredObject(String key, BasicFileAttributes attrs) throws IOException {
+        Meta meta = readMeta(key);
+        return new StoredObject(key, attrs.size(), meta.etag(), attrs.lastModifiedTime().toMillis(), meta.crc64());
+    }
+
+    private Path resolve(String key) {
+        Path path = root.resolve(key).normalize();
+        if (!path.startsWith(root) || path.startsWith(metaRoot)) {
+            throw new IllegalArgumentException("Key outside of the storage directory: " + key);
+        }
+        return path;
+    }
+
+    private Path metaPath(String key) {
+        return metaRoot.resolve(root.relativize(resolve(key)));
+    }
+
+    private String keyOf(Path file) {
+        return root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
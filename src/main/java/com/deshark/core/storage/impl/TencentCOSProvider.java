@@ -1,32 +1,55 @@
 package com.deshark.core.storage.impl;
 
+import com.deshark.core.codec.Codec;
+import com.deshark.core.codec.Codecs;
+import com.deshark.core.schemas.UploadConfig;
 import com.deshark.core.storage.CloudStorageProvider;
+import com.deshark.core.storage.ExistenceCache;
+import com.deshark.core.storage.MultipartStateStore;
+import com.deshark.core.storage.StorageException;
+import com.deshark.core.storage.StoredObject;
 import com.qcloud.cos.COSClient;
 import com.qcloud.cos.ClientConfig;
 import com.qcloud.cos.auth.BasicCOSCredentials;
 import com.qcloud.cos.auth.COSCredentials;
+import com.qcloud.cos.exception.CosClientException;
 import com.qcloud.cos.exception.CosServiceException;
+import com.qcloud.cos.exception.MultiObjectDeleteException;
 import com.qcloud.cos.model.COSObject;
+import com.qcloud.cos.model.COSObjectSummary;
+import com.qcloud.cos.model.DeleteObjectsRequest;
+import com.qcloud.cos.model.DeleteObjectsResult;
 import com.qcloud.cos.model.GetObjectRequest;
+import com.qcloud.cos.model.ListObjectsRequest;
+import com.qcloud.cos.model.ObjectListing;
 import com.qcloud.cos.model.ObjectMetadata;
 import com.qcloud.cos.model.PutObjectRequest;
 import com.qcloud.cos.region.Region;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
-import java.util.zip.InflaterInputStream;
+import java.util.Set;
 
-public class TencentCOSProvider implements CloudStorageProvider {
-    private static final String DEFLATE_ENCODING = "deflate";
+public final class TencentCOSProvider implements CloudStorageProvider {
+    private static final Logger log = LoggerFactory.getLogger(TencentCOSProvider.class);
+    private static final int LIST_PAGE_SIZE = 1000;
     private final String bucketName;
     private final COSClient cosClient;
+    private final COSMultipartUploader multipartUploader;
+    private final ExistenceCache existenceCache = new ExistenceCache(this::list, this::headObject);
 
     public TencentCOSProvider(String secretId, String secretKey, String region,
-                              String bucketName) {
+                              String bucketName, UploadConfig uploadConfig, Path stateDir) {
         Objects.requireNonNull(secretId, "Secret ID cannot be null");
         Objects.requireNonNull(secretKey, "Secret Key cannot be null");
         Objects.requireNonNull(region, "Region cannot be null");
@@ -34,32 +57,46 @@ public class TencentCOSProvider implements CloudStorageProvider {
 
         COSCredentials cred = new BasicCOSCredentials(secretId, secretKey);
         ClientConfig clientConfig = new ClientConfig(new Region(region));
-        clientConfig.setMaxConnectionsCount(50);
+        clientConfig.setMaxConnectionsCount(uploadConfig.maxConnections());
         clientConfig.setConnectionTimeout(5000);
         clientConfig.setSocketTimeout(10000);
         cosClient = new COSClient(cred, clientConfig);
+        multipartUploader = new COSMultipartUploader(cosClient, bucketName, uploadConfig,
+                new MultipartStateStore(stateDir.resolve("multipart")));
     }
 
     @Override
-    public void upload(Path file, String key, boolean compressed) throws IOException {
+    public void upload(Path file, String key, Codec codec) throws IOException {
         Objects.requireNonNull(file, "File cannot be null");
         Objects.requireNonNull(key, "Key cannot be null");
-        PutObjectRequest putRequest = new PutObjectRequest(bucketName, key, file.toFile());
+        long size = Files.size(file);
         ObjectMetadata metadata = new ObjectMetadata();
-        metadata.setContentLength(Files.size(file));
-        if (compressed) {
-            metadata.setContentEncoding(DEFLATE_ENCODING);
+        if (!Codecs.isIdentity(codec)) {
+            metadata.setContentEncoding(Codecs.contentEncoding(codec));
+        }
+        if (multipartUploader.shouldUse(size)) {
+            try {
+                multipartUploader.upload(file, key, metadata);
+            } catch (CosClientException e) {
+                throw translate("Failed to upload file: " + key, e);
+            }
+            existenceCache.markPresent(key);
+            return;
         }
+        metadata.setContentLength(size);
+        PutObjectRequest putRequest = new PutObjectRequest(bucketName, key, file.toFile());
         putRequest.setMetadata(metadata);
         upload(putRequest);
     }
 
     @Override
-    public void upload(InputStream is, String key, boolean compressed) throws IOException {
+    public void upload(InputStream is, long contentLength, String key, Codec codec) throws IOException {
+        Objects.requireNonNull(is, "Input stream cannot be null");
+        Objects.requireNonNull(key, "Key cannot be null");
         ObjectMetadata metadata = new ObjectMetadata();
-        metadata.setContentLength(is.available());
-        if (compressed) {
-            metadata.setContentEncoding(DEFLATE_ENCODING);
+        metadata.setContentLength(contentLength);
+        if (!Codecs.isIdentity(codec)) {
+            metadata.setContentEncoding(Codecs.contentEncoding(codec));
         }
         PutObjectRequest putRequest = new PutObjectRequest(bucketName, key, is, metadata);
         upload(putRequest);
@@ -67,16 +104,103 @@ public class TencentCOSProvider implements CloudStorageProvider {
 
     @Override
     public boolean fileExists(String key) {
+        Objects.requireNonNull(key, "key cannot be null");
+        return existenceCache.exists(key);
+    }
+
+    @Override
+    public Set<String> existingKeys(Collection<String> keys) {
+        return existenceCache.existing(keys);
+    }
+
+    @Override
+    public void refresh() {
+        existenceCache.clear();
+    }
+
+    @Override
+    public List<StoredObject> list(String prefix) {
+        Objects.requireNonNull(prefix, "Prefix cannot be null");
+        List<StoredObject> objects = new ArrayList<>();
+        ListObjectsRequest request = new ListObjectsRequest();
+        request.setBucketName(bucketName);
+        request.setPrefix(prefix);
+        request.setMaxKeys(LIST_PAGE_SIZE);
+        try {
+            ObjectListing listing;
+            do {
+                listing = cosClient.listObjects(request);
+                for (COSObjectSummary summary : listing.getObjectSummaries()) {
+                    objects.add(new StoredObject(summary.getKey(), summary.getSize(), summary.getETag(),
+                            summary.getLastModified().getTime(), null));
+                }
+                request.setMarker(listing.getNextMarker());
+            } while (listing.isTruncated());
+        } catch (CosClientException e) {
+            throw translate("Failed to list objects: " + prefix, e);
+        }
+        return objects;
+    }
+
+    @Override
+    public Set<String> delete(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return Set.of();
+        }
+        DeleteObjectsRequest request = new DeleteObjectsRequest(bucketName);
+        List<DeleteObjectsRequest.KeyVersion> keyVersions = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            keyVersions.add(new DeleteObjectsRequest.KeyVersion(key));
+        }
+        request.setKeys(keyVersions);
+        request.setQuiet(false);
+        List<DeleteObjectsResult.DeletedObject> deletedObjects;
+        try {
+            deletedObjects = cosClient.deleteObjects(request).getDeletedObjects();
+        } catch (MultiObjectDeleteException e) {
+            for (MultiObjectDeleteException.DeleteError error : e.getErrors()) {
+                log.warn("Failed to delete {}: {} {}", error.getKey(), error.getCode(), error.getMessage());
+            }
+            deletedObjects = e.getDeletedObjects();
+        } catch (CosClientException e) {
+            throw translate("Failed to delete " + keys.size() + " objects", e);
+        }
+        Set<String> deleted = new HashSet<>();
+        for (DeleteObjectsResult.DeletedObject object : deletedObjects) {
+            deleted.add(object.getKey());
+            existenceCache.markDeleted(object.getKey());
+        }
+        return deleted;
+    }
+
+    @Override
+    public StoredObject stat(String key) {
         Objects.requireNonNull(key, "key cannot be null");
+        try {
+            ObjectMetadata metadata = cosClient.getObjectMetadata(bucketName, key);
+            return new StoredObject(key, metadata.getContentLength(), metadata.getETag(),
+                    metadata.getLastModified().getTime(), metadata.getCrc64Ecma());
+        } catch (CosServiceException e) {
+            if (e.getStatusCode() == 404) {
+                return null;
+            }
+            throw translate("Failed to check object: " + key, e);
+        } catch (CosClientException e) {
+            throw translate("Failed to check object: " + key, e);
+        }
+    }
+
+    private boolean headObject(String key) {
         try {
             cosClient.getObjectMetadata(bucketName, key);
             return true;
         } catch (CosServiceException e) {
             if (e.getStatusCode() == 404) {
                 return false;
-            } else {
-                throw e;
             }
+            throw translate("Failed to check object: " + key, e);
+        } catch (CosClientException e) {
+            throw translate("Failed to check object: " + key, e);
         }
     }
 
@@ -88,14 +212,16 @@ public class TencentCOSProvider implements CloudStorageProvider {
 
     @Override
     public void shutdown() {
+        multipartUploader.shutdown();
         cosClient.shutdown();
     }
 
     public void upload(PutObjectRequest putRequest) {
         try {
             cosClient.putObject(putRequest);
-        } catch (CosServiceException e) {
-            throw new RuntimeException("Failed to upload file: " + putRequest.getKey(), e);
+            existenceCache.markPresent(putRequest.getKey());
+        } catch (CosClientException e) {
+            throw translate("Failed to upload file: " + putRequest.getKey(), e);
         }
     }
 
@@ -103,9 +229,9 @@ public class TencentCOSProvider implements CloudStorageProvider {
         try {
             COSObject object = cosClient.getObject(getRequest);
             InputStream is = object.getObjectContent();
-            boolean isDeflated = DEFLATE_ENCODING.equals(object.getObjectMetadata().getContentEncoding());
+            Codec codec = Codecs.forName(object.getObjectMetadata().getContentEncoding());
 
-            return new FilterInputStream(isDeflated ? new InflaterInputStream(is) : is) {
+            return new FilterInputStream(codec.decode(is)) {
                 @Override
                 public void close() throws IOException {
                     try {
@@ -119,7 +245,21 @@ public class TencentCOSProvider implements CloudStorageProvider {
             if (e.getStatusCode() == 404) {
                 return null;
             }
-            throw new RuntimeException("Failed to get object: " + getRequest.getKey(), e);
+            throw translate("Failed to get object: " + getRequest.getKey(), e);
+        } catch (CosClientException e) {
+            throw translate("Failed to get object: " + getRequest.getKey(), e);
+        }
+    }
+
+    // throttling, server errors and network failures are worth retrying; other 4xx are not
+    public static StorageException translate(String message, CosClientException e) {
+        if (e instanceof CosServiceException serviceException) {
+            int status = serviceException.getStatusCode();
+            String errorCode = serviceException.getErrorCode();
+            boolean retryable = status >= 500 || status == 429 || status == 408
+                    || "SlowDown".equals(errorCode) || "RequestTimeout".equals(errorCode);
+            return new StorageException(message, status, retryable, e);
         }
+        return new StorageException(message, -1, true, e);
     }
 }
@@ -1,99 +1,375 @@
 package com.deshark.core.task;
 
+import com.deshark.core.codec.Codec;
+import com.deshark.core.codec.Codecs;
+import com.deshark.core.chunk.ChunkUploader;
+import com.deshark.core.chunk.Chunker;
+import com.deshark.core.index.HashIndex;
+import com.deshark.core.metrics.RunMetrics;
+import com.deshark.core.pack.PackBuilder;
+import com.deshark.core.schemas.ChunkingConfig;
+import com.deshark.core.schemas.FileChunk;
 import com.deshark.core.schemas.ModpackFile;
+import com.deshark.core.schemas.PlanEntry;
 import com.deshark.core.storage.CloudStorageProvider;
+import com.deshark.core.storage.StorageKeys;
+import com.deshark.core.utils.Crc64;
 import com.deshark.core.utils.FileUtil;
 import com.deshark.core.utils.HashUtil;
+import com.deshark.core.utils.SpillBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executor;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.zip.CheckedOutputStream;
 
+/**
+ * Publishes one file. The work is split into {@link #hash()} and {@link #compress()} (CPU
+ * and disk) and {@link #upload()} (network) so a scheduler can run them on separate pools.
+ */
 public class ModpackFileUploadTask {
     private static final Logger log = LoggerFactory.getLogger(ModpackFileUploadTask.class);
-    private final CloudStorageProvider storage;
+    private static final int IN_MEMORY_PAYLOAD_LIMIT = 1024 * 1024;
+    private final UploadContext context;
     private final Path file;
     private final String relativePath;
-    private final String downloadUrl;
     private final String dist;
-    private final int maxRetries;
-    private final AtomicInteger currentRetry = new AtomicInteger(0);
 
-    public ModpackFileUploadTask(CloudStorageProvider storage, Path file, String relativePath, String downloadUrl, String dist, int maxRetries) {
-        this.storage = storage;
+    private long size;
+    private long mtime;
+    private String indexKey;
+    private HashIndex.Entry cached;
+    private Codec codec;
+    private boolean chunked;
+    private boolean packed;
+    private List<FileChunk> chunks;
+    private String hash;
+    private SpillBuffer payload;
+    // of the bytes an upload would send, recorded once this run has stored them
+    private Crc64 checksum;
+    private long checksumSize;
+    private PlanEntry planned;
+    private ModpackFile completed;
+
+    public ModpackFileUploadTask(UploadContext context, Path file, String relativePath, String dist) {
+        this.context = context;
         this.file = file;
         this.relativePath = relativePath;
-        this.downloadUrl = downloadUrl;
         this.dist = dist;
-        this.maxRetries = maxRetries;
-    }
-
-    public CompletableFuture<ModpackFile> executeAsync(Executor executor) {
-        return CompletableFuture
-                .supplyAsync(this::executeSync, executor)
-                .handleAsync((result, throwable) -> {
-                    if (throwable != null) {
-                        if (currentRetry.incrementAndGet() <= maxRetries) {
-                            log.warn("Retry {} for file {}", currentRetry, relativePath);
-                            try {
-                                Thread.sleep(1000L * currentRetry.get());
-                            } catch (InterruptedException e) {
-                                throw new RuntimeException(e);
-                            }
-                            return executeAsync(executor).join();
-                        } else {
-                            log.error("Failed after {} retries for file {}", maxRetries, relativePath, throwable);
-                            throw new RuntimeException("Failed after " + maxRetries + " retries", throwable);
-                        }
-                    }
-                    return result;
-                });
+    }
+
+    // a task that carries out a saved plan entry instead of hashing the file again
+    public static ModpackFileUploadTask fromPlan(UploadContext context, PlanEntry entry) {
+        ModpackFileUploadTask task = new ModpackFileUploadTask(context, Path.of(entry.source()), entry.file(), entry.dist());
+        task.planned = entry;
+        return task;
+    }
+
+    // a task for a file an earlier run of the same release already stored
+    public static ModpackFileUploadTask fromJournal(UploadContext context, Path file, String dist, ModpackFile result) {
+        ModpackFileUploadTask task = new ModpackFileUploadTask(context, file, result.file(), dist);
+        task.completed = result;
+        return task;
     }
 
     public ModpackFile executeSync() {
-        Path fileToUpload = null;
-        boolean shouldCompress = false;
         try {
-            String hash = HashUtil.SHA256(file);
-            String key = generateStorageKey(hash);
-            String link = downloadUrl + "/" + key;
-            shouldCompress = FileUtil.shouldCompressFile(file);
-            if (storage.fileExists(key)) {
-                log.info("Skip upload because it already exists: {}", relativePath);
-            } else {
-                fileToUpload = file;
-                if (shouldCompress) {
-                    fileToUpload = FileUtil.compressFile(file);
-                }
-                storage.upload(fileToUpload, key, shouldCompress);
-                log.info("Upload completed: {}", relativePath);
-            }
-            return new ModpackFile(relativePath, hash, link, Files.size(file), dist, shouldCompress);
+            hash();
+            compress();
+            return upload();
         } catch (IOException e) {
             throw new RuntimeException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
         } finally {
-            try {
-                if (shouldCompress && fileToUpload != null && !fileToUpload.equals(file)) {
-                    Files.deleteIfExists(fileToUpload);
+            release();
+        }
+    }
+
+    public void hash() throws IOException {
+        if (completed != null) {
+            return;
+        }
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        size = attrs.size();
+        mtime = attrs.lastModifiedTime().toMillis();
+        indexKey = dist + "/" + relativePath;
+        if (planned != null) {
+            usePlan();
+            return;
+        }
+        cached = context.index().lookup(indexKey, size, mtime);
+        ChunkingConfig chunking = context.chunking();
+        chunked = chunking.enabled() && size >= chunking.minFileSize();
+        // a plan checks small files one by one; apply packs them
+        packed = context.plan() == null && PackBuilder.isPackable(context.packing(), size, chunked);
+        if (cached != null && (cached.chunks() != null) != chunked) {
+            // stored the other way last time, the file has to be read again either way
+            cached = null;
+        }
+
+        if (cached != null) {
+            hash = cached.hash();
+            // reuse the earlier decision rather than sniffing the file again
+            codec = cached.codec() != null
+                    ? context.compression().forName(cached.codec())
+                    : context.compression().choose(file, size);
+            // linked by this run's key layout, which an older entry's links may not follow
+            chunks = cached.chunks() == null ? null : cached.chunks().stream()
+                    .map(chunk -> new FileChunk(chunk.hash(), link(chunk.hash()), chunk.offset(), chunk.size()))
+                    .toList();
+            return;
+        }
+        codec = context.compression().choose(file, size);
+        RunMetrics metrics = context.metrics();
+        long start = System.nanoTime();
+        if (chunked) {
+            // chunk boundaries and chunk hashes come from the same scan as the file hash
+            Chunker chunker = new Chunker(chunking);
+            try (chunker) {
+                hash = HashUtil.SHA256(file, chunker);
+            }
+            chunks = new ArrayList<>();
+            for (Chunker.Chunk chunk : chunker.chunks()) {
+                chunks.add(new FileChunk(chunk.hash(), link(chunk.hash()), chunk.offset(), chunk.size()));
+            }
+        } else if (packed) {
+            hash = HashUtil.SHA256(file);
+        } else if (isEncoded()) {
+            // hash and encode in the same scan so an upload doesn't have to read the file again
+            payload = new SpillBuffer(IN_MEMORY_PAYLOAD_LIMIT);
+            checksum = new Crc64();
+            hash = FileUtil.hashAndCompress(file, new CheckedOutputStream(payload, checksum), codec);
+            checksumSize = payload.size();
+            metrics.addCompressed(size, payload.size());
+        } else {
+            // the checksum of the object verify compares with what the bucket reports
+            checksum = new Crc64();
+            hash = HashUtil.SHA256(file, new CheckedOutputStream(OutputStream.nullOutputStream(), checksum));
+            checksumSize = size;
+        }
+        metrics.record(RunMetrics.HASH, start);
+        metrics.addBytesRead(size);
+    }
+
+    private void usePlan() throws IOException {
+        if (size != planned.size() || mtime != planned.mtime()) {
+            throw new IOException("File changed since the plan was made: " + relativePath);
+        }
+        hash = planned.hash();
+        codec = context.compression().forName(planned.codec());
+        chunks = planned.chunks();
+        chunked = chunks != null;
+        packed = PackBuilder.isPackable(context.packing(), size, chunked);
+        if (planned.action() == PlanEntry.Action.REUSE) {
+            // the plan already found the object, so it is treated like an index hit
+            cached = new HashIndex.Entry(indexKey, size, mtime, hash, true, codec.name(), chunks,
+                    chunked ? null : contentKey(hash));
+        }
+    }
+
+    public void compress() throws IOException {
+        if (completed == null && isEncoded() && !chunked && !packed && payload == null && !isKnownUploaded()) {
+            long start = System.nanoTime();
+            payload = new SpillBuffer(IN_MEMORY_PAYLOAD_LIMIT);
+            checksum = new Crc64();
+            FileUtil.compress(file, new CheckedOutputStream(payload, checksum), codec);
+            checksumSize = payload.size();
+            context.metrics().record(RunMetrics.COMPRESS, start);
+            context.metrics().addCompressed(size, payload.size());
+        }
+    }
+
+    public ModpackFile upload() throws IOException, InterruptedException {
+        return upload(null);
+    }
+
+    // connections is the caller's shared connection limit, or null: chunks take a permit from
+    // it each, any other upload is made under the one permit the caller holds for the file
+    public ModpackFile upload(Semaphore connections) throws IOException, InterruptedException {
+        if (completed != null) {
+            context.metrics().addSkipped();
+            return completed;
+        }
+        if (context.plan() != null) {
+            return plan();
+        }
+        if (chunked) {
+            return uploadChunks(connections);
+        }
+        if (packed) {
+            return leaveToPack();
+        }
+        CloudStorageProvider storage = context.storage();
+        RunMetrics metrics = context.metrics();
+        String key = contentKey(hash);
+        String link = context.downloadUrl() + "/" + key;
+        if (isKnownUploaded()) {
+            log.debug("Skip upload because it is unchanged since last run: {}", relativePath);
+            metrics.addSkipped();
+        } else if (exists(key)) {
+            log.info("Skip upload because it already exists: {}", relativePath);
+            metrics.addSkipped();
+        } else {
+            long start = System.nanoTime();
+            if (isEncoded() && payload.isSpilled()) {
+                // a file lets the storage client stream it itself, multipart if it is large
+                storage.upload(payload.spillFile(), key, codec);
+            } else if (isEncoded()) {
+                try (InputStream is = payload.openInputStream()) {
+                    storage.upload(is, payload.size(), key, codec);
+                }
+            } else {
+                storage.upload(file, key, codec);
+            }
+            // only what this run stored: an object found in the bucket may hold other bytes under
+            // the same key, from another deflate level or a file that differs only in whitespace
+            if (checksum != null) {
+                context.checksums().put(key, checksumSize, checksum);
+            }
+            metrics.record(RunMetrics.UPLOAD, start);
+            metrics.addUploaded(isEncoded() ? payload.size() : size);
+            log.info("Upload completed: {}", relativePath);
+        }
+        context.index().put(new HashIndex.Entry(indexKey, size, mtime, hash, true, codec.name(), null, key));
+        return journal(new ModpackFile(relativePath, hash, link, size, dist, isEncoded(), codec.name(), null, null));
+    }
+
+    private ModpackFile uploadChunks(Semaphore connections) throws IOException, InterruptedException {
+        RunMetrics metrics = context.metrics();
+        if (isKnownUploaded()) {
+            log.debug("Skip upload because it is unchanged since last run: {}", relativePath);
+            metrics.addSkipped();
+        } else {
+            long start = System.nanoTime();
+            ChunkUploader.Result result = ChunkUploader.upload(context.storage(), file, relativePath, chunks, codec,
+                    context.chunking().concurrency(), connections, context.checksums());
+            metrics.record(RunMetrics.UPLOAD, start);
+            metrics.addChunks(result.chunks(), result.uploaded());
+            if (result.uploaded() == 0) {
+                metrics.addSkipped();
+            } else {
+                metrics.addUploaded(result.bytes());
+            }
+            log.info("Upload completed: {} ({} of {} chunks uploaded)", relativePath, result.uploaded(), result.chunks());
+        }
+        context.index().put(new HashIndex.Entry(indexKey, size, mtime, hash, true, codec.name(), chunks, null));
+        return journal(new ModpackFile(relativePath, hash, null, size, dist, isEncoded(), codec.name(), chunks, null));
+    }
+
+    // the bytes go into a pack once every file is hashed; the entry gets its pack reference then
+    private ModpackFile leaveToPack() {
+        if (cached == null) {
+            // keeps the hash for the next run; the object is the pack's, not one of the file's own
+            context.index().put(new HashIndex.Entry(indexKey, size, mtime, hash, false, codec.name(), null, null));
+        }
+        return new ModpackFile(relativePath, hash, null, size, dist, isEncoded(), codec.name(), null, null);
+    }
+
+    // records what upload() would do, checking the bucket but writing nothing to it
+    private ModpackFile plan() throws IOException {
+        PlanEntry.Action action = PlanEntry.Action.REUSE;
+        long uploadBytes = 0;
+        String link = null;
+        if (chunked) {
+            if (!isKnownUploaded()) {
+                Map<String, Long> missing = new HashMap<>();
+                for (FileChunk chunk : chunks) {
+                    missing.putIfAbsent(contentKey(chunk.hash()), chunk.size());
+                }
+                missing.keySet().removeAll(context.storage().existingKeys(missing.keySet()));
+                if (!missing.isEmpty()) {
+                    action = PlanEntry.Action.UPLOAD;
+                    uploadBytes = missing.values().stream().mapToLong(Long::longValue).sum();
                 }
-            } catch (IOException e) {
-                log.warn("Failed to delete temp file {}", relativePath, e);
             }
+        } else {
+            String key = contentKey(hash);
+            link = context.downloadUrl() + "/" + key;
+            if (!isKnownUploaded() && !exists(key)) {
+                action = PlanEntry.Action.UPLOAD;
+                uploadBytes = isEncoded() ? payload.size() : size;
+            }
+        }
+        context.plan().add(new PlanEntry(file.toAbsolutePath().toString(), relativePath, dist, size, mtime, hash,
+                codec.name(), chunks, action, uploadBytes));
+        if (cached == null) {
+            // keeps the hash for the next run without claiming the object is uploaded
+            context.index().put(new HashIndex.Entry(indexKey, size, mtime, hash, false, codec.name(), chunks, null));
+        }
+        return new ModpackFile(relativePath, hash, link, size, dist, isEncoded(), codec.name(), chunks, null);
+    }
+
+    // small files aren't journaled: they are cheap to redo and their pack is found by content
+    private ModpackFile journal(ModpackFile result) {
+        if (context.journal() != null) {
+            context.journal().record(indexKey, size, mtime, result);
+        }
+        return result;
+    }
+
+    public void release() {
+        try {
+            if (payload != null) {
+                payload.delete();
+                payload = null;
+            }
+        } catch (IOException e) {
+            log.warn("Failed to delete temp file {}", relativePath, e);
         }
     }
 
-    private static String generateStorageKey(String fileHash) {
-        if (fileHash == null || fileHash.length() < 8) {
-            throw new IllegalArgumentException("Invalid file hash");
+    // whether upload() takes its connections per chunk instead of under one permit for the file
+    public boolean uploadsChunks() {
+        return chunked && completed == null && context.plan() == null;
+    }
+
+    public String relativePath() {
+        return relativePath;
+    }
+
+    private boolean exists(String key) {
+        long start = System.nanoTime();
+        boolean exists = context.storage().fileExists(key);
+        context.metrics().record(RunMetrics.EXISTS, start);
+        return exists;
+    }
+
+    private boolean isEncoded() {
+        return !Codecs.isIdentity(codec);
+    }
+
+    // the index only vouches for the object stored under the key of the codec it was uploaded with
+    private boolean isKnownUploaded() {
+        return cached != null && cached.uploaded()
+                && codec.name().equals(Codecs.forName(cached.codec()).name())
+                && isSameKey();
+    }
+
+    // an entry without a key predates recorded keys; only objects stored as is kept theirs since
+    private boolean isSameKey() {
+        if (chunked) {
+            return chunks.equals(cached.chunks());
         }
-        return fileHash.charAt(0) + "/" +
-                fileHash.substring(1, 3) + "/" +
-                fileHash.substring(3, 7) + "/" +
-                fileHash.substring(8);
+        return cached.key() != null ? cached.key().equals(contentKey(hash)) : Codecs.isIdentity(codec);
+    }
+
+    private String contentKey(String hash) {
+        return StorageKeys.contentKey(hash, codec, relativePath);
+    }
+
+    private String link(String hash) {
+        return context.downloadUrl() + "/" + contentKey(hash);
     }
 }
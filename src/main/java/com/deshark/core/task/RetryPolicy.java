@@ -0,0 +1,102 @@
+package com.deshark.core.task;
+
+import com.deshark.core.storage.StorageException;
+
+import javax.net.ssl.SSLException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.file.FileSystemException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether a failed upload is retried and after how long. Delays grow exponentially
+ * with random jitter so throttled tasks don't retry in lockstep, and all retries of a run draw
+ * from one shared budget: each retry costs a token and each success earns back a fraction of
+ * one, so a sustained outage drains the budget and fails the run instead of hammering the
+ * endpoint.
+ */
+public class RetryPolicy {
+    private static final long MILLI_TOKENS = 1000;
+    // a success refunds a tenth of a retry
+    private static final long SUCCESS_REFUND = MILLI_TOKENS / 10;
+
+    private final int maxRetries;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final long budgetCapacity;
+    private final AtomicLong budget;
+
+    public enum Decision {
+        RETRY,
+        PERMANENT_ERROR,
+        RETRIES_EXHAUSTED,
+        BUDGET_EXHAUSTED
+    }
+
+    public RetryPolicy(int maxRetries, long baseDelayMillis, long maxDelayMillis, int retryBudget) {
+        this.maxRetries = maxRetries;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.budgetCapacity = retryBudget * MILLI_TOKENS;
+        this.budget = new AtomicLong(budgetCapacity);
+    }
+
+    // attempt is the number of retries already made for this task
+    public Decision decide(Throwable error, int attempt) {
+        if (!isRetryable(error)) {
+            return Decision.PERMANENT_ERROR;
+        }
+        if (attempt >= maxRetries) {
+            return Decision.RETRIES_EXHAUSTED;
+        }
+        long current;
+        do {
+            current = budget.get();
+            if (current < MILLI_TOKENS) {
+                return Decision.BUDGET_EXHAUSTED;
+            }
+        } while (!budget.compareAndSet(current, current - MILLI_TOKENS));
+        return Decision.RETRY;
+    }
+
+    public long backoffMillis(int attempt) {
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+    }
+
+    public void onSuccess() {
+        budget.getAndUpdate(current -> Math.min(budgetCapacity, current + SUCCESS_REFUND));
+    }
+
+    public int maxRetries() {
+        return maxRetries;
+    }
+
+    public static boolean isRetryable(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            // the source can't be read, and another attempt would read the same file; checked
+            // first as a storage client may have wrapped it in a failure of its own
+            if (t instanceof FileSystemException) {
+                return false;
+            }
+        }
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof StorageException storageException) {
+                return storageException.isRetryable();
+            }
+            if (isNetworkFailure(t)) {
+                return true;
+            }
+        }
+        // storage clients report their failures as StorageException, so any other I/O error
+        // came from reading the local file
+        return false;
+    }
+
+    private static boolean isNetworkFailure(Throwable t) {
+        return t instanceof SocketException || t instanceof SocketTimeoutException
+                || t instanceof UnknownHostException || t instanceof SSLException;
+    }
+}
@@ -0,0 +1,27 @@
+package com.deshark.core.task;
+
+import com.deshark.core.codec.CompressionPolicy;
+import com.deshark.core.index.ChecksumIndex;
+import com.deshark.core.index.HashIndex;
+import com.deshark.core.journal.ReleaseJournal;
+import com.deshark.core.metrics.RunMetrics;
+import com.deshark.core.plan.PlanWriter;
+import com.deshark.core.schemas.ChunkingConfig;
+import com.deshark.core.schemas.PackConfig;
+import com.deshark.core.storage.CloudStorageProvider;
+
+public record UploadContext(
+        CloudStorageProvider storage,
+        HashIndex index,
+        ChecksumIndex checksums,
+        String downloadUrl,
+        RetryPolicy retryPolicy,
+        CompressionPolicy compression,
+        ChunkingConfig chunking,
+        RunMetrics metrics,
+        PackConfig packing,
+        // completed files of the release, null where a run stores nothing
+        ReleaseJournal journal,
+        // set in plan mode: uploads are only checked and recorded here
+        PlanWriter plan
+) {}
@@ -0,0 +1,75 @@
+package com.deshark.core.utils;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.zip.Checksum;
+
+/**
+ * CRC-64/ECMA-182 in its reflected form with all-ones initial and final values, the checksum
+ * COS reports for every object as {@code x-cos-hash-crc64ecma}. Input is folded eight bytes
+ * at a time (slicing-by-8) so it keeps up with the hash pass it runs in.
+ */
+public class Crc64 implements Checksum {
+    private static final long POLY = 0xC96C5795D7870F42L;
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    // TABLE[k][b] is the CRC of byte b followed by k zero bytes
+    private static final long[][] TABLE = new long[8][256];
+
+    static {
+        for (int b = 0; b < 256; b++) {
+            long crc = b;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLY : crc >>> 1;
+            }
+            TABLE[0][b] = crc;
+        }
+        for (int b = 0; b < 256; b++) {
+            long crc = TABLE[0][b];
+            for (int k = 1; k < 8; k++) {
+                crc = TABLE[0][(int) crc & 0xFF] ^ (crc >>> 8);
+                TABLE[k][b] = crc;
+            }
+        }
+    }
+
+    // kept inverted, as the algorithm works on it
+    private long crc = -1L;
+
+    @Override
+    public void update(int b) {
+        crc = TABLE[0][(int) (crc ^ b) & 0xFF] ^ (crc >>> 8);
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        long c = crc;
+        int end = off + len;
+        for (; end - off >= 8; off += 8) {
+            c ^= (long) LONGS.get(b, off);
+            c = TABLE[7][(int) c & 0xFF] ^ TABLE[6][(int) (c >>> 8) & 0xFF]
+                    ^ TABLE[5][(int) (c >>> 16) & 0xFF] ^ TABLE[4][(int) (c >>> 24) & 0xFF]
+                    ^ TABLE[3][(int) (c >>> 32) & 0xFF] ^ TABLE[2][(int) (c >>> 40) & 0xFF]
+                    ^ TABLE[1][(int) (c >>> 48) & 0xFF] ^ TABLE[0][(int) (c >>> 56)];
+        }
+        for (; off < end; off++) {
+            c = TABLE[0][(int) (c ^ b[off]) & 0xFF] ^ (c >>> 8);
+        }
+        crc = c;
+    }
+
+    @Override
+    public long getValue() {
+        return ~crc;
+    }
+
+    @Override
+    public void reset() {
+        crc = -1L;
+    }
+
+    // COS writes the value as an unsigned decimal
+    public static String format(long value) {
+        return Long.toUnsignedString(value);
+    }
+}
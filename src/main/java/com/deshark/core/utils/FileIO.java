@@ -0,0 +1,61 @@
+package com.deshark.core.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a file as a sequence of {@link ByteBuffer} segments. Files below {@link #MAP_THRESHOLD}
+ * are read into a per-thread direct buffer with large reads; bigger ones are memory-mapped a
+ * window at a time, which skips the read syscalls and the copy out of the page cache. Segments
+ * are direct in both cases, so they can go to native code such as a Deflater without a heap copy.
+ */
+public class FileIO {
+    static final long MAP_THRESHOLD = 16L * 1024 * 1024;
+    private static final long MAP_WINDOW = 256L * 1024 * 1024;
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+    private static final ThreadLocal<ByteBuffer> READ_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(READ_BUFFER_SIZE));
+
+    public interface SegmentConsumer {
+        // the segment is only valid during the call
+        void accept(ByteBuffer segment) throws IOException;
+    }
+
+    private FileIO() {}
+
+    public static void forEachSegment(Path file, SegmentConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= MAP_THRESHOLD) {
+                map(channel, size, consumer);
+            } else {
+                read(channel, consumer);
+            }
+        }
+    }
+
+    private static void map(FileChannel channel, long size, SegmentConsumer consumer) throws IOException {
+        for (long position = 0; position < size; position += MAP_WINDOW) {
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(MAP_WINDOW, size - position));
+            consumer.accept(window);
+        }
+    }
+
+    private static void read(FileChannel channel, SegmentConsumer consumer) throws IOException {
+        ByteBuffer buffer = READ_BUFFER.get();
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer);
+            if (read < 0) {
+                return;
+            }
+            buffer.flip();
+            consumer.accept(buffer);
+        }
+    }
+}
@@ -1,9 +1,13 @@
 package com.deshark.core.utils;
 
+import com.deshark.core.codec.Codec;
+import com.deshark.core.codec.Codecs;
+
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -11,17 +15,17 @@ import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
-import java.util.zip.Deflater;
-import java.util.zip.DeflaterOutputStream;
 
 public class FileUtil {
     private static final int BUFFER_SIZE = 8192;
     private static final int INITIAL_BUFFER_SIZE = 16384;
     private static final Set<String> COMPRESSIBLE_EXTENSIONS = Set.of(
-            ".json", ".txt", ".xml", ".toml", ".js", ".cfg", ".properties");
+            ".json", ".txt", ".xml", ".toml", ".js", ".cfg", ".properties",
+            ".lang", ".mcmeta", ".zs", ".snbt");
     private static final Set<String> NON_COMPRESSIBLE_EXTENSIONS = Set.of(
-            ".png", ".zip", ".jar", ".gz", ".7z", ".rar");
+            ".png", ".zip", ".jar", ".gz", ".7z", ".rar", ".ogg", ".jpg", ".jpeg", ".xz", ".bz2");
 
     private FileUtil() {}
 
@@ -59,24 +63,56 @@ public class FileUtil {
     }
 
     public static Path compressFile(Path source) throws IOException {
+        return compressFile(source, Codecs.DEFAULT_DEFLATE_LEVEL);
+    }
+
+    public static Path compressFile(Path source, int level) throws IOException {
         Path tempFile = Files.createTempFile("compressed_", ".tmp");
-        try (InputStream is = Files.newInputStream(source);
-             OutputStream os = Files.newOutputStream(tempFile);
-             DeflaterOutputStream dos = new DeflaterOutputStream(os,
-                     new Deflater(Deflater.BEST_COMPRESSION))) {
-            byte[] buffer = new byte[BUFFER_SIZE];
-            int bytesRead;
-            while ((bytesRead = is.read(buffer)) != -1) {
-                dos.write(buffer, 0, bytesRead);
+        compress(source, Files.newOutputStream(tempFile), level);
+        return tempFile;
+    }
+
+    public static void compress(Path source, OutputStream sink) throws IOException {
+        compress(source, sink, Codecs.DEFAULT_DEFLATE_LEVEL);
+    }
+
+    public static void compress(Path source, OutputStream sink, int level) throws IOException {
+        compress(source, sink, Codecs.deflate(level));
+    }
+
+    // encodes source into sink and closes sink
+    public static void compress(Path source, OutputStream sink, Codec codec) throws IOException {
+        try (OutputStream os = codec.encode(sink)) {
+            if (os instanceof WritableByteChannel channel) {
+                FileIO.forEachSegment(source, channel::write);
+            } else {
+                try (InputStream is = Files.newInputStream(source)) {
+                    is.transferTo(os);
+                }
             }
         }
-        return tempFile;
+    }
+
+    // encodes source into sink and returns its whitespace-insensitive SHA-256, reading the file once
+    public static String hashAndCompress(Path source, OutputStream sink, Codec codec) throws IOException {
+        try (OutputStream os = codec.encode(sink)) {
+            return HashUtil.SHA256(source, os);
+        }
     }
 
     public static boolean shouldCompressFile(Path file) {
-        String fileName = file.getFileName().toString().toLowerCase();
-        String ext = fileName.substring(fileName.lastIndexOf('.')).toLowerCase();
-        return !NON_COMPRESSIBLE_EXTENSIONS.contains(ext) &&
-                COMPRESSIBLE_EXTENSIONS.contains(ext);
+        return COMPRESSIBLE_EXTENSIONS.contains(extension(file));
+    }
+
+    // formats that are already compressed and never worth a second pass
+    public static boolean isIncompressibleFile(Path file) {
+        return NON_COMPRESSIBLE_EXTENSIONS.contains(extension(file));
+    }
+
+    // lower-case extension including the dot, or "" for names without one
+    private static String extension(Path file) {
+        String fileName = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        int dot = fileName.lastIndexOf('.');
+        return dot < 0 ? "" : fileName.substring(dot);
     }
 }
@@ -1,19 +1,97 @@
 package com.deshark.core.utils;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Path;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.HexFormat;
 
 public class HashUtil {
-    public static String SHA256(Path file) throws IOException{
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // 1 for bytes that survive whitespace stripping, 0 for \t \n \r and space
+    private static final byte[] KEEP = new byte[256];
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+    private static final ThreadLocal<MessageDigest> SHA256_DIGEST = ThreadLocal.withInitial(() -> newDigest("SHA-256"));
+
+    static {
+        Arrays.fill(KEEP, (byte) 1);
+        KEEP[9] = KEEP[10] = KEEP[13] = KEEP[32] = 0;
+    }
+
+    private HashUtil() {}
+
+    public static String SHA256(Path file) throws IOException {
+        return SHA256(file, null);
+    }
+
+    /**
+     * Same digest as {@link #SHA256(InputStream, OutputStream)}, reading the file through
+     * {@link FileIO}. A tee that is also a {@link WritableByteChannel} gets the file's buffers
+     * directly instead of a heap copy.
+     */
+    public static String SHA256(Path file, OutputStream tee) throws IOException {
+        MessageDigest digest = SHA256_DIGEST.get();
+        digest.reset();
+        byte[] buffer = BUFFER.get();
+        FileIO.forEachSegment(file, segment -> {
+            while (segment.hasRemaining()) {
+                int length = Math.min(segment.remaining(), buffer.length);
+                if (tee instanceof WritableByteChannel channel) {
+                    channel.write(segment.slice(segment.position(), length));
+                }
+                segment.get(buffer, 0, length);
+                if (tee != null && !(tee instanceof WritableByteChannel)) {
+                    tee.write(buffer, 0, length);
+                }
+                digest.update(buffer, 0, stripSpace(buffer, length));
+            }
+        });
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    // same digest as SHA-256 over FileUtil.readIgnoreSpace, without buffering the whole input
+    public static String SHA256(InputStream is) throws IOException {
+        return SHA256(is, null);
+    }
+
+    // as above, additionally copying the raw (unstripped) bytes to tee while reading
+    public static String SHA256(InputStream is, OutputStream tee) throws IOException {
+        MessageDigest digest = SHA256_DIGEST.get();
+        digest.reset();
+        byte[] buffer = BUFFER.get();
+        int bytesRead;
+        while ((bytesRead = is.read(buffer)) != -1) {
+            if (tee != null) {
+                tee.write(buffer, 0, bytesRead);
+            }
+            digest.update(buffer, 0, stripSpace(buffer, bytesRead));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Moves the non-whitespace bytes of {@code buffer[0, length)} to the front of the buffer
+     * and returns how many there are.
+     */
+    public static int stripSpace(byte[] buffer, int length) {
+        int kept = 0;
+        for (int i = 0; i < length; i++) {
+            byte b = buffer[i];
+            buffer[kept] = b;
+            kept += KEEP[b & 0xFF];
+        }
+        return kept;
+    }
+
+    private static MessageDigest newDigest(String algorithm) {
         try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hashBytes = digest.digest(FileUtil.readIgnoreSpace(file));
-            return HexFormat.of().formatHex(hashBytes);
+            return MessageDigest.getInstance(algorithm);
         } catch (NoSuchAlgorithmException e) {
-            throw new AssertionError("SHA-256 algorithm not available", e);
+            throw new AssertionError(algorithm + " algorithm not available", e);
         }
     }
 }
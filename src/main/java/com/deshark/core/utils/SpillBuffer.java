@@ -0,0 +1,106 @@
+package com.deshark.core.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Output buffer that stays in memory up to {@code memoryLimit} bytes and transparently
+ * moves to a temp file beyond that. Call {@link #delete()} once the contents are consumed.
+ */
+public class SpillBuffer extends OutputStream {
+    private static final int INITIAL_CAPACITY = 8192;
+
+    private final int memoryLimit;
+    private byte[] buffer;
+    private int count;
+    private long size;
+    private Path spillFile;
+    private OutputStream spillStream;
+
+    public SpillBuffer(int memoryLimit) {
+        this.memoryLimit = memoryLimit;
+        this.buffer = new byte[Math.min(INITIAL_CAPACITY, memoryLimit)];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (spillStream == null && count + len > memoryLimit) {
+            spill();
+        }
+        if (spillStream != null) {
+            spillStream.write(b, off, len);
+        } else {
+            if (count + len > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.min(memoryLimit, Math.max(buffer.length * 2, count + len)));
+            }
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        }
+        size += len;
+    }
+
+    private void spill() throws IOException {
+        spillFile = Files.createTempFile("spill_", ".tmp");
+        spillStream = new BufferedOutputStream(Files.newOutputStream(spillFile));
+        spillStream.write(buffer, 0, count);
+        buffer = null;
+        count = 0;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (spillStream != null) {
+            spillStream.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (spillStream != null) {
+            spillStream.close();
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public boolean isSpilled() {
+        return spillFile != null;
+    }
+
+    // the temp file holding the contents once spilled, flushed so it can be read directly
+    public Path spillFile() throws IOException {
+        if (spillStream != null) {
+            spillStream.flush();
+        }
+        return spillFile;
+    }
+
+    public InputStream openInputStream() throws IOException {
+        if (spillFile != null) {
+            spillStream.flush();
+            return Files.newInputStream(spillFile);
+        }
+        return new ByteArrayInputStream(buffer, 0, count);
+    }
+
+    public void delete() throws IOException {
+        if (spillFile != null) {
+            close();
+            Files.deleteIfExists(spillFile);
+        }
+        buffer = null;
+    }
+}
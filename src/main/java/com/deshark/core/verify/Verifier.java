@@ -0,0 +1,366 @@
+package com.deshark.core.verify;
+
+import com.deshark.core.bundle.BundleBuilder;
+import com.deshark.core.chunk.ChunkUploader;
+import com.deshark.core.codec.Codec;
+import com.deshark.core.codec.Codecs;
+import com.deshark.core.index.ChecksumIndex;
+import com.deshark.core.manifest.ManifestReader;
+import com.deshark.core.pack.PackBuilder;
+import com.deshark.core.schemas.Bundle;
+import com.deshark.core.schemas.BundleConfig;
+import com.deshark.core.schemas.FileChunk;
+import com.deshark.core.schemas.ModpackFile;
+import com.deshark.core.schemas.VerifyConfig;
+import com.deshark.core.schemas.VerifyReport;
+import com.deshark.core.storage.ByteRateLimiter;
+import com.deshark.core.storage.CloudStorageProvider;
+import com.deshark.core.storage.StorageKeys;
+import com.deshark.core.storage.StoredObject;
+import com.deshark.core.task.UploadContext;
+import com.deshark.core.utils.Crc64;
+import com.deshark.core.utils.FileUtil;
+import com.deshark.core.utils.SpillBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Checks that every object a manifest references is in the bucket as it was sent. Only
+ * object metadata is fetched: the size and CRC64 the store reports are compared with those
+ * recorded in the {@link ChecksumIndex} when the object was produced, so a check reads no
+ * object bodies and no local files. Objects that are missing or differ are stored again from
+ * the local files, provided those still hash to what the manifest says.
+ */
+public class Verifier {
+    private static final Logger log = LoggerFactory.getLogger(Verifier.class);
+    private static final int IN_MEMORY_PAYLOAD_LIMIT = 1024 * 1024;
+
+    private final UploadContext context;
+    private final VerifyConfig config;
+    private final BundleConfig bundleConfig;
+    private final Map<String, Path> roots;
+    private final Path workDir;
+    private final PackBuilder packs;
+    private final ByteRateLimiter requestLimiter;
+
+    private enum Status { VERIFIED, SIZE_ONLY, UNCHECKED, PROBLEM }
+
+    // one stored object and the first manifest entry that leads to it
+    private static final class Target {
+        final String key;
+        final String kind;
+        long knownSize = -1;
+        ModpackFile file;
+        FileChunk chunk;
+        Bundle bundle;
+        // every file stored in this pack
+        final List<ModpackFile> members = new ArrayList<>();
+
+        Target(String key, String kind) {
+            this.key = key;
+            this.kind = kind;
+        }
+    }
+
+    private record Check(Target target, Status status, VerifyReport.Finding finding) {}
+
+    private interface Task<T> {
+        T call() throws Exception;
+    }
+
+    // roots maps each dist to the directory its relative paths start from
+    public Verifier(UploadContext context, VerifyConfig config, BundleConfig bundleConfig, Map<String, Path> roots,
+                    Path workDir, PackBuilder packs) {
+        this.context = context;
+        this.config = config;
+        this.bundleConfig = bundleConfig;
+        this.roots = roots;
+        this.workDir = workDir;
+        this.packs = packs;
+        // every metadata request is booked as one unit
+        this.requestLimiter = config.maxRequestsPerSecond() > 0 ? new ByteRateLimiter(config.maxRequestsPerSecond()) : null;
+    }
+
+    public VerifyReport run(String versionName, InputStream manifest) throws IOException, InterruptedException {
+        Map<String, Target> targets = new LinkedHashMap<>();
+        List<ModpackFile> files = new ArrayList<>();
+        ManifestReader.forEachEntry(manifest, file -> {
+            files.add(file);
+            addFile(targets, file);
+        }, bundle -> target(targets, StorageKeys.contentKey(bundle.hash(), Codecs.IDENTITY), "bundle", bundle.size())
+                .bundle = bundle);
+        log.info("Verifying {} objects of version {}", targets.size(), versionName);
+
+        List<Task<Check>> checks = new ArrayList<>();
+        for (Target target : targets.values()) {
+            checks.add(() -> check(target));
+        }
+        Map<Status, Integer> counts = new HashMap<>();
+        List<Check> problems = new ArrayList<>();
+        for (Check check : run(checks)) {
+            counts.merge(check.status(), 1, Integer::sum);
+            if (check.status() == Status.PROBLEM) {
+                problems.add(check);
+            }
+        }
+        List<VerifyReport.Finding> findings = config.repair() ? repairAll(problems, files)
+                : problems.stream().map(Check::finding).toList();
+        int repaired = (int) findings.stream().filter(VerifyReport.Finding::repaired).count();
+        String checkedAt = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+        return new VerifyReport(versionName, checkedAt, targets.size(), counts.getOrDefault(Status.VERIFIED, 0),
+                counts.getOrDefault(Status.SIZE_ONLY, 0), counts.getOrDefault(Status.UNCHECKED, 0), repaired, findings);
+    }
+
+    private void addFile(Map<String, Target> targets, ModpackFile file) {
+        Codec codec = Codecs.forName(file.codec());
+        // the stored size of an object kept as is is the size of its content
+        boolean identity = Codecs.isIdentity(codec);
+        if (file.pack() != null) {
+            Target target = target(targets, StorageKeys.contentKey(file.pack().hash(), Codecs.IDENTITY), "pack", -1);
+            // members are concatenated, so the last one ends where the pack does
+            target.knownSize = Math.max(target.knownSize, file.pack().offset() + file.pack().length());
+            target.members.add(file);
+        } else if (file.chunks() != null) {
+            for (FileChunk chunk : file.chunks()) {
+                Target target = target(targets, key(chunk.link(), chunk.hash(), codec, file), "chunk",
+                        identity ? chunk.size() : -1);
+                if (target.file == null) {
+                    target.file = file;
+                    target.chunk = chunk;
+                }
+            }
+        } else if (file.hash() != null) {
+            Target target = target(targets, key(file.link(), file.hash(), codec, file), "file",
+                    identity ? file.size() : -1);
+            if (target.file == null) {
+                target.file = file;
+            }
+        }
+    }
+
+    // the object clients fetch: the one linked, which an older release may have stored under the
+    // suffixed form of its key, or by the current layout when there is no link
+    private String key(String link, String hash, Codec codec, ModpackFile file) {
+        String prefix = context.downloadUrl() + "/";
+        if (link != null && link.startsWith(prefix)) {
+            return link.substring(prefix.length());
+        }
+        return StorageKeys.contentKey(hash, codec, file.file());
+    }
+
+    private static Target target(Map<String, Target> targets, String key, String kind, long knownSize) {
+        return targets.computeIfAbsent(key, k -> {
+            Target target = new Target(k, kind);
+            target.knownSize = knownSize;
+            return target;
+        });
+    }
+
+    private Check check(Target target) throws InterruptedException {
+        if (requestLimiter != null) {
+            requestLimiter.acquire(1);
+        }
+        ChecksumIndex.Entry expected = context.checksums().lookup(target.key);
+        long expectedSize = expected != null ? expected.size() : target.knownSize;
+        String expectedCrc = expected != null ? expected.crc64() : null;
+        StoredObject stored;
+        try {
+            stored = context.storage().stat(target.key);
+        } catch (RuntimeException e) {
+            log.warn("Failed to check {}", target.key, e);
+            return new Check(target, Status.PROBLEM, finding(target, VerifyReport.Problem.CHECK_FAILED, expectedSize,
+                    expectedCrc, null, false, e.getMessage()));
+        }
+        VerifyReport.Problem problem = null;
+        if (stored == null) {
+            problem = VerifyReport.Problem.MISSING;
+        } else if (expectedSize >= 0 && stored.size() != expectedSize) {
+            problem = VerifyReport.Problem.SIZE_MISMATCH;
+        } else if (expectedCrc != null && stored.crc64() != null && !expectedCrc.equals(stored.crc64())) {
+            problem = VerifyReport.Problem.CHECKSUM_MISMATCH;
+        }
+        if (problem != null) {
+            return new Check(target, Status.PROBLEM, finding(target, problem, expectedSize, expectedCrc, stored, false,
+                    null));
+        }
+        Status status = expectedCrc != null && stored.crc64() != null ? Status.VERIFIED
+                : expectedSize >= 0 ? Status.SIZE_ONLY : Status.UNCHECKED;
+        return new Check(target, status, null);
+    }
+
+    private List<VerifyReport.Finding> repairAll(List<Check> problems, List<ModpackFile> files)
+            throws IOException, InterruptedException {
+        List<Task<VerifyReport.Finding>> repairs = new ArrayList<>();
+        List<Check> bundles = new ArrayList<>();
+        List<VerifyReport.Finding> findings = new ArrayList<>();
+        for (Check check : problems) {
+            if (check.finding().problem() == VerifyReport.Problem.CHECK_FAILED) {
+                findings.add(check.finding());
+            } else if (check.target().bundle != null) {
+                bundles.add(check);
+            } else {
+                repairs.add(() -> afterRepair(check, repair(check.target())));
+            }
+        }
+        findings.addAll(run(repairs));
+        if (!bundles.isEmpty()) {
+            Map<String, String> notes = restoreBundles(bundles, files);
+            for (Check check : bundles) {
+                findings.add(afterRepair(check, notes.get(check.target().bundle.hash())));
+            }
+        }
+        return findings;
+    }
+
+    // looks at the object again after a repair; note is null when the repair went through
+    private VerifyReport.Finding afterRepair(Check check, String note) throws InterruptedException {
+        VerifyReport.Finding finding = check.finding();
+        if (note == null) {
+            Check again = check(check.target());
+            if (again.status() == Status.PROBLEM) {
+                note = "still " + again.finding().problem() + " after storing it again";
+            } else {
+                log.info("Repaired {} {} ({})", check.target().kind, check.target().key, finding.problem());
+            }
+        }
+        if (note != null) {
+            log.warn("Could not repair {} {} ({}): {}", check.target().kind, check.target().key, finding.problem(),
+                    note);
+        }
+        return new VerifyReport.Finding(finding.key(), finding.kind(), finding.problem(), finding.expectedSize(),
+                finding.actualSize(), finding.expectedCrc64(), finding.actualCrc64(), finding.etag(), note == null,
+                note);
+    }
+
+    // stores the object of a file, chunk or pack again; null when done, otherwise why not
+    private String repair(Target target) {
+        try {
+            if (!target.members.isEmpty()) {
+                return packs.restore(target.members.get(0).pack(), target.members) ? null
+                        : "the local files no longer make up this pack";
+            }
+            Path source = roots.get(target.file.dist()).resolve(target.file.file());
+            if (!Files.isRegularFile(source)) {
+                return "local file is gone: " + source;
+            }
+            Codec codec = context.compression().forName(target.file.codec());
+            if (target.chunk != null) {
+                return ChunkUploader.restore(context.storage(), source, target.chunk, target.key, codec,
+                        context.checksums()) ? null
+                        : "local file no longer holds this chunk: " + source;
+            }
+            return restoreFile(target, source, codec);
+        } catch (IOException | RuntimeException e) {
+            return e.getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "interrupted";
+        }
+    }
+
+    private String restoreFile(Target target, Path source, Codec codec) throws IOException {
+        SpillBuffer payload = new SpillBuffer(IN_MEMORY_PAYLOAD_LIMIT);
+        try {
+            Crc64 crc = new Crc64();
+            String hash = FileUtil.hashAndCompress(source, new CheckedOutputStream(payload, crc), codec);
+            if (!hash.equals(target.file.hash())) {
+                return "local file changed since it was published: " + source;
+            }
+            CloudStorageProvider storage = context.storage();
+            if (payload.isSpilled()) {
+                storage.upload(payload.spillFile(), target.key, codec);
+            } else {
+                try (InputStream is = payload.openInputStream()) {
+                    storage.upload(is, payload.size(), target.key, codec);
+                }
+            }
+            context.checksums().put(target.key, payload.size(), crc);
+            return null;
+        } finally {
+            payload.delete();
+        }
+    }
+
+    // bundles are rebuilt from every file of the version, which they sort as when published
+    private Map<String, String> restoreBundles(List<Check> broken, List<ModpackFile> files) {
+        Set<String> hashes = new HashSet<>();
+        for (Check check : broken) {
+            hashes.add(check.target().bundle.hash());
+        }
+        Map<String, String> notes = new HashMap<>();
+        for (String hash : hashes) {
+            notes.put(hash, "the local files no longer make up this bundle");
+        }
+        try (BundleBuilder builder = new BundleBuilder(workDir, roots, bundleConfig, context.checksums())) {
+            for (ModpackFile file : files) {
+                builder.add(file);
+            }
+            for (Bundle bundle : builder.restore(context.storage(), context.downloadUrl(), hashes)) {
+                notes.remove(bundle.hash());
+            }
+        } catch (IOException | RuntimeException e) {
+            notes.replaceAll((hash, note) -> e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            notes.replaceAll((hash, note) -> "interrupted");
+        }
+        return notes;
+    }
+
+    private static VerifyReport.Finding finding(Target target, VerifyReport.Problem problem, long expectedSize,
+                                                String expectedCrc, StoredObject stored, boolean repaired, String note) {
+        return new VerifyReport.Finding(target.key, target.kind, problem, expectedSize,
+                stored != null ? stored.size() : -1, expectedCrc, stored != null ? stored.crc64() : null,
+                stored != null ? stored.etag() : null, repaired, note);
+    }
+
+    private <T> List<T> run(List<Task<T>> tasks) throws IOException, InterruptedException {
+        Semaphore permits = new Semaphore(config.concurrency());
+        List<Future<T>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Task<T> task : tasks) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return task.call();
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+}
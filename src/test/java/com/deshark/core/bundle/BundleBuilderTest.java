@@ -0,0 +1,101 @@
+package com.deshark.core.bundle;
+
+import com.deshark.core.index.ChecksumIndex;
+import com.deshark.core.schemas.Bundle;
+import com.deshark.core.schemas.BundleConfig;
+import com.deshark.core.schemas.ModpackFile;
+import com.deshark.core.storage.impl.InMemoryStorageProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BundleBuilderTest {
+    private static final BundleConfig CONFIG = new BundleConfig(true, 0, 0);
+
+    @TempDir
+    Path dir;
+
+    private final InMemoryStorageProvider storage = new InMemoryStorageProvider();
+    private ChecksumIndex checksums;
+    private Map<String, Path> roots;
+    private final List<ModpackFile> files = new ArrayList<>();
+
+    @BeforeEach
+    void open() throws IOException {
+        checksums = ChecksumIndex.open(dir.resolve("work/checksums.jsonl"));
+        roots = Map.of("common", dir.resolve("common"), "client", dir.resolve("client"), "server",
+                dir.resolve("server"));
+        for (int i = 0; i < 30; i++) {
+            files.add(write("common", "mods/m" + i + ".jar", "identity"));
+        }
+        files.add(write("common", "config/a.json", "deflate"));
+        files.add(write("client", "options.txt", "deflate"));
+        files.add(write("server", "server.properties", "deflate"));
+        // also shipped as common; the common copy goes into the client bundle
+        files.add(write("client", "mods/m3.jar", "identity"));
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        checksums.close();
+    }
+
+    @Test
+    void anUnchangedTreeGivesTheSameBundlesInAnyOrder() throws Exception {
+        List<Bundle> first = build(files);
+        List<ModpackFile> shuffled = new ArrayList<>(files);
+        Collections.shuffle(shuffled, new Random(7));
+        List<Bundle> second = build(shuffled);
+
+        assertEquals(first, second);
+        assertEquals(2, storage.objectCount());
+        Bundle client = first.get(0);
+        assertEquals("client", client.dist());
+        assertEquals(32, client.files());
+        List<String> names = new ArrayList<>();
+        try (InputStream is = storage.getObjectStream(client.link().substring("https://cdn/".length()));
+             ZipInputStream zip = new ZipInputStream(is)) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                names.add(entry.getName());
+                if (entry.getName().equals("mods/m3.jar")) {
+                    assertEquals("common mods/m3.jar\n".repeat(50),
+                            new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        assertEquals(names.stream().sorted().toList(), names);
+    }
+
+    private List<Bundle> build(List<ModpackFile> order) throws Exception {
+        try (BundleBuilder builder = new BundleBuilder(dir.resolve("work"), roots, CONFIG, checksums)) {
+            order.forEach(builder::add);
+            return builder.finish(storage, "https://cdn");
+        }
+    }
+
+    private ModpackFile write(String dist, String path, String codec) throws IOException {
+        Path file = roots.get(dist).resolve(path);
+        Files.createDirectories(file.getParent());
+        byte[] data = (dist + " " + path + "\n").repeat(50).getBytes(StandardCharsets.UTF_8);
+        Files.write(file, data);
+        return new ModpackFile(path, "h-" + dist + "-" + path, null, data.length, dist, !"identity".equals(codec),
+                codec, null, null);
+    }
+}
@@ -0,0 +1,67 @@
+package com.deshark.core.chunk;
+
+import com.deshark.core.codec.Codecs;
+import com.deshark.core.index.ChecksumIndex;
+import com.deshark.core.schemas.FileChunk;
+import com.deshark.core.schemas.SimulationConfig;
+import com.deshark.core.storage.impl.InMemoryStorageProvider;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ChunkUploaderTest {
+    private static final int CHUNKS = 8;
+    private static final int CHUNK_SIZE = 4096;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void chunksOfSeveralFilesShareTheConnectionLimit() throws Exception {
+        // the simulated bucket throttles any request beyond the second one in flight
+        InMemoryStorageProvider storage = new InMemoryStorageProvider(new SimulationConfig(20, 0, 0, 0, 2));
+        Semaphore connections = new Semaphore(2);
+        try (ChecksumIndex checksums = ChecksumIndex.open(dir.resolve("checksums.jsonl"));
+             ExecutorService files = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<ChunkUploader.Result>> results = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                Path file = dir.resolve("f" + i);
+                List<FileChunk> chunks = write(file, i);
+                results.add(files.submit(() -> ChunkUploader.upload(storage, file, "f.bin", chunks, Codecs.IDENTITY,
+                        CHUNKS, connections, checksums)));
+            }
+            for (Future<ChunkUploader.Result> result : results) {
+                assertEquals(CHUNKS, result.get().uploaded());
+            }
+        }
+        assertEquals(3 * CHUNKS, storage.objectCount());
+        assertEquals(2, connections.availablePermits());
+    }
+
+    private static List<FileChunk> write(Path file, int seed) throws Exception {
+        byte[] data = new byte[CHUNKS * CHUNK_SIZE];
+        new Random(seed).nextBytes(data);
+        Files.write(file, data);
+        List<FileChunk> chunks = new ArrayList<>();
+        for (int i = 0; i < CHUNKS; i++) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(data, i * CHUNK_SIZE, CHUNK_SIZE);
+            chunks.add(new FileChunk(HexFormat.of().formatHex(digest.digest()), null, (long) i * CHUNK_SIZE,
+                    CHUNK_SIZE));
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,91 @@
+package com.deshark.core.chunk;
+
+import com.deshark.core.schemas.ChunkingConfig;
+import org.junit.jupiter.api.Test;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkerTest {
+    private static final ChunkingConfig CONFIG = new ChunkingConfig(true, 1, 1024, 4096, 16384, 1);
+
+    @Test
+    void boundariesArePartOfTheStorageFormat() {
+        // chunks already stored are only found again if the same input cuts the same way
+        List<Chunker.Chunk> chunks = chunk(random(200_000, 42), 200_000);
+        long[] offsets = chunks.stream().mapToLong(Chunker.Chunk::offset).limit(12).toArray();
+        assertArrayEquals(new long[]{0, 7300, 16591, 21317, 27582, 33038, 38807, 43496, 47031, 53143, 60665, 66140},
+                offsets);
+        assertEquals(41, chunks.size());
+        assertEquals("c8b7e91fbe96860f0985967c50d0e3f53904ca6d405dd85e8629e4c08aa5316b", chunks.get(0).hash());
+    }
+
+    @Test
+    void chunksTileTheInputWithinTheSizeLimits() throws Exception {
+        byte[] data = random(300_000, 1);
+        List<Chunker.Chunk> chunks = chunk(data, data.length);
+        long offset = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            Chunker.Chunk chunk = chunks.get(i);
+            assertEquals(offset, chunk.offset());
+            assertTrue(chunk.size() <= CONFIG.maxChunkSize());
+            if (i < chunks.size() - 1) {
+                assertTrue(chunk.size() >= CONFIG.minChunkSize());
+            }
+            byte[] slice = Arrays.copyOfRange(data, (int) chunk.offset(), (int) chunk.offset() + chunk.size());
+            assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(slice)), chunk.hash());
+            offset += chunk.size();
+        }
+        assertEquals(data.length, offset);
+    }
+
+    @Test
+    void cutsTheSameWayHoweverTheInputIsWritten() {
+        byte[] data = random(100_000, 2);
+        assertEquals(chunk(data, data.length), chunk(data, 1));
+        assertEquals(chunk(data, data.length), chunk(data, 777));
+    }
+
+    @Test
+    void anInsertOnlyChangesTheChunksAroundIt() {
+        byte[] data = random(400_000, 3);
+        byte[] edited = new byte[data.length + 10];
+        System.arraycopy(data, 0, edited, 0, 200_000);
+        System.arraycopy(data, 200_000, edited, 200_010, data.length - 200_000);
+        List<Chunker.Chunk> before = chunk(data, data.length);
+        Set<String> hashes = new HashSet<>();
+        before.forEach(chunk -> hashes.add(chunk.hash()));
+        long changed = chunk(edited, edited.length).stream().filter(chunk -> !hashes.contains(chunk.hash())).count();
+        assertTrue(changed <= 2, changed + " of " + before.size() + " chunks changed");
+    }
+
+    @Test
+    void cutsAtTheMaximumWhenNoBoundaryIsFound() {
+        List<Chunker.Chunk> chunks = chunk(new byte[40_000], 40_000);
+        assertEquals(List.of(16384, 16384, 7232), chunks.stream().map(Chunker.Chunk::size).toList());
+    }
+
+    private static List<Chunker.Chunk> chunk(byte[] data, int writeSize) {
+        Chunker chunker = new Chunker(CONFIG);
+        for (int off = 0; off < data.length; off += writeSize) {
+            chunker.write(data, off, Math.min(writeSize, data.length - off));
+        }
+        chunker.close();
+        return chunker.chunks();
+    }
+
+    private static byte[] random(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,214 @@
+package com.deshark.core.gc;
+
+import com.deshark.core.codec.Codecs;
+import com.deshark.core.index.HashIndex;
+import com.deshark.core.manifest.ManifestWriter;
+import com.deshark.core.schemas.Bundle;
+import com.deshark.core.schemas.FileChunk;
+import com.deshark.core.schemas.GcConfig;
+import com.deshark.core.schemas.ModpackFile;
+import com.deshark.core.schemas.PackRef;
+import com.deshark.core.schemas.VersionInfo;
+import com.deshark.core.schemas.Versions;
+import com.deshark.core.storage.StorageKeys;
+import com.deshark.core.storage.StoredObject;
+import com.deshark.core.storage.impl.InMemoryStorageProvider;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GarbageCollectorTest {
+    private static final String PROJECT = "pack";
+    private static final String CDN = "https://cdn";
+    private static final String VERSIONS_KEY = "stable/" + PROJECT + "/versions.json";
+    private static final GcConfig CONFIG = new GcConfig(24, 2, 4, false);
+    // everything stored by the test is past the grace period
+    private static final Clock LATER = Clock.offset(Clock.systemUTC(), Duration.ofDays(2));
+
+    @TempDir
+    Path dir;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final List<String> live = new ArrayList<>();
+
+    @Test
+    void deletesOnlyWhatNoVersionReferences() throws Exception {
+        InMemoryStorageProvider storage = new InMemoryStorageProvider();
+        publish(storage, "1.0", referencingEveryKind(storage));
+        String garbage = store(storage, StorageKeys.contentKey(hash('9', 1)));
+        String otherGarbage = store(storage, StorageKeys.contentKey(hash('9', 2), Codecs.DEFLATE));
+
+        HashIndex index = HashIndex.open(dir.resolve("hash-index.jsonl"));
+        try {
+            index.put(new HashIndex.Entry("common/old.txt", 1, 0, hash('9', 1), true, "identity", null, null));
+            index.put(new HashIndex.Entry("common/config/a.json", 1, 0, hash('1', 1), true, "deflate", null, null));
+            GarbageCollector.Result result = new GarbageCollector(storage, CONFIG, PROJECT, CDN, LATER).run(index);
+
+            assertEquals(2, result.deleted());
+            assertEquals(live.size() + 2, result.listed());
+            assertFalse(index.lookup("common/old.txt", 1, 0).uploaded());
+            assertTrue(index.lookup("common/config/a.json", 1, 0).uploaded());
+        } finally {
+            index.close();
+        }
+        for (String key : live) {
+            assertNotNull(storage.stat(key), key);
+        }
+        assertNull(storage.stat(garbage));
+        assertNull(storage.stat(otherGarbage));
+        assertNotNull(storage.stat(VERSIONS_KEY));
+    }
+
+    @Test
+    void keepsUnreferencedObjectsWithinTheGracePeriod() throws Exception {
+        InMemoryStorageProvider storage = new InMemoryStorageProvider();
+        publish(storage, "1.0", referencingEveryKind(storage));
+        store(storage, StorageKeys.contentKey(hash('9', 1)));
+        int stored = storage.objectCount();
+
+        GarbageCollector.Result result = new GarbageCollector(storage, CONFIG, PROJECT, CDN, Clock.systemUTC()).run(null);
+
+        assertEquals(1, result.young());
+        assertEquals(0, result.deleted());
+        assertEquals(stored, storage.objectCount());
+    }
+
+    @Test
+    void deletesNothingWhenAManifestIsMissing() throws Exception {
+        InMemoryStorageProvider storage = new InMemoryStorageProvider();
+        publish(storage, "1.0", referencingEveryKind(storage));
+        // listed, but its manifest never made it
+        writeVersions(storage, List.of("1.0", "1.1"));
+        store(storage, StorageKeys.contentKey(hash('9', 1)));
+        int stored = storage.objectCount();
+
+        assertThrows(IOException.class, () -> new GarbageCollector(storage, CONFIG, PROJECT, CDN, LATER).run(null));
+        assertEquals(stored, storage.objectCount());
+    }
+
+    @Test
+    void deletesNothingWhenAVersionIsPublishedMeanwhile() throws Exception {
+        List<String> versions = new ArrayList<>(List.of("1.0"));
+        InMemoryStorageProvider storage = new InMemoryStorageProvider() {
+            @Override
+            public List<StoredObject> list(String prefix) {
+                // a publish lands while the shards are listed; its files may reuse garbage
+                synchronized (versions) {
+                    if (versions.size() == 1) {
+                        versions.add("1.1");
+                        try {
+                            writeVersions(this, versions);
+                        } catch (IOException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                }
+                return super.list(prefix);
+            }
+        };
+        publish(storage, "1.0", referencingEveryKind(storage));
+        store(storage, StorageKeys.contentKey(hash('9', 1)));
+        int stored = storage.objectCount();
+
+        assertThrows(IOException.class, () -> new GarbageCollector(storage, CONFIG, PROJECT, CDN, LATER).run(null));
+        assertEquals(stored, storage.objectCount());
+    }
+
+    @Test
+    void refusesToRunWithoutAVersionList() {
+        InMemoryStorageProvider storage = new InMemoryStorageProvider();
+        store(storage, StorageKeys.contentKey(hash('9', 1)));
+
+        assertThrows(IOException.class, () -> new GarbageCollector(storage, CONFIG, PROJECT, CDN, LATER).run(null));
+        assertEquals(1, storage.objectCount());
+    }
+
+    // a manifest with one of each way a version can reference an object, all stored
+    private List<Object> referencingEveryKind(InMemoryStorageProvider storage) {
+        List<Object> entries = new ArrayList<>();
+        // text stored under the bare key before codecs; the suffixed form may exist too
+        String text = hash('1', 1);
+        live.add(store(storage, StorageKeys.contentKey(text, Codecs.DEFLATE, "config/a.json")));
+        live.add(store(storage, StorageKeys.contentKey(text, Codecs.DEFLATE)));
+        entries.add(new ModpackFile("config/a.json", text, null, 1, "common", true, "deflate", null, null));
+
+        String chunk = hash('2', 1);
+        live.add(store(storage, StorageKeys.contentKey(chunk)));
+        entries.add(new ModpackFile("mods/big.jar", hash('2', 2), null, 1, "common", false, "identity",
+                List.of(new FileChunk(chunk, null, 0, 1)), null));
+
+        String pack = hash('3', 1);
+        live.add(store(storage, StorageKeys.contentKey(pack)));
+        entries.add(new ModpackFile("config/small.json", hash('3', 2), null, 1, "common", true, "deflate", null,
+                new PackRef(pack, null, 0, 1)));
+
+        // from a release before the current layout, only its link says where it is
+        String legacy = store(storage, "4/00/0000/legacy-object");
+        live.add(legacy);
+        entries.add(new ModpackFile("mods/old.jar", hash('4', 1), CDN + "/" + legacy, 1, "client", false,
+                "identity", null, null));
+
+        String bundle = hash('5', 1);
+        live.add(store(storage, StorageKeys.contentKey(bundle)));
+        entries.add(new Bundle("client", bundle, null, 1, 4));
+        return entries;
+    }
+
+    private void publish(InMemoryStorageProvider storage, String version, List<Object> entries) throws IOException {
+        List<Bundle> bundles = new ArrayList<>();
+        try (ManifestWriter manifest = new ManifestWriter(version, Map.of(), Codecs.DEFLATE)) {
+            for (Object entry : entries) {
+                if (entry instanceof ModpackFile file) {
+                    manifest.write(file);
+                } else {
+                    bundles.add((Bundle) entry);
+                }
+            }
+            manifest.finish(bundles);
+            try (InputStream is = manifest.openCompressedStream()) {
+                storage.upload(is, manifest.compressedSize(),
+                        "stable/" + PROJECT + "/versions/" + version + "/modpack.json", manifest.codec());
+            }
+        }
+        writeVersions(storage, List.of(version));
+    }
+
+    private void writeVersions(InMemoryStorageProvider storage, List<String> names) throws IOException {
+        List<VersionInfo> versions = names.stream()
+                .map(name -> new VersionInfo(name, "2026-10-18", null, null, null))
+                .toList();
+        byte[] json = mapper.writeValueAsBytes(new Versions(versions));
+        storage.upload(new ByteArrayInputStream(json), json.length, VERSIONS_KEY, Codecs.IDENTITY);
+    }
+
+    private static String store(InMemoryStorageProvider storage, String key) {
+        byte[] data = {1};
+        try {
+            storage.upload(new ByteArrayInputStream(data), data.length, key, Codecs.IDENTITY);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return key;
+    }
+
+    private static String hash(char shard, int i) {
+        return String.format("%c%063x", shard, i);
+    }
+}
@@ -0,0 +1,115 @@
+package com.deshark.core.index;
+
+import com.deshark.core.schemas.FileChunk;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HashIndexTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void concurrentPutsForOnePathLeaveTheLogInTheOrderOfTheMap() throws Exception {
+        Path file = dir.resolve("hash-index.jsonl");
+        HashIndex index = HashIndex.open(file);
+        StallingChunks chunks = new StallingChunks(List.of(new FileChunk("c1", null, 0, 1)));
+        HashIndex.Entry first = new HashIndex.Entry("common/a", 1, 0, "h1", true, "identity", chunks, null);
+        try (ExecutorService executor = Executors.newSingleThreadExecutor()) {
+            Future<?> stalled = executor.submit(() -> index.put(first));
+            // the first put is writing its line; a second put for the same path races it
+            assertTrue(chunks.reached.await(10, TimeUnit.SECONDS));
+            index.put(entry("common/a", 2));
+            chunks.release.countDown();
+            stalled.get();
+        }
+        Map<String, HashIndex.Entry> expected = new HashMap<>();
+        index.entries().forEach(entry -> expected.put(entry.path(), entry));
+
+        // read the log as a run that crashed here would leave it, before close() rewrites it
+        HashIndex reopened = HashIndex.open(file);
+        try {
+            Map<String, HashIndex.Entry> actual = new HashMap<>();
+            reopened.entries().forEach(entry -> actual.put(entry.path(), entry));
+            assertEquals(expected, actual);
+        } finally {
+            reopened.close();
+            index.close();
+        }
+    }
+
+    @Test
+    void skipsATornLastLine() throws Exception {
+        Path file = dir.resolve("hash-index.jsonl");
+        HashIndex index = HashIndex.open(file);
+        index.put(entry("common/a", 1));
+        index.close();
+        Files.writeString(file, Files.readString(file) + "{\"path\":\"common/b\",\"si");
+
+        HashIndex reopened = HashIndex.open(file);
+        reopened.put(entry("common/c", 3));
+        reopened.close();
+        HashIndex again = HashIndex.open(file);
+        try {
+            assertEquals(entry("common/a", 1), again.lookup("common/a", 1, 0));
+            assertNull(again.lookup("common/b", 2, 0));
+            assertEquals(entry("common/c", 3), again.lookup("common/c", 3, 0));
+        } finally {
+            again.close();
+        }
+    }
+
+    // an mtime of 0 is old enough to be recorded
+    private static HashIndex.Entry entry(String path, long size) {
+        return new HashIndex.Entry(path, size, 0, "h" + size, true, "identity", null, null);
+    }
+
+    // holds up the serialization of its entry until released, or for a while when the other put
+    // is waiting on this one; not RandomAccess, so Jackson walks it with an iterator
+    private static final class StallingChunks extends AbstractList<FileChunk> {
+        private final List<FileChunk> chunks;
+        private final CountDownLatch reached = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        StallingChunks(List<FileChunk> chunks) {
+            this.chunks = chunks;
+        }
+
+        @Override
+        public Iterator<FileChunk> iterator() {
+            reached.countDown();
+            try {
+                release.await(2, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return chunks.iterator();
+        }
+
+        @Override
+        public FileChunk get(int index) {
+            return chunks.get(index);
+        }
+
+        @Override
+        public int size() {
+            return chunks.size();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.deshark.core.journal;
+
+import com.deshark.core.schemas.FileChunk;
+import com.deshark.core.schemas.ModpackFile;
+import com.deshark.core.schemas.VersionInfo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ReleaseJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void resumesUnchangedFilesAndSkipsATornLine() throws Exception {
+        Path journalDir = dir.resolve("journal");
+        Path a = source("a.jar", "aaa");
+        Path b = source("b.json", "bbb");
+        ModpackFile resultA = result("mods/a.jar", null);
+        ModpackFile resultB = result("config/b.json", List.of(new FileChunk("c1", "https://cdn/c1", 0, 3)));
+
+        ReleaseJournal journal = ReleaseJournal.open(journalDir, "1.0");
+        journal.record("common/mods/a.jar", Files.size(a), mtime(a), resultA);
+        journal.record("common/config/b.json", Files.size(b), mtime(b), resultB);
+        journal.close();
+        // the run died while appending the next line
+        Files.writeString(journalDir.resolve("1.0.jsonl"), "{\"completed\":{\"path\":\"common/c",
+                StandardOpenOption.APPEND);
+
+        ReleaseJournal resumed = ReleaseJournal.open(journalDir, "1.0");
+        assertEquals(resultA, resumed.completed(a, "common", "mods/a.jar"));
+        assertEquals(resultB, resumed.completed(b, "common", "config/b.json"));
+        Files.setLastModifiedTime(b, FileTime.fromMillis(mtime(b) + 5000));
+        // changed since, so it is done again
+        assertNull(resumed.completed(b, "common", "config/b.json"));
+        assertNull(resumed.completed(a, "server", "mods/a.jar"));
+        assertEquals(2, resumed.resumed());
+        // appended after the torn line, and not swallowed by it
+        Path c = source("c.txt", "ccc");
+        resumed.record("common/c.txt", Files.size(c), mtime(c), result("c.txt", null));
+        resumed.close();
+
+        ReleaseJournal again = ReleaseJournal.open(journalDir, "1.0");
+        assertEquals(result("c.txt", null), again.completed(c, "common", "c.txt"));
+        assertEquals(resultA, again.completed(a, "common", "mods/a.jar"));
+        again.close();
+    }
+
+    @Test
+    void aCommittedVersionSurvivesUntilTheReleaseIsFinished() throws Exception {
+        Path journalDir = dir.resolve("journal");
+        VersionInfo version = new VersionInfo("1.0", "2026-10-18 10:00:00", "https://cdn/modpack.json",
+                "https://cdn/changelog.json", null);
+        ReleaseJournal journal = ReleaseJournal.open(journalDir, "1.0");
+        assertNull(journal.committed());
+        journal.commit(version);
+        journal.close();
+
+        ReleaseJournal resumed = ReleaseJournal.open(journalDir, "1.0");
+        assertEquals(version, resumed.committed());
+        resumed.finish();
+        assertFalse(Files.exists(journalDir.resolve("1.0.jsonl")));
+        ReleaseJournal fresh = ReleaseJournal.open(journalDir, "1.0");
+        assertNull(fresh.committed());
+        fresh.close();
+    }
+
+    @Test
+    void anEmptyJournalIsNotKept() throws Exception {
+        ReleaseJournal.open(dir, "2.0").close();
+        assertFalse(Files.exists(dir.resolve("2.0.jsonl")));
+    }
+
+    private Path source(String name, String content) throws Exception {
+        Path file = dir.resolve(name);
+        Files.writeString(file, content);
+        return file;
+    }
+
+    private static long mtime(Path file) throws Exception {
+        return Files.getLastModifiedTime(file).toMillis();
+    }
+
+    private static ModpackFile result(String path, List<FileChunk> chunks) {
+        return new ModpackFile(path, "h-" + path, chunks == null ? "https://cdn/" + path : null, 3, "common", false,
+                "identity", chunks, null);
+    }
+}
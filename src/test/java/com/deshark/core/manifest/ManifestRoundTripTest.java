@@ -0,0 +1,90 @@
+package com.deshark.core.manifest;
+
+import com.deshark.core.codec.Codecs;
+import com.deshark.core.schemas.Bundle;
+import com.deshark.core.schemas.FileChunk;
+import com.deshark.core.schemas.Modpack;
+import com.deshark.core.schemas.ModpackFile;
+import com.deshark.core.schemas.PackRef;
+import com.deshark.core.schemas.VersionInfo;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ManifestRoundTripTest {
+    private static final List<ModpackFile> FILES = List.of(
+            new ModpackFile("mods/a.jar", "h1", "https://cdn/h1", 10, "common", false, "identity", null, null),
+            new ModpackFile("config/b.json", "h2", "https://cdn/h2", 20, "client", true, "deflate", null, null),
+            new ModpackFile("big.zip", "h3", null, 9_000_000_000L, "server", false, "identity",
+                    List.of(new FileChunk("c1", "https://cdn/c1", 0, 4_500_000_000L),
+                            new FileChunk("c2", "https://cdn/c2", 4_500_000_000L, 4_500_000_000L)), null),
+            new ModpackFile("options.txt", "h4", null, 5, "client", true, "deflate", null,
+                    new PackRef("p1", "https://cdn/p1", 128, 4)));
+    private static final List<Bundle> BUNDLES = List.of(new Bundle("client", "b1", "https://cdn/b1", 300, 3));
+
+    @Test
+    void readsBackWhatWasWritten() throws Exception {
+        try (ManifestWriter writer = write(BUNDLES)) {
+            List<ModpackFile> files = new ArrayList<>();
+            List<Bundle> bundles = new ArrayList<>();
+            try (InputStream is = writer.openStream()) {
+                ManifestReader.forEachEntry(is, files::add, bundles::add);
+            }
+            assertEquals(FILES, files);
+            assertEquals(BUNDLES, bundles);
+            assertEquals(FILES.size(), writer.count());
+            assertEquals("h2", writer.hashes().get(ManifestWriter.key(FILES.get(1))));
+        }
+    }
+
+    @Test
+    void isTheDocumentTheModpackRecordDescribes() throws Exception {
+        try (ManifestWriter writer = write(List.of())) {
+            Modpack modpack;
+            try (InputStream is = Codecs.DEFLATE.decode(writer.openCompressedStream())) {
+                modpack = new ObjectMapper().readValue(is, Modpack.class);
+            }
+            assertEquals("1.0", modpack.version());
+            assertEquals(FILES, modpack.files());
+            assertEquals(Map.of("net.minecraft", "1.7.10"), modpack.libraries());
+        }
+    }
+
+    @Test
+    void readsAndSearchesVersionLists() throws Exception {
+        String json = """
+                {"versions": [
+                  {"versionName": "1.0", "versionDate": "d1", "packFilePath": "p1", "changelogPath": "c1"},
+                  {"versionName": "1.1", "versionDate": "d2", "packFilePath": "p2", "changelogPath": "c2",
+                   "deltaPath": "x2"}
+                ]}""";
+        List<VersionInfo> versions = ManifestReader.readVersions(stream(json));
+        assertEquals(List.of(new VersionInfo("1.0", "d1", "p1", "c1", null), new VersionInfo("1.1", "d2", "p2", "c2", "x2")),
+                versions);
+        assertTrue(ManifestReader.containsVersion(stream(json), "1.1"));
+        assertFalse(ManifestReader.containsVersion(stream(json), "2.0"));
+    }
+
+    private static ManifestWriter write(List<Bundle> bundles) throws Exception {
+        ManifestWriter writer = new ManifestWriter("1.0", Map.of("net.minecraft", "1.7.10"), Codecs.DEFLATE);
+        for (ModpackFile file : FILES) {
+            writer.write(file);
+        }
+        writer.finish(bundles);
+        return writer;
+    }
+
+    private static InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,171 @@
+package com.deshark.core.pack;
+
+import com.deshark.core.codec.Codec;
+import com.deshark.core.codec.Codecs;
+import com.deshark.core.codec.CompressionPolicy;
+import com.deshark.core.index.ChecksumIndex;
+import com.deshark.core.metrics.RunMetrics;
+import com.deshark.core.schemas.ChunkingConfig;
+import com.deshark.core.schemas.CompressionConfig;
+import com.deshark.core.schemas.ModpackFile;
+import com.deshark.core.schemas.PackConfig;
+import com.deshark.core.schemas.PackRef;
+import com.deshark.core.storage.StorageKeys;
+import com.deshark.core.storage.impl.InMemoryStorageProvider;
+import com.deshark.core.task.RetryPolicy;
+import com.deshark.core.task.UploadContext;
+import com.deshark.core.utils.HashUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PackBuilderTest {
+    private static final PackConfig CONFIG = new PackConfig(true, 1024, 4, 2);
+
+    @TempDir
+    Path dir;
+
+    private final InMemoryStorageProvider storage = new InMemoryStorageProvider();
+    private ChecksumIndex checksums;
+    private UploadContext context;
+
+    @BeforeEach
+    void open() throws IOException {
+        Files.createDirectories(dir.resolve("src"));
+        checksums = ChecksumIndex.open(dir.resolve("work/checksums.jsonl"));
+        context = new UploadContext(storage, null, checksums, "https://cdn", new RetryPolicy(0, 0, 0, 0),
+                new CompressionPolicy(CompressionConfig.empty()), ChunkingConfig.empty(), new RunMetrics(), CONFIG,
+                null, null);
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        checksums.close();
+    }
+
+    @Test
+    void onlySmallWholeFilesArePackable() {
+        assertTrue(PackBuilder.isPackable(CONFIG, 1024, false));
+        assertFalse(PackBuilder.isPackable(CONFIG, 1025, false));
+        assertFalse(PackBuilder.isPackable(CONFIG, 10, true));
+        assertFalse(PackBuilder.isPackable(PackConfig.empty(), 10, false));
+    }
+
+    @Test
+    void filesStoredOnTheirOwnAreNotTaken() throws IOException {
+        PackBuilder builder = builder();
+        ModpackFile file = file("a.txt", "identity");
+        assertFalse(builder.add(new ModpackFile(file.file(), file.hash(), "https://cdn/x", file.size(), file.dist(),
+                false, file.codec(), null, null)));
+        assertTrue(builder.add(file));
+    }
+
+    @Test
+    void everyMemberCanBeReadBackFromItsRange() throws Exception {
+        PackBuilder builder = builder();
+        List<ModpackFile> files = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            files.add(file("f" + i + ".txt", i % 2 == 0 ? "identity" : "deflate"));
+        }
+        files.forEach(builder::add);
+        List<ModpackFile> packed = builder.finish();
+
+        assertEquals(files.size(), packed.size());
+        Set<String> packs = new HashSet<>();
+        for (ModpackFile file : packed) {
+            PackRef pack = file.pack();
+            assertNotNull(pack);
+            assertNull(file.link());
+            assertEquals("https://cdn/" + StorageKeys.contentKey(pack.hash(), Codecs.IDENTITY), pack.link());
+            packs.add(pack.hash());
+            byte[] data;
+            try (InputStream is = storage.getObjectStream(StorageKeys.contentKey(pack.hash(), Codecs.IDENTITY))) {
+                data = is.readAllBytes();
+            }
+            byte[] member = Arrays.copyOfRange(data, (int) pack.offset(), (int) (pack.offset() + pack.length()));
+            Codec codec = context.compression().forName(file.codec());
+            try (InputStream decoded = codec.decode(new ByteArrayInputStream(member))) {
+                assertArrayEquals(Files.readAllBytes(dir.resolve("src").resolve(file.file())), decoded.readAllBytes());
+            }
+        }
+        assertTrue(packs.size() <= CONFIG.packCount());
+        assertEquals(packs.size(), storage.objectCount());
+    }
+
+    @Test
+    void aChangedFileOnlyRebuildsItsOwnPack() throws Exception {
+        List<ModpackFile> files = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            files.add(file("f" + i + ".txt", "identity"));
+        }
+        PackBuilder first = builder();
+        files.forEach(first::add);
+        Map<String, PackRef> before = byFile(first.finish());
+
+        files.set(3, file("f3.txt", "identity", "changed"));
+        PackBuilder second = builder();
+        files.forEach(second::add);
+        Map<String, PackRef> after = byFile(second.finish());
+
+        // f3 leaves its old pack and joins the pack of its new hash; no other pack is touched
+        Set<String> changed = new HashSet<>();
+        for (ModpackFile file : files) {
+            if (!before.get(file.file()).equals(after.get(file.file()))) {
+                changed.add(before.get(file.file()).hash());
+            }
+        }
+        assertTrue(changed.size() <= 2);
+        assertTrue(changed.contains(before.get("f3.txt").hash()));
+        for (ModpackFile file : files) {
+            PackRef old = before.get(file.file());
+            if (!changed.contains(old.hash())) {
+                assertEquals(old, after.get(file.file()));
+            }
+        }
+    }
+
+    private PackBuilder builder() {
+        return new PackBuilder(context, CONFIG, Map.of("common", dir.resolve("src")),
+                PackCache.open(dir.resolve("work/packs.json")));
+    }
+
+    private ModpackFile file(String name, String codec) throws IOException {
+        return file(name, codec, "");
+    }
+
+    private ModpackFile file(String name, String codec, String extra) throws IOException {
+        byte[] data = ("content of " + name + extra + "\n").repeat(10).getBytes(StandardCharsets.UTF_8);
+        Path path = dir.resolve("src").resolve(name);
+        Files.write(path, data);
+        return new ModpackFile(name, HashUtil.SHA256(new ByteArrayInputStream(data)), null, data.length, "common",
+                !"identity".equals(codec), codec, null, null);
+    }
+
+    private static Map<String, PackRef> byFile(List<ModpackFile> files) {
+        Map<String, PackRef> refs = new HashMap<>();
+        files.forEach(file -> refs.put(file.file(), file.pack()));
+        return refs;
+    }
+}
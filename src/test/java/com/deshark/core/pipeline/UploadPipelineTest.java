@@ -0,0 +1,155 @@
+package com.deshark.core.pipeline;
+
+import com.deshark.core.codec.CompressionPolicy;
+import com.deshark.core.index.ChecksumIndex;
+import com.deshark.core.index.HashIndex;
+import com.deshark.core.metrics.RunMetrics;
+import com.deshark.core.schemas.ChunkingConfig;
+import com.deshark.core.schemas.CompressionConfig;
+import com.deshark.core.schemas.ModpackFile;
+import com.deshark.core.schemas.PackConfig;
+import com.deshark.core.schemas.SimulationConfig;
+import com.deshark.core.schemas.UploadConfig;
+import com.deshark.core.storage.impl.InMemoryStorageProvider;
+import com.deshark.core.task.ModpackFileUploadTask;
+import com.deshark.core.task.RetryPolicy;
+import com.deshark.core.task.UploadContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UploadPipelineTest {
+    private static final int FILES = 20;
+
+    @TempDir
+    Path dir;
+
+    private HashIndex index;
+    private ChecksumIndex checksums;
+
+    @BeforeEach
+    void open() throws IOException {
+        index = HashIndex.open(dir.resolve("work/hash-index.jsonl"));
+        checksums = ChecksumIndex.open(dir.resolve("work/checksums.jsonl"));
+        Random random = new Random(1);
+        for (int i = 0; i < FILES; i++) {
+            byte[] data = new byte[1000 + i];
+            random.nextBytes(data);
+            Files.write(dir.resolve("f" + i + ".bin"), data);
+        }
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        index.close();
+        checksums.close();
+    }
+
+    @ParameterizedTest
+    @EnumSource(UploadConfig.ExecutionMode.class)
+    void deliversEveryFileInOrderWhenUploadsFailAndRetry(UploadConfig.ExecutionMode mode) {
+        // half the writes fail, and slower than the dispatcher polls, so failures land after the stage is closed
+        InMemoryStorageProvider storage = new InMemoryStorageProvider(new SimulationConfig(250, 0, 0, 0.5, 0));
+        UploadConfig config = new UploadConfig(0, 0, 0, 8, 2, 2, 0, 16, mode, 30, 5, 20, 10_000, false, 0, 0);
+        UploadContext context = context(storage, config);
+        List<ModpackFile> results = Collections.synchronizedList(new ArrayList<>());
+
+        long finished = assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+            try (UploadPipeline pipeline = new UploadPipeline(context, config, results::add)) {
+                for (int i = 0; i < FILES; i++) {
+                    pipeline.submit(dir.resolve("f" + i + ".bin"), "f" + i + ".bin", "common");
+                }
+                return pipeline.finish();
+            }
+        });
+
+        assertEquals(FILES, finished);
+        assertEquals(FILES, results.size());
+        for (int i = 0; i < FILES; i++) {
+            assertEquals("f" + i + ".bin", results.get(i).file());
+        }
+        assertEquals(FILES, storage.objectCount());
+    }
+
+    @Test
+    void aSlowFileHoldsBackSubmissionOnceItsWindowIsFull() throws Exception {
+        InMemoryStorageProvider storage = new InMemoryStorageProvider();
+        // a queue of one gives a window of four files
+        UploadConfig config = new UploadConfig(0, 0, 0, 2, 2, 1, 0, 1, null, 0, 0, 0, 0, false, 0, 0);
+        UploadContext context = context(storage, config);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger submitted = new AtomicInteger();
+        List<ModpackFile> results = Collections.synchronizedList(new ArrayList<>());
+
+        long finished = assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+            try (UploadPipeline pipeline = new UploadPipeline(context, config, results::add)) {
+                Thread producer = new Thread(() -> {
+                    try {
+                        pipeline.submit(new ModpackFileUploadTask(context, dir.resolve("f0.bin"), "f0.bin", "common") {
+                            @Override
+                            public void hash() throws IOException {
+                                try {
+                                    release.await();
+                                } catch (InterruptedException e) {
+                                    Thread.currentThread().interrupt();
+                                }
+                                super.hash();
+                            }
+                        });
+                        submitted.incrementAndGet();
+                        for (int i = 1; i < FILES; i++) {
+                            pipeline.submit(dir.resolve("f" + i + ".bin"), "f" + i + ".bin", "common");
+                            submitted.incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                producer.start();
+                while (submitted.get() < 4) {
+                    Thread.sleep(10);
+                }
+                // the files behind the first finish, and their results wait for it
+                Thread.sleep(500);
+                assertEquals(4, submitted.get());
+                assertTrue(results.isEmpty());
+
+                release.countDown();
+                producer.join(TimeUnit.SECONDS.toMillis(30));
+                return pipeline.finish();
+            }
+        });
+
+        assertEquals(FILES, finished);
+        for (int i = 0; i < FILES; i++) {
+            assertEquals("f" + i + ".bin", results.get(i).file());
+        }
+    }
+
+    private UploadContext context(InMemoryStorageProvider storage, UploadConfig config) {
+        return new UploadContext(storage, index, checksums, "https://cdn",
+                new RetryPolicy(config.maxRetries(), config.retryBaseDelayMillis(), config.retryMaxDelayMillis(),
+                        config.retryBudget()),
+                new CompressionPolicy(CompressionConfig.empty()), ChunkingConfig.empty(), new RunMetrics(),
+                PackConfig.empty(), null, null);
+    }
+}
@@ -0,0 +1,67 @@
+package com.deshark.core.plan;
+
+import com.deshark.core.schemas.FileChunk;
+import com.deshark.core.schemas.PlanEntry;
+import com.deshark.core.schemas.PlanSummary;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PlanRoundTripTest {
+    private static final List<PlanEntry> ENTRIES = List.of(
+            new PlanEntry("/src/mods/a.jar", "mods/a.jar", "common", 100, 1000, "h1", "identity", null,
+                    PlanEntry.Action.UPLOAD, 100),
+            new PlanEntry("/src/config/b.json", "config/b.json", "client", 50, 2000, "h2", "deflate", null,
+                    PlanEntry.Action.REUSE, 0),
+            new PlanEntry("/src/big.zip", "big.zip", "server", 8, 3000, "h3", "identity",
+                    List.of(new FileChunk("c1", "https://cdn/c1", 0, 4), new FileChunk("c2", "https://cdn/c2", 4, 4)),
+                    PlanEntry.Action.UPLOAD, 4));
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void appliesTheEntriesAndSummaryThatWereSaved() throws Exception {
+        PlanSummary summary = new PlanSummary("1.0", "2026-10-18 10:00:00", 3, 2, 1, 158, 104, 1, 0, 0, 12.5, 0.1);
+        try (PlanWriter writer = new PlanWriter(dir, "1.0")) {
+            ENTRIES.forEach(entry -> {
+                try {
+                    writer.add(entry);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            assertEquals(3, writer.files());
+            assertEquals(2, writer.uploads());
+            assertEquals(158, writer.bytesRead());
+            assertEquals(104, writer.uploadBytes());
+            writer.finish(summary);
+        }
+
+        List<PlanEntry> read = new ArrayList<>();
+        assertEquals(3, PlanReader.forEachEntry(dir, "1.0", read::add));
+        assertEquals(ENTRIES, read);
+        assertEquals(summary, PlanReader.readSummary(dir, "1.0"));
+    }
+
+    @Test
+    void anUnfinishedPlanLeavesNothingToApply() throws Exception {
+        try (PlanWriter writer = new PlanWriter(dir, "1.0")) {
+            writer.add(ENTRIES.get(0));
+        }
+        assertThrows(NoSuchFileException.class, () -> PlanReader.readSummary(dir, "1.0"));
+        assertFalse(Files.exists(PlanWriter.entriesFile(dir, "1.0")));
+        try (var files = Files.list(dir)) {
+            assertEquals(0, files.count());
+        }
+    }
+}
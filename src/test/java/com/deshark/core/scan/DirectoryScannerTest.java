@@ -0,0 +1,43 @@
+package com.deshark.core.scan;
+
+import com.deshark.core.schemas.ScanConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class DirectoryScannerTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void scansMoreFilesThanTheHandOffQueueHolds() throws IOException {
+        // more than QUEUE_CAPACITY, and a sink slower than the walk, so the queue is full when it ends
+        int count = 3000;
+        for (int i = 0; i < count; i++) {
+            Path dir = root.resolve("d" + i % 7);
+            Files.createDirectories(dir);
+            Files.writeString(dir.resolve("f" + i), "x");
+        }
+        Set<String> seen = ConcurrentHashMap.newKeySet();
+        long scanned = assertTimeoutPreemptively(Duration.ofSeconds(30), () ->
+                new DirectoryScanner(new ScanConfig(4, false, null), null).scan(
+                        List.of(new DirectoryScanner.Root(root, "common")), (file, relativePath, dist) -> {
+                            LockSupport.parkNanos(500_000);
+                            seen.add(relativePath);
+                        }));
+        assertEquals(count, scanned);
+        assertEquals(count, seen.size());
+    }
+}
@@ -0,0 +1,112 @@
+package com.deshark.core.scan;
+
+import com.deshark.core.schemas.ScanConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IgnoreRulesTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void matchesNamesAtAnyDepthAndSlashedPatternsFromTheirDirectory() throws IOException {
+        IgnoreRules rules = rules(root, """
+                # comment
+                *.log
+                /local.txt
+                config/*.bak
+                build/
+                """);
+
+        assertTrue(rules.isIgnored(root.resolve("latest.log"), false));
+        assertTrue(rules.isIgnored(root.resolve("a/b/debug.log"), false));
+        assertTrue(rules.isIgnored(root.resolve("local.txt"), false));
+        assertFalse(rules.isIgnored(root.resolve("a/local.txt"), false));
+        assertTrue(rules.isIgnored(root.resolve("config/forge.bak"), false));
+        assertFalse(rules.isIgnored(root.resolve("config/sub/forge.bak"), false));
+        assertTrue(rules.isIgnored(root.resolve("a/build"), true));
+        // a trailing slash only matches directories
+        assertFalse(rules.isIgnored(root.resolve("a/build"), false));
+        assertFalse(rules.isIgnored(root.resolve("# comment"), false));
+    }
+
+    @Test
+    void theLastMatchWinsAndNegationReincludes() throws IOException {
+        IgnoreRules rules = rules(root, """
+                *.cfg
+                !keep.cfg
+                """);
+
+        assertTrue(rules.isIgnored(root.resolve("a.cfg"), false));
+        assertFalse(rules.isIgnored(root.resolve("sub/keep.cfg"), false));
+    }
+
+    @Test
+    void deeperFilesOverrideTheirParents() throws IOException {
+        Path mods = Files.createDirectories(root.resolve("mods"));
+        IgnoreRules rules = rules(mods, "!optional.jar\n", rules(root, "*.jar\n"));
+
+        assertTrue(rules.isIgnored(mods.resolve("a.jar"), false));
+        assertFalse(rules.isIgnored(mods.resolve("optional.jar"), false));
+        assertTrue(rules(root, "*.jar\n").isIgnored(root.resolve("optional.jar"), false));
+    }
+
+    @Test
+    void supportsDoubleStarsAndCharacterClasses() throws IOException {
+        IgnoreRules rules = rules(root, """
+                **/cache/**
+                logs/**/*.gz
+                screenshot-[0-9].png
+                save?.dat
+                """);
+
+        assertTrue(rules.isIgnored(root.resolve("cache/x"), false));
+        assertTrue(rules.isIgnored(root.resolve("a/b/cache/c/d"), false));
+        assertTrue(rules.isIgnored(root.resolve("logs/old.gz"), false));
+        assertTrue(rules.isIgnored(root.resolve("logs/2024/01/old.gz"), false));
+        assertTrue(rules.isIgnored(root.resolve("screenshot-3.png"), false));
+        assertFalse(rules.isIgnored(root.resolve("screenshot-x.png"), false));
+        assertTrue(rules.isIgnored(root.resolve("save1.dat"), false));
+        assertFalse(rules.isIgnored(root.resolve("save10.dat"), false));
+    }
+
+    @Test
+    void theScannerSkipsIgnoredFilesAndDirectories() throws Exception {
+        Files.writeString(root.resolve(".mupignore"), "logs/\n*.tmp\n");
+        Files.createDirectories(root.resolve("logs"));
+        Files.writeString(root.resolve("logs/latest.log"), "x");
+        Files.createDirectories(root.resolve("config/sub"));
+        Files.writeString(root.resolve("config/a.toml"), "x");
+        Files.writeString(root.resolve("config/a.tmp"), "x");
+        Files.writeString(root.resolve("config/sub/.mupignore"), "!b.tmp\n");
+        Files.writeString(root.resolve("config/sub/b.tmp"), "x");
+
+        Set<String> found = new TreeSet<>();
+        new DirectoryScanner(new ScanConfig(2, false, null), null).scan(
+                List.of(new DirectoryScanner.Root(root, "common")), (file, relativePath, dist) -> found.add(relativePath));
+        // ignore files themselves are never published
+        assertEquals(Set.of("config/a.toml", "config/sub/b.tmp"), found);
+    }
+
+    private IgnoreRules rules(Path dir, String content) throws IOException {
+        return rules(dir, content, IgnoreRules.NONE);
+    }
+
+    private static IgnoreRules rules(Path dir, String content, IgnoreRules parent) throws IOException {
+        Path file = dir.resolve(".mupignore-" + Integer.toHexString(content.hashCode()));
+        Files.writeString(file, content);
+        return parent.withFile(file);
+    }
+}
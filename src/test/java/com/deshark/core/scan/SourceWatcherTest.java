@@ -0,0 +1,73 @@
+package com.deshark.core.scan;
+
+import com.deshark.core.schemas.ScanConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SourceWatcherTest {
+    private static final long DEBOUNCE_MILLIS = 500;
+
+    @TempDir
+    Path root;
+
+    @Test
+    void aFileStillBeingWrittenIsReportedOnceWhenItSettles() throws Exception {
+        Path file = root.resolve("mods/a.jar");
+        Files.createDirectories(file.getParent());
+        BlockingQueue<SourceWatcher.Changes> batches = new LinkedBlockingQueue<>();
+        try (SourceWatcher watcher = new SourceWatcher(List.of(new DirectoryScanner.Root(root, "common")),
+                ScanConfig.empty(), DEBOUNCE_MILLIS)) {
+            watcher.start(batches::add);
+            // a copy in progress: written in pieces, each well within the debounce time
+            for (int i = 0; i < 6; i++) {
+                Files.write(file, new byte[1024], StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                Thread.sleep(DEBOUNCE_MILLIS / 5);
+            }
+            long lastWrite = System.currentTimeMillis();
+            Files.writeString(root.resolve("options.txt"), "fov:1.0");
+
+            SourceWatcher.Changes changes = batches.poll(10, TimeUnit.SECONDS);
+            assertNotNull(changes);
+            // not before the writes stopped for the debounce time
+            assertTrue(System.currentTimeMillis() - lastWrite >= DEBOUNCE_MILLIS);
+            assertFalse(changes.rescan());
+            assertEquals(List.of(new SourceWatcher.Changed(file, "mods/a.jar", "common"),
+                    new SourceWatcher.Changed(root.resolve("options.txt"), "options.txt", "common")), changes.files());
+            assertNull(batches.poll(2 * DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    void reportsTheFilesOfANewDirectory() throws Exception {
+        BlockingQueue<SourceWatcher.Changes> batches = new LinkedBlockingQueue<>();
+        try (SourceWatcher watcher = new SourceWatcher(List.of(new DirectoryScanner.Root(root, "client")),
+                ScanConfig.empty(), DEBOUNCE_MILLIS)) {
+            watcher.start(batches::add);
+            // moved in whole, so its contents raise no events of their own
+            Path staged = Files.createTempDirectory(root.getParent(), "staged");
+            Files.writeString(Files.createDirectories(staged.resolve("b")).resolve("c.json"), "{}");
+            Files.move(staged, root.resolve("config"));
+
+            SourceWatcher.Changes changes = batches.poll(10, TimeUnit.SECONDS);
+            assertNotNull(changes);
+            assertEquals(List.of(new SourceWatcher.Changed(root.resolve("config/b/c.json"), "config/b/c.json",
+                    "client")), changes.files());
+            // the root, config and config/b
+            assertEquals(3, watcher.directories());
+        }
+    }
+}
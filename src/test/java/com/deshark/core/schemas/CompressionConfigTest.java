@@ -0,0 +1,23 @@
+package com.deshark.core.schemas;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CompressionConfigTest {
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void missingModeKeepsTheBaselineBehaviour() throws Exception {
+        CompressionConfig config = mapper.readValue("{\"level\": 9}", CompressionConfig.class);
+        assertEquals(CompressionConfig.empty().mode(), config.mode());
+        assertEquals(CompressionConfig.Mode.EXTENSION, config.mode());
+    }
+
+    @Test
+    void sniffingCanBeTurnedOn() throws Exception {
+        assertEquals(CompressionConfig.Mode.SNIFF,
+                mapper.readValue("{\"mode\": \"SNIFF\"}", CompressionConfig.class).mode());
+    }
+}
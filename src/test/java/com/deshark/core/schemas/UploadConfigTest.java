@@ -0,0 +1,22 @@
+package com.deshark.core.schemas;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class UploadConfigTest {
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void zeroRetriesMeansNoRetries() throws Exception {
+        assertEquals(0, mapper.readValue("{\"maxRetries\": 0}", UploadConfig.class).maxRetries());
+    }
+
+    @Test
+    void missingRetriesGetTheDefault() throws Exception {
+        UploadConfig config = mapper.readValue("{\"maxConnections\": 8}", UploadConfig.class);
+        assertEquals(UploadConfig.empty().maxRetries(), config.maxRetries());
+        assertEquals(3, config.maxRetries());
+    }
+}
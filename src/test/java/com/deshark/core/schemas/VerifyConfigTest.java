@@ -0,0 +1,24 @@
+package com.deshark.core.schemas;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VerifyConfigTest {
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void missingRepairMatchesTheEmptyConfig() throws Exception {
+        VerifyConfig config = mapper.readValue("{\"concurrency\": 4}", VerifyConfig.class);
+        assertEquals(VerifyConfig.empty().repair(), config.repair());
+        assertTrue(config.repair());
+    }
+
+    @Test
+    void repairCanBeTurnedOff() throws Exception {
+        assertFalse(mapper.readValue("{\"repair\": false}", VerifyConfig.class).repair());
+    }
+}
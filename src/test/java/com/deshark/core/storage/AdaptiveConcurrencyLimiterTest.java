@@ -0,0 +1,66 @@
+package com.deshark.core.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveConcurrencyLimiterTest {
+    private static final int MAX = 64;
+    private static final long ROUND_TRIP_NANOS = 20_000_000;
+    // bytes per second
+    private static final double BANDWIDTH = 10e6;
+
+    private interface Link {
+        // how long a request of this size takes while so many run at once
+        long latencyNanos(long bytes, int concurrent);
+    }
+
+    @Test
+    void largeFilesOnAnIdleLinkDoNotLowerTheLimit() throws Exception {
+        // every request gets the full rate whatever else is in flight
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, MAX);
+        assertEquals(MAX, run(limiter, (bytes, concurrent) -> ROUND_TRIP_NANOS + (long) (bytes / BANDWIDTH * 1e9)));
+        assertEquals(MAX, limiter.limit());
+    }
+
+    @Test
+    void aSaturatedLinkLowersTheLimit() throws Exception {
+        // requests in flight share the rate
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, MAX);
+        int limit = run(limiter, (bytes, concurrent) -> ROUND_TRIP_NANOS + (long) (bytes * concurrent / BANDWIDTH * 1e9));
+        assertTrue(limit <= 8, "limit " + limit);
+    }
+
+    // a modpack's mix: runs of large jars between runs of small config files; returns the limit
+    // at the end of the last run of jars
+    private static int run(AdaptiveConcurrencyLimiter limiter, Link link) throws InterruptedException {
+        Random random = new Random(3);
+        long clock = System.nanoTime();
+        int afterLarge = 0;
+        for (int request = 0; request < 8000; ) {
+            int batch = limiter.limit();
+            for (int i = 0; i < batch; i++) {
+                limiter.acquire();
+            }
+            long slowest = 0;
+            boolean anyLarge = false;
+            for (int i = 0; i < batch; i++, request++) {
+                boolean large = request % 300 < 100;
+                anyLarge |= large;
+                long bytes = large ? 2_000_000 + random.nextInt(14_000_000) : 1000 + random.nextInt(7000);
+                long latency = link.latencyNanos(bytes, batch);
+                limiter.release(clock, clock + latency, bytes, AdaptiveConcurrencyLimiter.Outcome.SUCCESS);
+                slowest = Math.max(slowest, latency);
+            }
+            // requests started after the batch, so a cut counts for them
+            clock += slowest + 1;
+            if (anyLarge) {
+                afterLarge = limiter.limit();
+            }
+        }
+        return afterLarge;
+    }
+}
@@ -0,0 +1,103 @@
+package com.deshark.core.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExistenceCacheTest {
+    private final Set<String> bucket = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger listings = new AtomicInteger();
+    private final AtomicInteger heads = new AtomicInteger();
+    private final ExistenceCache cache = new ExistenceCache(this::list, this::head);
+
+    @Test
+    void aBusyShardIsListedOnceInsteadOfAHeadPerKey() {
+        List<String> keys = keys(20);
+        bucket.addAll(keys.subList(0, 10));
+        for (String key : keys) {
+            assertEquals(bucket.contains(key), cache.exists(key));
+        }
+        assertEquals(1, listings.get());
+        assertEquals(8, heads.get());
+        // another shard stays on HEADs
+        assertFalse(cache.exists("f/00/0000/1"));
+        assertEquals(9, heads.get());
+    }
+
+    @Test
+    void aFailedListingFallsBackToHeads() {
+        ExistenceCache failing = new ExistenceCache(prefix -> {
+            throw new IllegalStateException("listing denied");
+        }, this::head);
+        List<String> keys = keys(10);
+        bucket.add(keys.get(9));
+        assertEquals(Set.of(keys.get(9)), failing.existing(keys));
+        assertEquals(10, heads.get());
+    }
+
+    @Test
+    void tracksWhatTheRunStoredAndDeleted() {
+        List<String> keys = keys(10);
+        bucket.addAll(keys);
+        cache.existing(keys);
+        String stored = key(10);
+        cache.markPresent(stored);
+        cache.markDeleted(keys.get(0));
+        assertTrue(cache.exists(stored));
+        assertFalse(cache.exists(keys.get(0)));
+        assertEquals(0, heads.get());
+    }
+
+    @Test
+    void anObjectDeletedBehindItsBackIsMissingAfterAClear() {
+        List<String> keys = keys(10);
+        bucket.addAll(keys);
+        String uploaded = key(99);
+        cache.markPresent(uploaded);
+        assertEquals(Set.copyOf(keys), cache.existing(keys));
+        assertEquals(1, listings.get());
+
+        // gc of another process, or someone in the console
+        bucket.remove(keys.get(0));
+        assertTrue(cache.exists(keys.get(0)));
+        cache.clear();
+        assertFalse(cache.exists(keys.get(0)));
+        assertFalse(cache.exists(uploaded));
+        assertEquals(Set.copyOf(keys.subList(1, 10)), cache.existing(keys));
+        assertEquals(2, listings.get());
+    }
+
+    // keys of one shard
+    private static List<String> keys(int count) {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            keys.add(key(i));
+        }
+        return keys;
+    }
+
+    private static String key(int i) {
+        return StorageKeys.contentKey(String.format("0%063x", i));
+    }
+
+    private List<StoredObject> list(String prefix) {
+        listings.incrementAndGet();
+        return bucket.stream()
+                .filter(key -> key.startsWith(prefix))
+                .map(key -> new StoredObject(key, 1, null, 0, null))
+                .toList();
+    }
+
+    private boolean head(String key) {
+        heads.incrementAndGet();
+        return bucket.contains(key);
+    }
+}
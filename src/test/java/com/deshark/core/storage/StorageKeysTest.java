@@ -0,0 +1,26 @@
+package com.deshark.core.storage;
+
+import com.deshark.core.codec.Codecs;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StorageKeysTest {
+    private static final String HASH = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+    private static final String BARE = "0/12/3456/89abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+
+    @Test
+    void keepsTheBareKeyForTheFormsStoredBeforeCodecs() {
+        assertEquals(BARE, StorageKeys.contentKey(HASH, Codecs.DEFLATE, "config/forge.CFG"));
+        assertEquals(BARE, StorageKeys.contentKey(HASH, Codecs.IDENTITY, "mods/a.jar"));
+        assertEquals(BARE, StorageKeys.contentKey(HASH, Codecs.IDENTITY, "lang/en_us.lang"));
+    }
+
+    @Test
+    void suffixesEncodingsTheOriginalLayoutDidNotUse() {
+        // stored as is before codecs, so the deflated form needs a key of its own
+        assertEquals(BARE + ".deflate", StorageKeys.contentKey(HASH, Codecs.DEFLATE, "lang/en_us.lang"));
+        assertEquals(BARE + ".deflate", StorageKeys.contentKey(HASH, Codecs.DEFLATE, "scripts/README"));
+        assertEquals(BARE + ".deflate", StorageKeys.contentKey(HASH, Codecs.DEFLATE, "data.json/blob"));
+    }
+}
@@ -0,0 +1,176 @@
+package com.deshark.core.storage.impl;
+
+import com.deshark.core.schemas.UploadConfig;
+import com.deshark.core.storage.MultipartStateStore;
+import com.deshark.core.storage.StorageException;
+import com.deshark.core.task.RetryPolicy;
+import com.qcloud.cos.COSClient;
+import com.qcloud.cos.ClientConfig;
+import com.qcloud.cos.auth.BasicCOSCredentials;
+import com.qcloud.cos.exception.CosServiceException;
+import com.qcloud.cos.model.AbortMultipartUploadRequest;
+import com.qcloud.cos.model.CompleteMultipartUploadRequest;
+import com.qcloud.cos.model.CompleteMultipartUploadResult;
+import com.qcloud.cos.model.InitiateMultipartUploadRequest;
+import com.qcloud.cos.model.InitiateMultipartUploadResult;
+import com.qcloud.cos.model.ListPartsRequest;
+import com.qcloud.cos.model.ObjectMetadata;
+import com.qcloud.cos.model.PartListing;
+import com.qcloud.cos.model.PartSummary;
+import com.qcloud.cos.model.UploadPartRequest;
+import com.qcloud.cos.model.UploadPartResult;
+import com.qcloud.cos.region.Region;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class COSMultipartUploaderTest {
+    private static final int PART_SIZE = 1024 * 1024;
+    private static final int PARTS = 4;
+
+    @TempDir
+    Path dir;
+
+    private final FakeCOSClient client = new FakeCOSClient();
+    private COSMultipartUploader uploader;
+    private Path file;
+
+    @BeforeEach
+    void open() throws Exception {
+        UploadConfig config = new UploadConfig(1, PART_SIZE, 2, 0, 0, 0, 0, 0, null, null, 0, 0, 0, false, 0, 0);
+        uploader = new COSMultipartUploader(client, "bucket", config, new MultipartStateStore(dir.resolve("state")));
+        file = dir.resolve("big.zip");
+        Files.write(file, new byte[PARTS * PART_SIZE - 100]);
+    }
+
+    @AfterEach
+    void close() {
+        uploader.shutdown();
+        client.shutdown();
+    }
+
+    @Test
+    void aFailedPartIsReportedWithItsStatus() {
+        client.failPart = 3;
+        StorageException e = assertThrows(StorageException.class,
+                () -> uploader.upload(file, "big.zip", new ObjectMetadata()));
+        assertEquals(503, e.getStatusCode());
+        assertTrue(RetryPolicy.isRetryable(e));
+        assertEquals(0, client.completed.size());
+    }
+
+    @Test
+    void aRetrySendsOnlyTheMissingParts() throws Exception {
+        client.failPart = 3;
+        assertThrows(StorageException.class, () -> uploader.upload(file, "big.zip", new ObjectMetadata()));
+        assertEquals(List.of(1, 2, 4), client.parts.keySet().stream().sorted().toList());
+
+        client.failPart = 0;
+        client.requested.clear();
+        uploader.upload(file, "big.zip", new ObjectMetadata());
+        assertEquals(List.of(3), client.requested);
+        assertEquals(1, client.initiated);
+        assertEquals(List.of(1, 2, 3, 4), client.completed);
+        // the finished upload leaves no state behind, so the next one starts over
+        client.requested.clear();
+        client.completed.clear();
+        uploader.upload(file, "big.zip", new ObjectMetadata());
+        assertEquals(2, client.initiated);
+        assertEquals(PARTS, client.requested.size());
+    }
+
+    @Test
+    void aChangedFileStartsOver() throws Exception {
+        client.failPart = 3;
+        assertThrows(StorageException.class, () -> uploader.upload(file, "big.zip", new ObjectMetadata()));
+
+        client.failPart = 0;
+        client.requested.clear();
+        Files.write(file, new byte[PARTS * PART_SIZE - 200]);
+        uploader.upload(file, "big.zip", new ObjectMetadata());
+        assertEquals(2, client.initiated);
+        assertEquals(PARTS, client.requested.size());
+        assertEquals(1, client.aborted);
+    }
+
+    // answers the multipart requests from memory; failPart fails with 503 while it is set
+    private static final class FakeCOSClient extends COSClient {
+        final Map<Integer, Long> parts = new ConcurrentHashMap<>();
+        final List<Integer> requested = new ArrayList<>();
+        final List<Integer> completed = new ArrayList<>();
+        volatile int failPart;
+        int initiated;
+        int aborted;
+
+        FakeCOSClient() {
+            super(new BasicCOSCredentials("id", "key"), new ClientConfig(new Region("ap-guangzhou")));
+        }
+
+        @Override
+        public synchronized InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) {
+            initiated++;
+            InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+            result.setUploadId("upload-" + initiated);
+            return result;
+        }
+
+        @Override
+        public UploadPartResult uploadPart(UploadPartRequest request) {
+            synchronized (this) {
+                requested.add(request.getPartNumber());
+            }
+            if (request.getPartNumber() == failPart) {
+                CosServiceException unavailable = new CosServiceException("Service Unavailable");
+                unavailable.setStatusCode(503);
+                throw unavailable;
+            }
+            parts.put(request.getPartNumber(), request.getPartSize());
+            UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag("etag-" + request.getPartNumber());
+            return result;
+        }
+
+        @Override
+        public PartListing listParts(ListPartsRequest request) {
+            PartListing listing = new PartListing();
+            List<PartSummary> summaries = new ArrayList<>();
+            parts.forEach((number, size) -> {
+                PartSummary summary = new PartSummary();
+                summary.setPartNumber(number);
+                summary.setSize(size);
+                summary.setETag("etag-" + number);
+                summaries.add(summary);
+            });
+            listing.setParts(summaries);
+            listing.setNextPartNumberMarker(PARTS);
+            listing.setTruncated(false);
+            return listing;
+        }
+
+        @Override
+        public synchronized void abortMultipartUpload(AbortMultipartUploadRequest request) {
+            aborted++;
+            parts.clear();
+        }
+
+        @Override
+        public synchronized CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
+            request.getPartETags().forEach(etag -> completed.add(etag.getPartNumber()));
+            parts.clear();
+            return new CompleteMultipartUploadResult();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.deshark.core.task;
+
+import com.deshark.core.storage.StorageException;
+import com.deshark.core.storage.impl.TencentCOSProvider;
+import com.qcloud.cos.exception.CosServiceException;
+import org.junit.jupiter.api.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileSystemException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryPolicyTest {
+
+    @Test
+    void retriesStorageAndNetworkFailures() {
+        assertTrue(RetryPolicy.isRetryable(new StorageException("SlowDown", 503, true, null)));
+        assertTrue(RetryPolicy.isRetryable(new IOException("Multipart upload failed",
+                new StorageException("Internal error", 500, true, null))));
+        assertTrue(RetryPolicy.isRetryable(new SocketTimeoutException("Read timed out")));
+        assertFalse(RetryPolicy.isRetryable(new StorageException("Forbidden", 403, false, null)));
+    }
+
+    @Test
+    void retriesAMultipartPartTheServiceWasTooBusyFor() {
+        CosServiceException unavailable = new CosServiceException("Service Unavailable");
+        unavailable.setStatusCode(503);
+        unavailable.setErrorCode("ServiceUnavailable");
+        StorageException failure = TencentCOSProvider.translate("Multipart upload failed for big.zip", unavailable);
+        assertEquals(503, failure.getStatusCode());
+        assertTrue(RetryPolicy.isRetryable(failure));
+    }
+
+    @Test
+    void treatsLocalSourceFailuresAsPermanent() {
+        assertFalse(RetryPolicy.isRetryable(new FileSystemException("mods/a.jar: Too many levels of symbolic links")));
+        assertFalse(RetryPolicy.isRetryable(new UncheckedIOException(new AccessDeniedException("mods/a.jar"))));
+        assertFalse(RetryPolicy.isRetryable(new EOFException("File shrank while uploading chunk at 0")));
+        assertFalse(RetryPolicy.isRetryable(new IOException("Input/output error")));
+        // a read failure the storage client wrapped as one of its own
+        assertFalse(RetryPolicy.isRetryable(new StorageException("Failed to upload", -1, true,
+                new FileSystemException("mods/a.jar"))));
+    }
+
+    @Test
+    void budgetRunsOutAndSuccessesRefundIt() {
+        RetryPolicy policy = new RetryPolicy(5, 1, 1, 2);
+        StorageException throttled = new StorageException("SlowDown", 503, true, null);
+        assertEquals(RetryPolicy.Decision.RETRY, policy.decide(throttled, 0));
+        assertEquals(RetryPolicy.Decision.RETRY, policy.decide(throttled, 0));
+        assertEquals(RetryPolicy.Decision.BUDGET_EXHAUSTED, policy.decide(throttled, 0));
+        for (int i = 0; i < 10; i++) {
+            policy.onSuccess();
+        }
+        assertEquals(RetryPolicy.Decision.RETRY, policy.decide(throttled, 0));
+        assertEquals(RetryPolicy.Decision.RETRIES_EXHAUSTED, policy.decide(throttled, 5));
+    }
+}
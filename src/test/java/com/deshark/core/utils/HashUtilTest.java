@@ -0,0 +1,76 @@
+package com.deshark.core.utils;
+
+import com.deshark.core.codec.Codecs;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HashUtilTest {
+    private static final byte[] WHITESPACE = {'\t', '\n', '\r', ' '};
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void matchesTheDigestOfTheStrippedContent() throws Exception {
+        // sizes around the 64 KiB read buffer, with every byte value and runs of whitespace
+        for (int size : new int[]{0, 1, 4095, 65535, 65536, 65537, 300_000}) {
+            byte[] data = whitespaceLaden(size, size);
+            Path file = dir.resolve("f" + size);
+            Files.write(file, data);
+            String expected = baseline(data);
+
+            assertEquals(expected, HashUtil.SHA256(file), "file of " + size + " bytes");
+            assertEquals(expected, HashUtil.SHA256(new ByteArrayInputStream(data)), "stream of " + size + " bytes");
+            ByteArrayOutputStream raw = new ByteArrayOutputStream();
+            assertEquals(expected, HashUtil.SHA256(file, raw));
+            // the tee gets the bytes as read, whitespace and all
+            assertArrayEquals(data, raw.toByteArray());
+        }
+    }
+
+    @Test
+    void hashesAndDeflatesInOnePass() throws Exception {
+        byte[] data = whitespaceLaden(200_000, 7);
+        Path file = dir.resolve("config.json");
+        Files.write(file, data);
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+
+        assertEquals(baseline(data), FileUtil.hashAndCompress(file, encoded, Codecs.DEFLATE));
+        try (InputStream is = Codecs.DEFLATE.decode(new ByteArrayInputStream(encoded.toByteArray()))) {
+            assertArrayEquals(data, is.readAllBytes());
+        }
+    }
+
+    @Test
+    void whitespaceDoesNotChangeTheHash() throws Exception {
+        assertEquals(HashUtil.SHA256(new ByteArrayInputStream("{\"a\":1}".getBytes())),
+                HashUtil.SHA256(new ByteArrayInputStream("{\r\n\t\"a\" : 1\n}\n".getBytes())));
+    }
+
+    // the hash before it was streamed: SHA-256 over the whole file minus \t \n \r and space
+    private static String baseline(byte[] data) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                .digest(FileUtil.readIgnoreSpace(new ByteArrayInputStream(data))));
+    }
+
+    private static byte[] whitespaceLaden(int size, long seed) {
+        Random random = new Random(seed);
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = random.nextInt(3) == 0 ? WHITESPACE[random.nextInt(WHITESPACE.length)] : (byte) random.nextInt(256);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,145 @@
+package com.deshark.core.verify;
+
+import com.deshark.core.codec.Codecs;
+import com.deshark.core.codec.CompressionPolicy;
+import com.deshark.core.index.ChecksumIndex;
+import com.deshark.core.index.HashIndex;
+import com.deshark.core.manifest.ManifestWriter;
+import com.deshark.core.metrics.RunMetrics;
+import com.deshark.core.schemas.BundleConfig;
+import com.deshark.core.schemas.ChunkingConfig;
+import com.deshark.core.schemas.CompressionConfig;
+import com.deshark.core.schemas.ModpackFile;
+import com.deshark.core.schemas.PackConfig;
+import com.deshark.core.schemas.VerifyConfig;
+import com.deshark.core.schemas.VerifyReport;
+import com.deshark.core.storage.StorageKeys;
+import com.deshark.core.storage.impl.InMemoryStorageProvider;
+import com.deshark.core.task.ModpackFileUploadTask;
+import com.deshark.core.task.RetryPolicy;
+import com.deshark.core.task.UploadContext;
+import com.deshark.core.utils.HashUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class VerifierTest {
+    @TempDir
+    Path dir;
+
+    private final InMemoryStorageProvider storage = new InMemoryStorageProvider();
+    private Path source;
+    private HashIndex index;
+    private ChecksumIndex checksums;
+    private UploadContext context;
+
+    @BeforeEach
+    void open() throws IOException {
+        source = Files.createDirectories(dir.resolve("src"));
+        index = HashIndex.open(dir.resolve("work/hash-index.jsonl"));
+        checksums = ChecksumIndex.open(dir.resolve("work/checksums.jsonl"));
+        context = new UploadContext(storage, index, checksums, "https://cdn", new RetryPolicy(0, 0, 0, 0),
+                new CompressionPolicy(CompressionConfig.empty()), ChunkingConfig.empty(), new RunMetrics(),
+                PackConfig.empty(), null, null);
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        index.close();
+        checksums.close();
+    }
+
+    @Test
+    void anObjectStoredAtTheOldDeflateLevelIsNotAProblem() throws Exception {
+        Path old = write("config/old.json", 1);
+        Path fresh = write("config/new.json", 2);
+        // the baseline stored text under the bare key at the best compression level
+        String oldKey = StorageKeys.contentKey(HashUtil.SHA256(old), Codecs.DEFLATE, "config/old.json");
+        byte[] level9 = encode(Files.readAllBytes(old), 9);
+        assertNotEquals(encode(Files.readAllBytes(old), Codecs.DEFAULT_DEFLATE_LEVEL).length, level9.length);
+        storage.upload(new ByteArrayInputStream(level9), level9.length, oldKey, Codecs.DEFLATE);
+
+        ManifestWriter manifest = new ManifestWriter("1.0", Map.of(), Codecs.DEFLATE);
+        manifest.write(new ModpackFileUploadTask(context, old, "config/old.json", "common").executeSync());
+        manifest.write(new ModpackFileUploadTask(context, fresh, "config/new.json", "common").executeSync());
+        manifest.finish();
+        assertNull(checksums.lookup(oldKey));
+
+        VerifyReport report;
+        try (InputStream is = manifest.openStream()) {
+            report = new Verifier(context, VerifyConfig.empty(), BundleConfig.empty(), Map.of("common", source),
+                    dir.resolve("work"), null).run("1.0", is);
+        }
+        manifest.close();
+
+        assertEquals(2, report.objects());
+        assertEquals(1, report.verified());
+        assertEquals(1, report.unchecked());
+        assertEquals(0, report.problems().size());
+        try (InputStream is = storage.getObjectStream(oldKey)) {
+            // not stored again
+            assertArrayEquals(Files.readAllBytes(old), is.readAllBytes());
+        }
+        assertEquals(level9.length, storage.stat(oldKey).size());
+    }
+
+    @Test
+    void aDamagedObjectIsRepaired() throws Exception {
+        Path file = write("config/a.json", 3);
+        ModpackFile result = new ModpackFileUploadTask(context, file, "config/a.json", "common").executeSync();
+        String key = StorageKeys.contentKey(result.hash(), Codecs.DEFLATE, "config/a.json");
+        storage.upload(new ByteArrayInputStream(new byte[]{1, 2, 3}), 3, key, Codecs.IDENTITY);
+
+        ManifestWriter manifest = new ManifestWriter("1.0", Map.of(), Codecs.DEFLATE);
+        manifest.write(result);
+        manifest.finish();
+        VerifyReport report;
+        try (InputStream is = manifest.openStream()) {
+            report = new Verifier(context, VerifyConfig.empty(), BundleConfig.empty(), Map.of("common", source),
+                    dir.resolve("work"), null).run("1.0", is);
+        }
+        manifest.close();
+
+        assertEquals(1, report.problems().size());
+        assertEquals(VerifyReport.Problem.SIZE_MISMATCH, report.problems().get(0).problem());
+        assertEquals(1, report.repaired());
+        try (InputStream is = storage.getObjectStream(key)) {
+            assertArrayEquals(Files.readAllBytes(file), is.readAllBytes());
+        }
+    }
+
+    private Path write(String path, int seed) throws IOException {
+        StringBuilder json = new StringBuilder("{\n");
+        for (int i = 0; i < 2000; i++) {
+            json.append("  \"key").append(i * seed).append("\": \"value ").append(i * 31 % 97).append("\",\n");
+        }
+        Path file = source.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, json.append("}\n"), StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static byte[] encode(byte[] data, int level) throws IOException {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        try (OutputStream os = Codecs.deflate(level).encode(encoded)) {
+            os.write(data);
+        }
+        return encoded.toByteArray();
+    }
+}